@@ -0,0 +1,278 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.control.Either;
+import org.aya.generic.Modifier;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.pat.Pat;
+import org.aya.syntax.core.term.*;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.ConCallLike;
+import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.ref.LocalVar;
+import org.aya.tyck.TyckState;
+import org.aya.util.Pair;
+import org.aya.util.error.Panic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static org.aya.normalize.PatMatcher.State.Mismatch;
+import static org.aya.normalize.PatMatcher.State.Stuck;
+import static org.aya.normalize.Value.*;
+
+/**
+ * Normalization by evaluation: {@link #eval} interprets a term in an environment of {@link Value}s,
+ * {@link #conv} decides conversion on values, and {@link #quote} reads back a normal form only when asked.
+ * Substitution is never performed on the terms it understands, a beta redex costs an environment extension.
+ * <p>
+ * It covers the functional fragment: lambdas, pis, sigmas, tuples, universes, data types,
+ * point constructors and functions defined by expressions or clauses.
+ * Anything else is materialized and delegated to {@link #normalizer}, see {@link Opaque}.
+ * Conversion is sound but incomplete: it does not solve metas and compares {@link Opaque}s syntactically,
+ * so a negative answer must be confirmed by {@link org.aya.unify.TermComparator}.
+ * It is used only by the states that ask for it, see {@link TyckState#nbe()}.
+ */
+public record Evaluator(@NotNull Normalizer normalizer) {
+  public @NotNull Value eval(@NotNull Term term) { return eval(term, null); }
+
+  public @NotNull Value eval(@NotNull Term term, @Nullable Env env) {
+    return switch (term) {
+      case LocalTerm(var index) -> {
+        if (env == null) throw new Panic(STR."Unbound index \{index}");
+        yield env.get(index);
+      }
+      case FreeTerm(var var) -> new Free(var);
+      case LamTerm(var body) -> new Lam(clo(body, env));
+      case PiTerm(var param, var body) -> new Pi(eval(param, env), clo(body, env));
+      case SigmaTerm(var params) -> new Sigma(params, env);
+      case TupTerm(var items) -> new Tup(items.map(item -> eval(item, env)));
+      case AppTerm(var fun, var arg) -> app(eval(fun, env), eval(arg, env));
+      case ProjTerm(var of, var index) -> proj(eval(of, env), index);
+      case SortTerm sort -> new Sort(sort);
+      case DataCall(var ref, var ulift, var args) -> new Data(ref, ulift, args.map(arg -> eval(arg, env)));
+      case ConCall(var head, var conArgs) when !head.ref().hasEq() -> new Con(head.ref(), head.ulift(),
+        head.ownerArgs().map(arg -> eval(arg, env)), conArgs.map(arg -> eval(arg, env)));
+      case FnCall(var ref, var ulift, var args) when ref instanceof FnDef.Delegate delegate ->
+        unfold(delegate, ulift, args.map(arg -> eval(arg, env)));
+      default -> delegate(term, env);
+    };
+  }
+
+  private static @NotNull Clo clo(@NotNull Closure closure, @Nullable Env env) {
+    var body = switch (closure) {
+      case Closure.Idx(var idx) -> idx;
+      case Closure.Env lazy -> lazy.toIdx().body();
+      case Closure.Jit jit -> jit.toLam().body();
+    };
+    return new Clo(env, body);
+  }
+
+  public @NotNull Value instantiate(@NotNull Clo clo, @NotNull Value arg) {
+    return eval(clo.body(), new Env(arg, clo.env()));
+  }
+
+  public @NotNull Value app(@NotNull Value fun, @NotNull Value arg) {
+    return switch (fun) {
+      case Lam(var body) -> instantiate(body, arg);
+      case Neu neu -> new App(neu, arg);
+      default -> throw new Panic(STR."Applying \{fun.getClass()}");
+    };
+  }
+
+  public @NotNull Value proj(@NotNull Value of, int index) {
+    return switch (of) {
+      case Tup(var items) -> items.get(index);
+      case Neu neu -> new Proj(neu, index);
+      default -> throw new Panic(STR."Projecting \{of.getClass()}");
+    };
+  }
+
+  /** Substitute the environment into {@param term} and leave it to the {@link #normalizer} */
+  private @NotNull Value delegate(@NotNull Term term, @Nullable Env env) {
+    if (env != null) term = term.instantiateAll(quoteEnv(env));
+    var whnf = normalizer.apply(term);
+    return switch (whnf) {
+      case LamTerm _, PiTerm _, SigmaTerm _, TupTerm _, SortTerm _, DataCall _, FreeTerm _ -> eval(whnf, null);
+      case ConCall con when !con.ref().hasEq() -> eval(con, null);
+      // stuck calls are not evaluated again, which would delegate them back here
+      default -> new Opaque(whnf);
+    };
+  }
+
+  private @NotNull SeqView<Term> quoteEnv(@NotNull Env env) {
+    var terms = MutableList.<Term>create();
+    for (var e = env; e != null; e = e.tail()) terms.append(quote(e.head()));
+    return terms.view();
+  }
+
+  private static @Nullable Env extend(@Nullable Env env, @NotNull ImmutableSeq<Value> values) {
+    for (var value : values) env = new Env(value, env);
+    return env;
+  }
+
+  /// region Unfolding
+
+  private @NotNull Value unfold(@NotNull FnDef.Delegate delegate, int ulift, @NotNull ImmutableSeq<Value> args) {
+    var core = delegate.core();
+    if (core == null || normalizer.opaque.contains(core.ref()) || core.is(Modifier.Opaque))
+      return new Fn(delegate, ulift, args);
+    return switch (core.body()) {
+      case Either.Left(var body) -> eval(body.elevate(ulift), extend(null, args));
+      case Either.Right(var clauses) -> {
+        var overlap = core.is(Modifier.Overlap);
+        for (var clause : clauses) {
+          var subst = MutableList.<Value>create();
+          var state = matchMany(clause.patterns(), args, subst);
+          if (state == null) yield eval(clause.body().elevate(ulift), extend(null, subst.toImmutableSeq()));
+          if (state == Stuck && !overlap) break;
+        }
+        yield new Fn(delegate, ulift, args);
+      }
+    };
+  }
+
+  /**
+   * Agrees with {@link PatMatcher#matchInto}, except that metas of patterns are never solved.
+   *
+   * @return null if success, with the bindings appended to {@param subst}
+   */
+  private @Nullable PatMatcher.State match(@NotNull Pat pat, @NotNull Value value, @NotNull MutableList<Value> subst) {
+    return switch (pat) {
+      case Pat.Absurd _, Pat.Meta _ -> Stuck;
+      case Pat.Bind _ -> {
+        subst.append(value);
+        yield null;
+      }
+      case Pat.Con con -> switch (value) {
+        case Con kon -> con.ref().equals(kon.ref()) ? matchMany(con.args(), kon.conArgs(), subst) : Mismatch;
+        case Opaque(ConCallLike kon) -> con.ref().equals(kon.ref())
+          ? matchMany(con.args(), kon.conArgs().map(this::eval), subst) : Mismatch;
+        default -> Stuck;
+      };
+      case Pat.Tuple tuple -> value instanceof Tup(var items) ? matchMany(tuple.elements(), items, subst) : Stuck;
+      case Pat.ShapedInt lit -> value instanceof Opaque(IntegerTerm rit)
+        ? lit.repr().equals(rit.repr()) ? null : Mismatch
+        : match(lit.constructorForm(), value, subst);
+    };
+  }
+
+  private @Nullable PatMatcher.State
+  matchMany(@NotNull ImmutableSeq<Pat> pats, @NotNull ImmutableSeq<Value> values, @NotNull MutableList<Value> subst) {
+    assert pats.sizeEquals(values);
+    for (int i = 0, size = pats.size(); i < size; i++) {
+      var state = match(pats.get(i), values.get(i), subst);
+      if (state != null) return state;
+    }
+    return null;
+  }
+
+  /// endregion Unfolding
+
+  /// region Read back
+
+  private static @NotNull Free fresh() { return new Free(LocalVar.generate("x")); }
+
+  public @NotNull Term quote(@NotNull Value value) {
+    return switch (value) {
+      case Free(var var) -> new FreeTerm(var);
+      case App(var fun, var arg) -> new AppTerm(quote(fun), quote(arg));
+      case Proj(var of, var index) -> new ProjTerm(quote(of), index);
+      case Fn(var ref, var ulift, var args) -> new FnCall(ref, ulift, args.map(this::quote));
+      case Opaque(var term) -> term;
+      case Lam(var body) -> {
+        var x = fresh();
+        yield new LamTerm(quote(instantiate(body, x)).bind(x.var()));
+      }
+      case Pi(var param, var body) -> {
+        var x = fresh();
+        yield new PiTerm(quote(param), quote(instantiate(body, x)).bind(x.var()));
+      }
+      case Sigma(var params, var env) -> {
+        var vars = MutableList.<LocalVar>create();
+        var quoted = MutableList.<Term>create();
+        for (var param : params) {
+          quoted.append(quote(eval(param, env)).bindTele(vars.view()));
+          var x = fresh();
+          vars.append(x.var());
+          env = new Env(x, env);
+        }
+        yield new SigmaTerm(quoted.toImmutableSeq());
+      }
+      case Tup(var items) -> new TupTerm(items.map(this::quote));
+      case Sort(var sort) -> sort;
+      case Data(var ref, var ulift, var args) -> new DataCall(ref, ulift, args.map(this::quote));
+      case Con(var ref, var ulift, var ownerArgs, var conArgs) ->
+        new ConCall(ref, ownerArgs.map(this::quote), ulift, conArgs.map(this::quote));
+    };
+  }
+
+  /** Normal form of {@param term} */
+  public @NotNull Term normalize(@NotNull Term term) { return quote(eval(term)); }
+
+  /// endregion Read back
+
+  /// region Conversion
+
+  /** @return true if {@param lhs} and {@param rhs} are definitionally equal, false if it does not know */
+  public boolean conv(@NotNull Term lhs, @NotNull Term rhs) { return conv(eval(lhs), eval(rhs)); }
+
+  public boolean conv(@NotNull Value lhs, @NotNull Value rhs) {
+    if (lhs == rhs) return true;
+    return switch (new Pair<>(lhs, rhs)) {
+      case Pair(Lam(var lbody), Lam(var rbody)) -> {
+        var x = fresh();
+        yield conv(instantiate(lbody, x), instantiate(rbody, x));
+      }
+      case Pair(Lam(var lbody), Neu _) -> {
+        var x = fresh();
+        yield conv(instantiate(lbody, x), app(rhs, x));
+      }
+      case Pair(Neu _, Lam(var rbody)) -> {
+        var x = fresh();
+        yield conv(app(lhs, x), instantiate(rbody, x));
+      }
+      case Pair(Tup(var litems), Tup(var ritems)) -> convMany(litems, ritems);
+      case Pair(Tup(var litems), Neu _) -> litems.allMatchWith(ImmutableSeq.fill(litems.size(), i -> proj(rhs, i)), this::conv);
+      case Pair(Neu _, Tup(var ritems)) -> ritems.allMatchWith(ImmutableSeq.fill(ritems.size(), i -> proj(lhs, i)), this::conv);
+      case Pair(Pi(var lparam, var lbody), Pi(var rparam, var rbody)) -> {
+        if (!conv(lparam, rparam)) yield false;
+        var x = fresh();
+        yield conv(instantiate(lbody, x), instantiate(rbody, x));
+      }
+      case Pair(Sigma(var lparams, var lenv), Sigma(var rparams, var renv)) -> {
+        if (!lparams.sizeEquals(rparams)) yield false;
+        for (int i = 0; i < lparams.size(); i++) {
+          if (!conv(eval(lparams.get(i), lenv), eval(rparams.get(i), renv))) yield false;
+          var x = fresh();
+          lenv = new Env(x, lenv);
+          renv = new Env(x, renv);
+        }
+        yield true;
+      }
+      case Pair(Sort(var lsort), Sort(var rsort)) -> lsort.equals(rsort);
+      case Pair(Data(var lref, var lulift, var largs), Data(var rref, var rulift, var rargs)) ->
+        lref.equals(rref) && lulift == rulift && convMany(largs, rargs);
+      case Pair(Con(var lref, var lulift, var lown, var lcon), Con(var rref, var rulift, var rown, var rcon)) ->
+        lref.equals(rref) && lulift == rulift && convMany(lown, rown) && convMany(lcon, rcon);
+      case Pair(Free(var lvar), Free(var rvar)) -> lvar == rvar;
+      case Pair(App(var lfun, var larg), App(var rfun, var rarg)) -> conv(lfun, rfun) && conv(larg, rarg);
+      case Pair(Proj(var lof, var lindex), Proj(var rof, var rindex)) -> lindex == rindex && conv(lof, rof);
+      case Pair(Fn(var lref, var lulift, var largs), Fn(var rref, var rulift, var rargs)) ->
+        lref.equals(rref) && lulift == rulift && convMany(largs, rargs);
+      case Pair(Opaque(var lterm), Opaque(var rterm)) -> lterm.equals(rterm);
+      default -> false;
+    };
+  }
+
+  private boolean convMany(@NotNull ImmutableSeq<Value> lhs, @NotNull ImmutableSeq<Value> rhs) {
+    return lhs.sizeEquals(rhs) && lhs.allMatchWith(rhs, this::conv);
+  }
+
+  /// endregion Conversion
+}
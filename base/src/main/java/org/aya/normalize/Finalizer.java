@@ -7,6 +7,7 @@ import org.aya.normalize.error.UnsolvedLit;
 import org.aya.normalize.error.UnsolvedMeta;
 import org.aya.syntax.core.term.MetaPatTerm;
 import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TermWalker;
 import org.aya.syntax.core.term.call.MetaCall;
 import org.aya.syntax.core.term.repr.MetaLitTerm;
 import org.aya.tyck.TyckState;
@@ -14,17 +15,34 @@ import org.aya.tyck.tycker.Problematic;
 import org.aya.tyck.tycker.Stateful;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public interface Finalizer {
   @NotNull TyckState state();
   default @NotNull Term doZonk(@NotNull Term term) {
+    var inlined = inline(term);
+    if (inlined != null) return inlined;
+    return TermWalker.descent(term, new TermWalker.Visitor() {
+      @Override public @Nullable Term pre(int depth, @NotNull Term t) {
+        enter(t);
+        var solution = inline(t);
+        return solution == null ? null : exit(solution);
+      }
+      @Override public @NotNull Term post(int depth, @NotNull Term t) { return exit(t); }
+    });
+  }
+  private @Nullable Term inline(@NotNull Term term) {
     return switch (term) {
       case MetaCall meta -> state().computeSolution(meta, this::doZonk);
       case MetaPatTerm meta -> meta.inline(this::doZonk);
       case MetaLitTerm meta -> meta.inline(this::doZonk);
-      default -> term.descent(this::zonk);
+      default -> null;
     };
   }
+  /** Called before a subterm of what {@link #doZonk} is given is zonked */
+  default void enter(@NotNull Term term) { }
+  /** @return the zonked subterm, {@param result} is the zonked one of the last {@link #enter}ed subterm */
+  default @NotNull Term exit(@NotNull Term result) { return result; }
   @NotNull Term zonk(@NotNull Term term);
 
   record Freeze(@NotNull Stateful delegate) implements Finalizer {
@@ -41,8 +59,11 @@ public interface Finalizer {
     @Override public @NotNull TyckState state() { return delegate.state(); }
     @Override public @NotNull Reporter reporter() { return delegate.reporter(); }
     public @NotNull Term zonk(@NotNull Term term) {
-      stack.push(term);
-      var result = doZonk(term);
+      enter(term);
+      return exit(doZonk(term));
+    }
+    @Override public void enter(@NotNull Term term) { stack.push(term); }
+    @Override public @NotNull Term exit(@NotNull Term result) {
       // result shall not be MetaPatTerm
       switch (result) {
         case MetaCall meta -> fail(new UnsolvedMeta(stack.view()
@@ -3,25 +3,30 @@
 package org.aya.normalize;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.ImmutableArray;
 import kala.collection.immutable.ImmutableSet;
+import kala.collection.immutable.primitive.ImmutableIntSeq;
 import kala.control.Either;
 import kala.control.Option;
-import kala.control.Result;
 import org.aya.generic.Modifier;
 import org.aya.syntax.compile.JitFn;
 import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.pat.CaseTree;
 import org.aya.syntax.core.term.*;
 import org.aya.syntax.core.term.call.*;
 import org.aya.syntax.core.term.marker.BetaRedex;
 import org.aya.syntax.core.term.marker.StableWHNF;
 import org.aya.syntax.core.term.xtt.CoeTerm;
 import org.aya.syntax.core.term.xtt.DimTerm;
+import org.aya.syntax.core.term.xtt.PAppTerm;
 import org.aya.syntax.literate.CodeOptions;
 import org.aya.syntax.ref.AnyVar;
 import org.aya.tyck.TyckState;
 import org.aya.tyck.tycker.Stateful;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.IdentityHashMap;
 import java.util.function.UnaryOperator;
 
 import static org.aya.normalize.PatMatcher.State.Stuck;
@@ -36,67 +41,117 @@ import static org.aya.normalize.PatMatcher.State.Stuck;
 public final class Normalizer implements UnaryOperator<Term> {
   public final @NotNull TyckState state;
   public @NotNull ImmutableSet<AnyVar> opaque = ImmutableSet.empty();
-  private boolean usePostTerm = false;
+  /** Whether the current whnf got stuck on a function without a core, see {@link #apply} */
+  private boolean coreless = false;
   public Normalizer(@NotNull TyckState state) { this.state = state; }
 
   @Override public Term apply(Term term) {
     if (term instanceof StableWHNF || term instanceof FreeTerm) return term;
     // ConCall for point constructors are always in WHNF
     if (term instanceof ConCall con && !con.ref().hasEq()) return con;
-    var postTerm = term.descent(this);
-    var defaultValue = usePostTerm ? postTerm : term;
+    // the results depend on [opaque], cache only the plain whnf
+    if (!(term instanceof FnCall || term instanceof MetaCall) || opaque.isNotEmpty())
+      return whnf(term);
+    var cache = state.whnfCache();
+    var result = cache.get(term);
+    if (result == null) {
+      var outer = coreless;
+      coreless = false;
+      result = whnf(term);
+      // a function of the mutual block being checked gets its core later, and the whnf may change then
+      if (!coreless) cache.put(term, result);
+      coreless |= outer;
+    }
+    return result;
+  }
 
-    return switch (postTerm) {
-      case StableWHNF _, FreeTerm _ -> postTerm;
-      case BetaRedex app -> {
-        var result = app.make();
-        yield result == app ? result : apply(result);
-      }
+  /** Only the parts of {@param term} that decide the reduction are normalized, see also {@link #force} */
+  private @NotNull Term whnf(@NotNull Term term) {
+    return switch (term) {
+      case StableWHNF _, FreeTerm _ -> term;
+      case AppTerm(var fun, var arg) -> reduce(new AppTerm(apply(fun), arg));
+      case ProjTerm(var of, var index) -> reduce(new ProjTerm(apply(of), index));
+      case PAppTerm(var fun, var arg, var a, var b) -> reduce(new PAppTerm(apply(fun), apply(arg), a, b));
       case FnCall(var fn, int ulift, var args) -> switch (fn) {
         case JitFn instance -> {
-          var result = instance.invoke(term, args);
+          // the compiled code normalizes the parts of the arguments it looks into
+          var result = instance.invoke(this, term, args);
           if (term != result) yield apply(result.elevate(ulift));
           yield result;
         }
-        case FnDef.Delegate delegate -> {
-          FnDef core = delegate.core();
-          if (core == null) yield defaultValue;
-          if (!isOpaque(core)) yield switch (core.body()) {
-            case Either.Left(var body) -> apply(body.instantiateTele(args.view()));
-            case Either.Right(var clauses) -> {
-              var result = tryUnfoldClauses(clauses, args, ulift, core.is(Modifier.Overlap));
-              // we may get stuck
-              if (result.isEmpty()) yield defaultValue;
-              yield apply(result.get());
-            }
-          };
-          yield defaultValue;
+        case FnDef.Delegate delegate when delegate.core() == null -> {
+          coreless = true;
+          yield term;
+        }
+        case FnDef.Delegate _ -> {
+          var result = unfold((FnCall) term);
+          // we may get stuck
+          yield result == null ? term : apply(result);
         }
       };
       case RuleReducer reduceRule -> {
-        var result = reduceRule.rule().apply(reduceRule.args());
+        // the rules compute on literals, so they need all the arguments
+        var args = reduceRule.args().map(this);
+        var result = reduceRule.rule().apply(args);
         if (result != null) yield apply(result);
         // We can't handle it, try to delegate to FnCall
         yield reduceRule instanceof RuleReducer.Fn fnRule
-          ? apply(fnRule.toFnCall())
+          ? apply(new FnCall(fnRule.rule().ref(), fnRule.ulift(), args))
           : reduceRule;
       }
-      case ConCall(var head, _) when !head.ref().hasEq() -> defaultValue;
-      case ConCall(var head, var args) when args.getLast() instanceof DimTerm dim ->
+      case ConCall(var head, _) when !head.ref().hasEq() -> term;
+      case ConCall(var head, var args) when apply(args.getLast()) instanceof DimTerm dim ->
         head.ref().equality(args, dim == DimTerm.I0);
       case PrimCall prim -> state.primFactory().unfold(prim, state);
       case MetaPatTerm metaTerm -> metaTerm.inline(this);
       case MetaCall meta -> state.computeSolution(meta, this);
       case CoeTerm(var type, var r, var s) -> {
-        if (r instanceof DimTerm || r instanceof FreeTerm) {
-          if (r.equals(s)) yield new LamTerm(new LocalTerm(0));
+        var from = apply(r);
+        if (from instanceof DimTerm || from instanceof FreeTerm) {
+          if (from.equals(apply(s))) yield new LamTerm(new LocalTerm(0));
         }
-        yield defaultValue;
+        yield term;
       }
       // TODO: handle other cases
       // ice: what are the other cases?
       // h: i don't know
-      default -> defaultValue;
+      default -> term;
+    };
+  }
+
+  /** @param redex whose head is normalized */
+  private @NotNull Term reduce(@NotNull BetaRedex redex) {
+    var result = redex.make();
+    return result == redex ? result : apply(result);
+  }
+
+  /**
+   * Normalize the terms on demand of a {@link PatMatcher}, each of them at most once,
+   * since the clauses of a function often look into the same arguments.
+   */
+  private @NotNull UnaryOperator<Term> force() {
+    var forced = new IdentityHashMap<Term, Term>(8);
+    return term -> forced.computeIfAbsent(term, this);
+  }
+
+  /**
+   * Unfold {@param call} by one step, without normalizing the result.
+   *
+   * @return null if the function is compiled, opaque, or stuck
+   */
+  public @Nullable Term unfold(@NotNull FnCall call) {
+    if (!(call.ref() instanceof FnDef.Delegate delegate)) return null;
+    FnDef core = delegate.core();
+    if (core == null || isOpaque(core)) return null;
+    return switch (core.body()) {
+      case Either.Left(var body) -> body.instantiateTele(call.args().view());
+      case Either.Right(var clauses) -> {
+        var tree = core.tree();
+        var result = tree != null
+          ? tryUnfoldClauses(tree, clauses, call.args(), call.ulift())
+          : tryUnfoldClauses(clauses, call.args(), call.ulift(), core.is(Modifier.Overlap));
+        yield result.getOrNull();
+      }
     };
   }
 
@@ -108,24 +163,77 @@ public final class Normalizer implements UnaryOperator<Term> {
     @NotNull ImmutableSeq<Term.Matching> clauses, @NotNull ImmutableSeq<Term> args,
     int ulift, boolean orderIndependent
   ) {
-    for (var matchy : clauses) {
-      var matcher = new PatMatcher(false, this);
-      switch (matcher.apply(matchy.patterns(), args)) {
-        case Result.Err(var st) -> {
-          if (!orderIndependent && st == Stuck) return Option.none();
-        }
-        case Result.Ok(var subst) -> {
-          return Option.some(matchy.body().elevate(ulift).instantiateTele(subst.view()));
-        }
+    var matcher = new PatMatcher(false, force());
+    var bindCounts = clauses.mapToInt(ImmutableIntSeq.factory(), matchy -> PatMatcher.bindCount(matchy.patterns()));
+    // shared by all clauses, a clause overwrites what it binds
+    var subst = new Term[bindCounts.isEmpty() ? 0 : bindCounts.max()];
+    for (int i = 0; i < clauses.size(); i++) {
+      var matchy = clauses.get(i);
+      var st = matcher.matchInto(matchy.patterns(), args, subst);
+      if (st == null) {
+        var tele = ImmutableArray.Unsafe.wrap(subst).view().take(bindCounts.get(i));
+        return Option.some(matchy.body().elevate(ulift).instantiateTele(tele));
       }
+      if (!orderIndependent && st == Stuck) return Option.none();
     }
     return Option.none();
   }
 
-  private class Full implements UnaryOperator<Term> {
-    { usePostTerm = true; }
+  /**
+   * Walk {@param tree} compiled from {@param clauses}, which agrees with
+   * {@link #tryUnfoldClauses(ImmutableSeq, ImmutableSeq, int, boolean)}
+   * but normalizes each argument at most once.
+   */
+  public @NotNull Option<Term> tryUnfoldClauses(
+    @NotNull CaseTree tree, @NotNull ImmutableSeq<Term.Matching> clauses,
+    @NotNull ImmutableSeq<Term> args, int ulift
+  ) {
+    var occs = new Term[tree.occurrences()];
+    args.forEachIndexed((i, arg) -> occs[i] = arg);
+    var node = tree.root();
+    while (true) switch (node) {
+      case CaseTree.Fail _ -> {
+        return Option.none();
+      }
+      case CaseTree.Leaf(var clause, var binds) -> {
+        var subst = ImmutableSeq.fill(binds.length, i -> occs[binds[i]]);
+        return Option.some(clauses.get(clause).body().elevate(ulift).instantiateTele(subst.view()));
+      }
+      case CaseTree.Split(var occ, var branches, var otherwise, var stuck) -> {
+        // the normalized occurrence is shared with the leaves
+        occs[occ] = apply(occs[occ]);
+        if (!(occs[occ] instanceof ConCallLike kon)) {
+          node = stuck;
+          continue;
+        }
+        var head = kon.ref();
+        var branch = branches.find(b -> b.con().equals(head));
+        if (branch.isEmpty()) {
+          node = otherwise;
+          continue;
+        }
+        var conArgs = kon.conArgs();
+        var firstOcc = branch.get().firstOcc();
+        for (int i = 0; i < branch.get().arity(); i++) occs[firstOcc + i] = conArgs.get(i);
+        node = branch.get().body();
+      }
+      case CaseTree.Tuple(var occ, var firstOcc, var size, var body, var stuck) -> {
+        occs[occ] = apply(occs[occ]);
+        if (!(occs[occ] instanceof TupTerm(var items))) {
+          node = stuck;
+          continue;
+        }
+        for (int i = 0; i < size; i++) occs[firstOcc + i] = items.get(i);
+        node = body;
+      }
+    }
+  }
 
-    @Override public Term apply(Term term) { return Normalizer.this.apply(term).descent(this); }
+  /** Head normalize every subterm from the root down, with an explicit stack */
+  private class Full implements TermWalker.Visitor {
+    @Override public @Nullable Term pre(int depth, @NotNull Term term) { return null; }
+    @Override public @NotNull Term head(int depth, @NotNull Term term) { return Normalizer.this.apply(term); }
+    public @NotNull Term apply(@NotNull Term term) { return TermWalker.descent(Normalizer.this.apply(term), this); }
   }
 
   /**
@@ -135,7 +243,7 @@ public final class Normalizer implements UnaryOperator<Term> {
   public @NotNull Term normalize(Term term, CodeOptions.NormalizeMode mode) {
     return switch (mode) {
       case HEAD -> apply(term);
-      case FULL -> new Full().apply(term);
+      case FULL -> state.nbe() ? new Evaluator(this).normalize(term) : new Full().apply(term);
       case NULL -> new Finalizer.Freeze(() -> state).zonk(term);
     };
   }
@@ -2,9 +2,11 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.normalize;
 
+import kala.collection.immutable.ImmutableArray;
 import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableList;
 import kala.control.Result;
+import kala.value.primitive.MutableIntValue;
 import org.aya.syntax.core.pat.Pat;
 import org.aya.syntax.core.pat.PatToTerm;
 import org.aya.syntax.core.term.MetaPatTerm;
@@ -17,6 +19,7 @@ import org.aya.syntax.core.term.repr.ListTerm;
 import org.aya.tyck.pat.BindEater;
 import org.aya.util.error.Panic;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.UnaryOperator;
 
@@ -31,6 +34,8 @@ public record PatMatcher(boolean inferMeta, @NotNull UnaryOperator<Term> pre) {
     Mismatch
   }
   public static class Failure extends Throwable {
+    private static final Failure STUCK = new Failure(State.Stuck);
+    private static final Failure MISMATCH = new Failure(State.Mismatch);
     public final State reason;
 
     private Failure(State reason) {
@@ -40,45 +45,76 @@ public record PatMatcher(boolean inferMeta, @NotNull UnaryOperator<Term> pre) {
   }
 
   /**
-   * Match {@param term} against to {@param pat}
+   * Match {@param term} against to {@param pat}, the bindings of {@param pat} are written to {@param subst}
    *
-   * @return a substitution of corresponding bindings of {@param pat} if success
+   * @param at where the first binding of {@param pat} is written to
+   * @return where the next binding is written to
    */
-  private @NotNull ImmutableSeq<Term> match(@NotNull Pat pat, @NotNull Term term) throws Failure {
+  private int match(@NotNull Pat pat, @NotNull Term term, @NotNull Term[] subst, int at) throws Failure {
     return switch (pat) {
       // We stuck on absurd patterns, as if this is reached, the term must have an empty type,
       // which we should be expecting to refute, not to compute on it.
-      case Pat.Absurd _ -> throw new Failure(State.Stuck);
-      case Pat.Bind _ -> ImmutableSeq.of(term);
+      case Pat.Absurd _ -> throw Failure.STUCK;
+      case Pat.Bind _ -> {
+        subst[at] = term;
+        yield at + 1;
+      }
       case Pat.Con con -> switch (pre.apply(term)) {
         case ConCallLike kon -> {
-          if (!con.ref().equals(kon.ref())) throw new Failure(State.Mismatch);
-          yield matchMany(con.args(), kon.conArgs());
+          if (!con.ref().equals(kon.ref())) throw Failure.MISMATCH;
+          yield matchMany(con.args(), kon.conArgs(), subst, at);
           // ^ arguments for data should not be matched
         }
-        case MetaPatTerm metaPatTerm -> solve(pat, metaPatTerm);
-        default -> throw new Failure(State.Stuck);
+        case MetaPatTerm metaPatTerm -> solve(pat, metaPatTerm, subst, at);
+        default -> throw Failure.STUCK;
       };
       case Pat.Tuple tuple -> switch (pre.apply(term)) {
-        case TupTerm tup -> matchMany(tuple.elements(), tup.items());
-        case MetaPatTerm metaPatTerm -> solve(pat, metaPatTerm);
-        default -> throw new Failure(State.Stuck);
+        case TupTerm tup -> matchMany(tuple.elements(), tup.items(), subst, at);
+        case MetaPatTerm metaPatTerm -> solve(pat, metaPatTerm, subst, at);
+        default -> throw Failure.STUCK;
       };
       // You can't match with a tycking pattern!
       case Pat.Meta _ -> throw new Panic("Illegal pattern: Pat.Meta");
       case Pat.ShapedInt lit -> switch (pre.apply(term)) {
         case IntegerTerm rit -> {
-          if (lit.repr() != rit.repr()) throw new Failure(State.Mismatch);
-          yield ImmutableSeq.empty();
+          if (!lit.repr().equals(rit.repr())) throw Failure.MISMATCH;
+          yield at;
         }
-        case ConCall con -> match(lit.constructorForm(), con);
+        case ConCall con -> match(lit.constructorForm(), con, subst, at);
         // we only need to handle matching both literals, otherwise we just rematch it
         // with constructor form to reuse the code as much as possible (like solving MetaPats).
-        case Term t -> match(lit.constructorForm(), t);
+        case Term t -> match(lit.constructorForm(), t, subst, at);
       };
     };
   }
 
+  /** @return the number of bindings of {@param pats}, which is the size of the substitution of a successful match */
+  public static int bindCount(@NotNull ImmutableSeq<Pat> pats) {
+    var acc = MutableIntValue.create();
+    pats.forEach(pat -> pat.consumeBindings((_, _) -> acc.increment()));
+    return acc.get();
+  }
+
+  /**
+   * Match {@param terms} against to {@param pats} without allocating.
+   *
+   * @param subst the first {@link #bindCount} elements are overwritten with the bindings of {@param pats}
+   * @return null if success, otherwise the reason of the failure
+   * @apiNote The binding order is the same as {@link Pat#consumeBindings(java.util.function.BiConsumer)}
+   */
+  public @Nullable State matchInto(
+    @NotNull ImmutableSeq<Pat> pats,
+    @NotNull ImmutableSeq<Term> terms,
+    @NotNull Term[] subst
+  ) {
+    try {
+      matchMany(pats, terms, subst, 0);
+      return null;
+    } catch (Failure e) {
+      return e.reason;
+    }
+  }
+
   /**
    * @return a substitution of corresponding bindings of {@param pats} if success.
    * @apiNote The binding order is the same as {@link Pat#consumeBindings(java.util.function.BiConsumer)}
@@ -88,45 +124,46 @@ public record PatMatcher(boolean inferMeta, @NotNull UnaryOperator<Term> pre) {
     @NotNull ImmutableSeq<Pat> pats,
     @NotNull ImmutableSeq<Term> terms
   ) {
-    try {
-      return Result.ok(matchMany(pats, terms));
-    } catch (Failure e) {
-      return Result.err(e.reason);
-    }
+    var subst = new Term[bindCount(pats)];
+    var failure = matchInto(pats, terms, subst);
+    return failure == null ? Result.ok(ImmutableArray.Unsafe.wrap(subst)) : Result.err(failure);
   }
 
   public @NotNull Result<Term, State> apply(
     @NotNull Term.Matching matching,
     @NotNull ImmutableSeq<Term> terms
   ) {
-    try {
-      return Result.ok(matching.body().instantiateTele(matchMany(matching.patterns(), terms).view()));
-    } catch (Failure e) {
-      return Result.err(e.reason);
-    }
+    var subst = new Term[bindCount(matching.patterns())];
+    var failure = matchInto(matching.patterns(), terms, subst);
+    return failure == null
+      ? Result.ok(matching.body().instantiateTele(ImmutableArray.Unsafe.wrap(subst).view()))
+      : Result.err(failure);
   }
 
   /**
-   * @see #match(Pat, Term)
+   * @see #match(Pat, Term, Term[], int)
    */
-  private @NotNull ImmutableSeq<Term> matchMany(
+  private int matchMany(
     @NotNull ImmutableSeq<Pat> pats,
-    @NotNull ImmutableSeq<Term> terms
+    @NotNull ImmutableSeq<Term> terms,
+    @NotNull Term[] subst, int at
   ) throws Failure {
     assert pats.sizeEquals(terms) : "List size mismatch 😱";
 
-    var subst = MutableList.<Term>create();
-    pats.forEachWithChecked(terms, (pat, term) -> subst.appendAll(match(pat, term)));
-    return subst.toImmutableSeq();
+    for (int i = 0, size = pats.size(); i < size; i++) at = match(pats.get(i), terms.get(i), subst, at);
+    return at;
   }
 
-  private @NotNull ImmutableSeq<Term> solve(@NotNull Pat pat, @NotNull MetaPatTerm term) throws Failure {
+  private int solve(@NotNull Pat pat, @NotNull MetaPatTerm term, @NotNull Term[] subst, int at) throws Failure {
     var maybeMeta = realSolution(term);
     if (maybeMeta instanceof MetaPatTerm meta) {
-      if (inferMeta) return doSolveMeta(pat, meta.meta());
-      else throw new Failure(State.Stuck);
+      if (inferMeta) {
+        var solved = doSolveMeta(pat, meta.meta());
+        for (var binding : solved) subst[at++] = binding;
+        return at;
+      } else throw Failure.STUCK;
     } else {
-      return match(pat, maybeMeta);
+      return match(pat, maybeMeta, subst, at);
     }
   }
 
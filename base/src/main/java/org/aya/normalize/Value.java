@@ -0,0 +1,59 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.syntax.core.def.ConDefLike;
+import org.aya.syntax.core.def.DataDefLike;
+import org.aya.syntax.core.def.FnDefLike;
+import org.aya.syntax.core.term.SortTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.ref.LocalVar;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The semantic domain of {@link Evaluator}: terms evaluated to weak head normal form,
+ * where the bodies of binders are {@link Clo}sures over the environment they are evaluated in.
+ * Variables are locally nameless: a binder is opened with a fresh {@link Free} variable.
+ */
+public sealed interface Value {
+  /** The values of the loose indices of a term, {@link #head} is index 0, the empty environment is null */
+  record Env(@NotNull Value head, @Nullable Env tail) {
+    public @NotNull Value get(int index) {
+      var env = this;
+      for (int i = 0; i < index; i++) env = env.tail;
+      assert env != null : "Unbound index";
+      return env.head;
+    }
+  }
+
+  /** The body of a binder, index 0 is the bound variable and the rest are looked up in {@param env} */
+  record Clo(@Nullable Env env, @NotNull Term body) { }
+
+  /** Values that are stuck on a variable or on something the evaluator does not compute */
+  sealed interface Neu extends Value { }
+  record Free(@NotNull LocalVar var) implements Neu { }
+  record App(@NotNull Neu fun, @NotNull Value arg) implements Neu { }
+  record Proj(@NotNull Neu of, int index) implements Neu { }
+  /** A stuck function call */
+  record Fn(@NotNull FnDefLike ref, int ulift, @NotNull ImmutableSeq<Value> args) implements Neu { }
+  /**
+   * A term in whnf that is left to {@link Normalizer}, it has no loose indices.
+   * Literals and constructors with boundaries are also kept as is.
+   */
+  record Opaque(@NotNull Term term) implements Neu { }
+
+  record Lam(@NotNull Clo body) implements Value { }
+  record Pi(@NotNull Value param, @NotNull Clo body) implements Value { }
+  /** The parameter {@code i} of {@param params} is evaluated in {@param env} extended by the first {@code i} components */
+  record Sigma(@NotNull ImmutableSeq<Term> params, @Nullable Env env) implements Value { }
+  record Tup(@NotNull ImmutableSeq<Value> items) implements Value { }
+  record Sort(@NotNull SortTerm sort) implements Value { }
+  record Data(@NotNull DataDefLike ref, int ulift, @NotNull ImmutableSeq<Value> args) implements Value { }
+  record Con(
+    @NotNull ConDefLike ref, int ulift,
+    @NotNull ImmutableSeq<Value> ownerArgs,
+    @NotNull ImmutableSeq<Value> conArgs
+  ) implements Value { }
+}
@@ -0,0 +1,76 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TermInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IdentityHashMap;
+
+/**
+ * The whnf of calls computed by the {@link Normalizer}s of one {@link org.aya.tyck.TyckState}, keyed by identity.
+ * The whnf of a term with metas depends on their solutions, so it is dropped by {@link #invalidate()}
+ * whenever a meta is solved. The other entries stay valid: they only unfold definitions that are already checked.
+ * Pattern metas are solved by {@link PatMatcher#doSolveMeta} without a state to invalidate,
+ * so the terms with them are never cached. Neither are the terms whose whnf gets stuck on a function
+ * of the mutual block being checked, which has no core yet.
+ * <p>
+ * The cache is emptied when it holds {@link #CAPACITY} entries,
+ * so that a long-lived state, like the one of the REPL, does not keep every term it has seen.
+ */
+public final class WhnfCache {
+  public static final int CAPACITY = 1 << 16;
+
+  /** The counters of the caches of the states sharing it, reported per module */
+  public static final class Stats {
+    private int hits = 0;
+    private int misses = 0;
+    private int evictions = 0;
+
+    public int hits() { return hits; }
+    public int misses() { return misses; }
+    public int evictions() { return evictions; }
+
+    @Override public String toString() {
+      return STR."whnf cache: \{hits} hits, \{misses} misses, \{evictions} evictions";
+    }
+  }
+
+  private final @NotNull IdentityHashMap<Term, Term> stable = new IdentityHashMap<>();
+  private final @NotNull IdentityHashMap<Term, Term> withMetas = new IdentityHashMap<>();
+  private final @NotNull Stats stats;
+
+  public WhnfCache() { this(new Stats()); }
+  public WhnfCache(@NotNull Stats stats) { this.stats = stats; }
+
+  public @Nullable Term get(@NotNull Term term) {
+    var whnf = stable.get(term);
+    if (whnf == null) whnf = withMetas.get(term);
+    if (whnf == null) stats.misses++;
+    else stats.hits++;
+    return whnf;
+  }
+
+  public void put(@NotNull Term term, @NotNull Term whnf) {
+    if (TermInfo.hasPatMeta(term) || TermInfo.hasPatMeta(whnf)) return;
+    if (size() >= CAPACITY) {
+      stable.clear();
+      withMetas.clear();
+      stats.evictions++;
+    }
+    (TermInfo.hasMeta(term) ? withMetas : stable).put(term, whnf);
+  }
+
+  public void invalidate() { withMetas.clear(); }
+
+  public int size() { return stable.size() + withMetas.size(); }
+  public @NotNull Stats stats() { return stats; }
+  public int hits() { return stats.hits; }
+  public int misses() { return stats.misses; }
+
+  @Override public String toString() {
+    return STR."WhnfCache(hits: \{stats.hits}, misses: \{stats.misses}, size: \{size()})";
+  }
+}
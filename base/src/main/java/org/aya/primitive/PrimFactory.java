@@ -31,6 +31,10 @@ import java.util.function.Function;
 import static org.aya.syntax.core.def.PrimDef.*;
 import static org.aya.syntax.core.term.SortTerm.Type0;
 
+/**
+ * The primitives of a library. Modules of a library may be checked in parallel,
+ * so the access to {@link #defs} is synchronized.
+ */
 public class PrimFactory {
   private final @NotNull Map<@NotNull ID, @NotNull PrimSeed> seeds;
   private final @NotNull EnumMap<@NotNull ID, @NotNull PrimDef> defs = new EnumMap<>(ID.class);
@@ -160,7 +164,7 @@ public class PrimFactory {
     ref -> new PrimDef(ref, SortTerm.ISet, ID.I),
     ImmutableSeq.empty());
 
-  public @NotNull PrimDef factory(@NotNull ID name, @NotNull DefVar<PrimDef, PrimDecl> ref) {
+  public synchronized @NotNull PrimDef factory(@NotNull ID name, @NotNull DefVar<PrimDef, PrimDecl> ref) {
     assert suppressRedefinition() || !have(name);
     var rst = seeds.get(name).supply(ref);
     defs.put(name, rst);
@@ -175,18 +179,18 @@ public class PrimFactory {
     return getCall(id, ImmutableSeq.empty());
   }
 
-  public @NotNull Option<PrimDef> getOption(@NotNull ID name) {
+  public synchronized @NotNull Option<PrimDef> getOption(@NotNull ID name) {
     return Option.ofNullable(defs.get(name));
   }
 
-  public boolean have(@NotNull ID name) {
+  public synchronized boolean have(@NotNull ID name) {
     return defs.containsKey(name);
   }
 
   /** whether redefinition should be treated as error */
   @ForLSP public boolean suppressRedefinition() { return false; }
 
-  public @NotNull PrimDef getOrCreate(@NotNull ID name, @NotNull DefVar<PrimDef, PrimDecl> ref) {
+  public synchronized @NotNull PrimDef getOrCreate(@NotNull ID name, @NotNull DefVar<PrimDef, PrimDecl> ref) {
     return getOption(name).getOrElse(() -> factory(name, ref));
   }
 
@@ -199,6 +203,6 @@ public class PrimFactory {
     return seeds.get(id).unfold.apply(primCall, state);
   }
 
-  public void clear() { defs.clear(); }
-  public void clear(@NotNull ID name) { defs.remove(name); }
+  public synchronized void clear() { defs.clear(); }
+  public synchronized void clear(@NotNull ID name) { defs.remove(name); }
 }
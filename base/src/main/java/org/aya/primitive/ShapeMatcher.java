@@ -195,7 +195,7 @@ public record ShapeMatcher(
           case TermShape.ShapeCall shapeCall -> {
             if (callable.ref() instanceof TyckAnyDef<?> wrapper) {
               yield captureIfMatches(shapeCall.name(), wrapper.ref, () ->
-                discovered.getOption(wrapper).map(x -> x.shape().codeShape()).getOrNull() == shapeCall.shape());
+                discovered.getOption(wrapper).map(x -> x.shape().operation().codeShape()).getOrNull() == shapeCall.shape());
             }
 
             yield false;
@@ -10,6 +10,7 @@ import org.aya.syntax.concrete.stmt.QualifiedID;
 import org.aya.syntax.concrete.stmt.Stmt;
 import org.aya.syntax.concrete.stmt.UseHide;
 import org.aya.syntax.ref.AnyVar;
+import org.aya.syntax.ref.CompiledVar;
 import org.aya.syntax.ref.DefVar;
 import org.aya.syntax.ref.GenerateKind;
 import org.aya.syntax.ref.LocalVar;
@@ -225,9 +226,9 @@ public sealed interface ModuleContext extends Context permits NoExportContext, P
     var result = symbols.add(modName, name, ref);
     assert result.isEmpty() : "Sanity check"; // should already be reported as an error
 
-    // Only `DefVar`s can be exported.
-    if (ref instanceof DefVar<?, ?> defVar && acc == Stmt.Accessibility.Public) {
-      var success = exportSymbol(modName, name, defVar);
+    // Only definitions can be exported.
+    if ((ref instanceof DefVar<?, ?> || ref instanceof CompiledVar) && acc == Stmt.Accessibility.Public) {
+      var success = exportSymbol(modName, name, ref);
       if (!success) {
         reportAndThrow(new NameProblem.DuplicateExportError(name, sourcePos));
       }
@@ -239,7 +240,7 @@ public sealed interface ModuleContext extends Context permits NoExportContext, P
    *
    * @return true if exported successfully, otherwise (when there already exist a symbol with the same name) false.
    */
-  default boolean exportSymbol(@NotNull ModuleName modName, @NotNull String name, @NotNull DefVar<?, ?> ref) {
+  default boolean exportSymbol(@NotNull ModuleName modName, @NotNull String name, @NotNull AnyVar ref) {
     return true;
   }
 
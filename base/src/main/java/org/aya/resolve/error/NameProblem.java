@@ -140,6 +140,16 @@ public interface NameProblem extends Problem {
     }
   }
 
+  record CyclicImportError(@NotNull ModulePath path, @Override @NotNull SourcePos sourcePos) implements Error {
+    @Override public @NotNull Doc describe(@NotNull PrettierOptions options) {
+      return Doc.sep(
+        Doc.english("The module"),
+        Doc.code(path.toString()),
+        Doc.english("is imported while it is being loaded, the imports form a cycle")
+      );
+    }
+  }
+
   record ModShadowingWarn(
     @NotNull ModuleName modName,
     @Override @NotNull SourcePos sourcePos
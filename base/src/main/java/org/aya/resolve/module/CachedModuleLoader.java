@@ -2,28 +2,76 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.resolve.module;
 
-import kala.collection.mutable.MutableMap;
-import kala.collection.mutable.MutableTreeMap;
 import org.aya.resolve.ResolveInfo;
 import org.aya.syntax.ref.ModulePath;
+import org.aya.util.error.Panic;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
 /**
+ * A thread-safe module cache. Each module is loaded at most once,
+ * concurrent requests to the same module wait for the first one to finish.
+ * A module requested again by the thread loading it imports itself, see {@link CyclicImportException}.
+ *
  * @author re-xyr
+ * @see #fork(ModuleLoader)
  */
 public class CachedModuleLoader<ML extends ModuleLoader> implements ModuleLoader {
-  private final @NotNull MutableMap<@NotNull String, ResolveInfo> cache = MutableTreeMap.of();
+  private record Entry(@NotNull Thread owner, @NotNull FutureTask<ResolveInfo> task) { }
+
+  private final @NotNull ConcurrentHashMap<@NotNull String, Entry> cache;
   public final @NotNull ML loader;
 
   @Override public @NotNull Reporter reporter() { return loader.reporter(); }
-  public CachedModuleLoader(@NotNull ML loader) { this.loader = loader; }
+  @Override public boolean nbe() { return loader.nbe(); }
+  @Override public boolean reportStats() { return loader.reportStats(); }
+  public CachedModuleLoader(@NotNull ML loader) { this(loader, new ConcurrentHashMap<>()); }
+  private CachedModuleLoader(@NotNull ML loader, @NotNull ConcurrentHashMap<String, Entry> cache) {
+    this.loader = loader;
+    this.cache = cache;
+  }
+
+  /**
+   * @return a loader sharing the cache with this one, but loads missing modules with {@param loader}.
+   * Useful for loading modules in different threads with thread-confined reporters.
+   */
+  public <L extends ModuleLoader> @NotNull CachedModuleLoader<L> fork(@NotNull L loader) {
+    return new CachedModuleLoader<>(loader, cache);
+  }
 
   @Override public @Nullable ResolveInfo
   load(@NotNull ModulePath path, @NotNull ModuleLoader recurseLoader) {
     var qualified = path.toString();
-    return cache.getOrPut(qualified, () -> loader.load(path, recurseLoader));
+    var entry = cache.get(qualified);
+    if (entry == null) {
+      var fresh = new Entry(Thread.currentThread(), new FutureTask<>(() -> loader.load(path, recurseLoader)));
+      entry = cache.putIfAbsent(qualified, fresh);
+      if (entry == null) {
+        entry = fresh;
+        fresh.task.run();
+      }
+    }
+    // Recursive loading of the same module in the same thread, waiting will never finish
+    if (entry.owner == Thread.currentThread() && !entry.task.isDone())
+      throw new CyclicImportException(path);
+    try {
+      return entry.task.get();
+    } catch (ExecutionException e) {
+      cache.remove(qualified, entry);
+      switch (e.getCause()) {
+        case RuntimeException re -> throw re;
+        case Error err -> throw err;
+        default -> throw new Panic("Failed to load module " + qualified, e.getCause());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Panic("Interrupted while loading module " + qualified, e);
+    }
   }
 
   @Override public boolean existsFileLevelModule(@NotNull ModulePath path) {
@@ -25,7 +25,9 @@ public record FileModuleLoader(
   @Override @NotNull Reporter reporter,
   @NotNull GenericAyaParser parser,
   @NotNull GenericAyaFile.Factory fileManager,
-  @NotNull PrimFactory primFactory
+  @NotNull PrimFactory primFactory,
+  @Override boolean nbe,
+  @Override boolean reportStats
 ) implements ModuleLoader {
   public FileModuleLoader(
     @NotNull SourceFileLocator locator, @NotNull Path basePath, @NotNull Reporter reporter,
@@ -33,6 +35,12 @@ public record FileModuleLoader(
   ) {
     this(locator, basePath, reporter, parser, fileManager, new PrimFactory());
   }
+  public FileModuleLoader(
+    @NotNull SourceFileLocator locator, @NotNull Path basePath, @NotNull Reporter reporter,
+    @NotNull GenericAyaParser parser, @NotNull GenericAyaFile.Factory fileManager, @NotNull PrimFactory primFactory
+  ) {
+    this(locator, basePath, reporter, parser, fileManager, primFactory, false, false);
+  }
   @Override
   public @Nullable ResolveInfo load(@NotNull ModulePath path, @NotNull ModuleLoader recurseLoader) {
     var sourcePath = AyaFiles.resolveAyaSourceFile(basePath, path.module());
@@ -25,6 +25,9 @@ public record ModuleListLoader(
     return null;
   }
 
+  @Override public boolean nbe() { return loaders.anyMatch(ModuleLoader::nbe); }
+  @Override public boolean reportStats() { return loaders.anyMatch(ModuleLoader::reportStats); }
+
   @Override public boolean existsFileLevelModule(@NotNull ModulePath path) {
     return loaders.anyMatch(loader -> loader.existsFileLevelModule(path));
   }
@@ -7,6 +7,7 @@ import org.aya.primitive.PrimFactory;
 import org.aya.primitive.ShapeFactory;
 import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.StmtResolvers;
+import org.aya.resolve.error.NameProblem;
 import org.aya.resolve.context.ModuleContext;
 import org.aya.resolve.salt.AyaBinOpSet;
 import org.aya.syntax.concrete.stmt.Stmt;
@@ -15,6 +16,7 @@ import org.aya.tyck.order.AyaOrgaTycker;
 import org.aya.tyck.order.AyaSccTycker;
 import org.aya.tyck.tycker.Problematic;
 import org.aya.util.reporter.DelayedReporter;
+import org.aya.util.reporter.Problem;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -36,10 +38,12 @@ public interface ModuleLoader extends Problematic {
   tyckModule(ResolveInfo resolveInfo, ModuleCallback<E> onTycked) throws E {
     var SCCs = resolveInfo.depGraph().topologicalOrder();
     var delayedReporter = new DelayedReporter(reporter());
-    var sccTycker = new AyaOrgaTycker(AyaSccTycker.create(resolveInfo, delayedReporter), resolveInfo);
+    var sccTycker = new AyaOrgaTycker(AyaSccTycker.create(resolveInfo, delayedReporter, nbe()), resolveInfo);
     // in case we have un-messaged TyckException
     try (delayedReporter) {
       SCCs.forEach(sccTycker::tyckSCC);
+      if (reportStats()) delayedReporter.reportString(
+        STR."\{resolveInfo.thisModule().modulePath()}: \{sccTycker.sccTycker().tycker().whnfStats()}");
     } finally {
       if (onTycked != null) onTycked.onModuleTycked(
         resolveInfo, sccTycker.sccTycker().wellTyped().toImmutableSeq());
@@ -82,6 +86,12 @@ public interface ModuleLoader extends Problematic {
     return resolveInfo;
   }
 
+  /** Whether the modules are type checked with normalization by evaluation, see {@link org.aya.tyck.TyckState#nbe()} */
+  default boolean nbe() { return false; }
+  /** Whether the statistics of type checking each module are reported, as {@link Problem.Severity#INFO} */
+  default boolean reportStats() { return false; }
+
+  /** @throws CyclicImportException if {@param path} is being loaded by the current thread */
   @Nullable ResolveInfo load(@NotNull ModulePath path, @NotNull ModuleLoader recurseLoader);
   default @Nullable ResolveInfo load(@NotNull ModulePath path) {
     return load(path, this);
@@ -91,4 +101,13 @@ public interface ModuleLoader extends Problematic {
    * @return if there is a module with path {@param path}, which can be untycked
    */
   boolean existsFileLevelModule(@NotNull ModulePath path);
+
+  /** Thrown when a module imports itself, reported as a {@link NameProblem.CyclicImportError} at the import */
+  final class CyclicImportException extends RuntimeException {
+    public final @NotNull ModulePath path;
+    public CyclicImportException(@NotNull ModulePath path) {
+      super(path.toString(), null, false, false);
+      this.path = path;
+    }
+  }
 }
@@ -18,7 +18,8 @@ public record Desalt(@NotNull ResolveInfo info) implements PosedUnaryOperator<Ex
   private @Nullable Integer levelVar(@NotNull WithPos<Expr> expr) {
     return switch (expr.data()) {
       case Expr.BinOpSeq _ -> levelVar(expr.descent(this));
-      case Expr.LitInt i -> i.integer();
+      // a level that does not fit is reported at tyck stage
+      case Expr.LitInt i when i.integer().bitLength() < Integer.SIZE -> i.integer().intValue();
       default -> null;
     };
   }
@@ -17,8 +17,10 @@ import org.aya.syntax.concrete.stmt.decl.DataDecl;
 import org.aya.syntax.concrete.stmt.decl.Decl;
 import org.aya.syntax.concrete.stmt.decl.FnDecl;
 import org.aya.syntax.concrete.stmt.decl.PrimDecl;
+import org.aya.syntax.core.def.AnyDef;
 import org.aya.syntax.core.def.PrimDef;
 import org.aya.syntax.core.def.TyckAnyDef;
+import org.aya.syntax.ref.CompiledVar;
 import org.aya.syntax.ref.DefVar;
 import org.aya.syntax.ref.QPath;
 import org.aya.util.binop.Assoc;
@@ -59,7 +61,12 @@ public record StmtPreResolver(@NotNull ModuleLoader loader, @NotNull ResolveInfo
       }
       case Command.Import cmd -> {
         var modulePath = cmd.path();
-        var success = loader.load(modulePath);
+        ResolveInfo success;
+        try {
+          success = loader.load(modulePath);
+        } catch (ModuleLoader.CyclicImportException e) {
+          success = context.reportAndThrow(new NameProblem.CyclicImportError(e.path, cmd.sourcePos()));
+        }
         if (success == null)
           context.reportAndThrow(new NameProblem.ModNotFoundError(modulePath, cmd.sourcePos()));
         var mod = success.thisModule();
@@ -90,7 +97,12 @@ public record StmtPreResolver(@NotNull ModuleLoader loader, @NotNull ResolveInfo
           var asName = use.asName().getOrDefault(use.id().name());
           var renamedOpDecl = new ResolveInfo.RenamedOpDecl(new OpDecl.OpInfo(asName, use.asAssoc()));
           var bind = use.asBind();
-          resolveInfo.renameOp(ctx, new TyckAnyDef<>(symbol.get()), renamedOpDecl, bind, true);
+          AnyDef def = switch (symbol.get()) {
+            case DefVar<?, ?> defVar -> new TyckAnyDef<>(defVar);
+            case CompiledVar(var core) -> core;
+            default -> Panic.unreachable();
+          };
+          resolveInfo.renameOp(ctx, def, renamedOpDecl, bind, true);
         });
         yield null;
       }
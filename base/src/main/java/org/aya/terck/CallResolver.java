@@ -113,7 +113,7 @@ public record CallResolver(
       }
       case Pat.ShapedInt intPat -> switch (term) {
         // ice: by well-typedness, we don't need to compareShape
-        case IntegerTerm intTerm -> Relation.fromCompare(Integer.compare(intTerm.repr(), intPat.repr()));
+        case IntegerTerm intTerm -> Relation.fromCompare(intTerm.repr().compareTo(intPat.repr()));
         case ConCall con -> compare(con, intPat.constructorForm());
         default -> compare(term, intPat.constructorForm());
       };
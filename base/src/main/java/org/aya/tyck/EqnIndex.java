@@ -0,0 +1,77 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import org.aya.syntax.ref.MetaVar;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The postponed {@link TyckState.Eqn}s of a {@link TyckState}, indexed by the metas that block them,
+ * so that solving a meta wakes up exactly the equations that mention it, instead of searching all of them.
+ * An equation is woken up at most once, by the first of its blocking metas that is solved.
+ * The changes are recorded in the {@link Trail}, so that a rollback restores them.
+ */
+public final class EqnIndex {
+  private final @NotNull Trail trail;
+  private final @NotNull MutableMap<MetaVar, MutableList<TyckState.Eqn>> blocked = MutableMap.create();
+  /** Postponed equations that are not woken up yet, keyed by identity */
+  private final @NotNull Set<TyckState.Eqn> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final @NotNull MutableList<TyckState.Eqn> woken = MutableList.create();
+  private int postponements = 0;
+  private int wakeUps = 0;
+
+  public EqnIndex(@NotNull Trail trail) { this.trail = trail; }
+
+  public void postpone(@NotNull TyckState.Eqn eqn) {
+    pending.add(eqn);
+    postponements++;
+    trail.record(() -> pending.remove(eqn));
+  }
+
+  public void block(@NotNull TyckState.Eqn eqn, @NotNull MetaVar meta) {
+    var eqns = blocked.getOrPut(meta, MutableList::create);
+    eqns.append(eqn);
+    trail.record(eqns::removeLast);
+  }
+
+  /** Called when {@param meta} is solved */
+  public void wake(@NotNull MetaVar meta) {
+    var eqns = blocked.remove(meta);
+    if (eqns.isEmpty()) return;
+    var wokenBefore = woken.size();
+    for (var eqn : eqns.get()) {
+      if (pending.remove(eqn)) {
+        woken.append(eqn);
+        wakeUps++;
+      }
+    }
+    trail.record(() -> {
+      while (woken.size() > wokenBefore) pending.add(woken.removeLast());
+      blocked.put(meta, eqns.get());
+    });
+  }
+
+  public boolean isPending(@NotNull TyckState.Eqn eqn) { return pending.contains(eqn); }
+
+  /** @return the equations woken up since the last call, in the order they are woken up */
+  public @NotNull ImmutableSeq<TyckState.Eqn> drain() {
+    var eqns = woken.toImmutableSeq();
+    woken.clear();
+    trail.record(() -> woken.appendAll(eqns));
+    return eqns;
+  }
+
+  public int postponements() { return postponements; }
+  public int wakeUps() { return wakeUps; }
+
+  @Override public String toString() {
+    return STR."EqnIndex(postponements: \{postponements}, wake-ups: \{wakeUps}, pending: \{pending.size()})";
+  }
+}
@@ -42,6 +42,7 @@ import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigInteger;
 import java.util.Comparator;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -106,8 +107,9 @@ public final class ExprTycker extends AbstractTycker implements Unifiable {
       case Expr.LitInt(var end) -> {
         var ty = whnf(type);
         if (ty == DimTyTerm.INSTANCE) {
-          if (end == 0 || end == 1) yield new Jdg.Default(end == 0 ? DimTerm.I0 : DimTerm.I1, ty);
-          else yield fail(expr.data(), new PrimError.BadInterval(expr.sourcePos(), end));
+          if (end.equals(BigInteger.ZERO)) yield new Jdg.Default(DimTerm.I0, ty);
+          if (end.equals(BigInteger.ONE)) yield new Jdg.Default(DimTerm.I1, ty);
+          yield fail(expr.data(), new PrimError.BadInterval(expr.sourcePos(), end));
         }
         yield inheritFallbackUnify(ty, synthesize(expr), expr);
       }
@@ -0,0 +1,89 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import kala.collection.mutable.MutableMap;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TermInfo;
+import org.aya.syntax.core.term.TermWalker;
+import org.aya.syntax.core.term.call.MetaCall;
+import org.aya.syntax.ref.MetaVar;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The solutions of metas, stored with the solved metas in them already substituted.
+ * A solution that still mentions metas is substituted again when it is looked up after more metas are solved,
+ * which is told by the {@link #generation()} it was last substituted at, and the result is written back.
+ * So a chain like {@code ?a := ?b x, ?b := ?c y} is walked at most once per generation,
+ * in the manner of path compression in a union-find.
+ * Both the solutions and the write-backs are recorded in the {@link Trail}, so that a rollback restores them.
+ */
+public final class MetaStore {
+  private static final class Entry {
+    private @NotNull Term solution;
+    private int generation;
+
+    private Entry(@NotNull Term solution, int generation) {
+      this.solution = solution;
+      this.generation = generation;
+    }
+  }
+
+  private final @NotNull Trail trail;
+  private final @NotNull MutableMap<MetaVar, Entry> entries = MutableMap.create();
+  /** The number of solved metas, bumped by {@link #put} */
+  private int generation = 0;
+  private final @NotNull TermWalker.Visitor resolver = new TermWalker.Visitor() {
+    @Override public @Nullable Term pre(int depth, @NotNull Term term) {
+      return TermInfo.hasMeta(term) ? null : term;
+    }
+    @Override public @NotNull Term head(int depth, @NotNull Term term) { return substitute(term); }
+  };
+
+  public MetaStore(@NotNull Trail trail) { this.trail = trail; }
+
+  public boolean containsKey(@NotNull MetaVar meta) { return entries.containsKey(meta); }
+  public int generation() { return generation; }
+
+  /** @return the solution of {@param meta}, in which the metas solved so far are substituted */
+  public @Nullable Term get(@NotNull MetaVar meta) {
+    var entry = entries.getOrNull(meta);
+    if (entry == null) return null;
+    if (entry.generation != generation) {
+      var solution = entry.solution;
+      var solvedAt = entry.generation;
+      trail.record(() -> {
+        entry.solution = solution;
+        entry.generation = solvedAt;
+      });
+      if (TermInfo.hasMeta(solution)) entry.solution = resolve(solution);
+      entry.generation = generation;
+    }
+    return entry.solution;
+  }
+
+  public void put(@NotNull MetaVar meta, @NotNull Term solution) {
+    var previous = generation;
+    entries.put(meta, new Entry(resolve(solution), ++generation));
+    trail.record(() -> {
+      entries.remove(meta);
+      generation = previous;
+    });
+  }
+
+  /** @return {@param term} with the solved metas in it substituted */
+  public @NotNull Term resolve(@NotNull Term term) {
+    if (!TermInfo.hasMeta(term)) return term;
+    return TermWalker.descent(substitute(term), resolver);
+  }
+
+  private @NotNull Term substitute(@NotNull Term term) {
+    while (term instanceof MetaCall(var ref, var args)) {
+      var solution = get(ref);
+      if (solution == null) break;
+      term = MetaCall.app(ref, solution, args);
+    }
+    return term;
+  }
+}
@@ -6,6 +6,7 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.control.Either;
 import kala.control.Option;
 import org.aya.generic.Modifier;
+import org.aya.normalize.WhnfCache;
 import org.aya.primitive.PrimFactory;
 import org.aya.primitive.ShapeFactory;
 import org.aya.syntax.concrete.Expr;
@@ -32,16 +33,20 @@ import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Objects;
+import java.util.function.UnaryOperator;
 
 import static org.aya.tyck.tycker.TeleTycker.loadTele;
 
 public record StmtTycker(
   @NotNull Reporter reporter,
   @NotNull ShapeFactory shapeFactory,
-  @NotNull PrimFactory primFactory
+  @NotNull PrimFactory primFactory,
+  boolean nbe,
+  @NotNull WhnfCache.Stats whnfStats
 ) implements Problematic {
   private @NotNull ExprTycker mkTycker() {
-    return new ExprTycker(new TyckState(shapeFactory, primFactory), new LocalCtx(), new LocalLet(), reporter);
+    var state = new TyckState(shapeFactory, primFactory, nbe, whnfStats);
+    return new ExprTycker(state, new LocalCtx(), new LocalLet(), reporter);
   }
   public @NotNull TyckDef check(Decl predecl) {
     ExprTycker tycker = null;
@@ -54,7 +59,7 @@ public record StmtTycker(
         var fnRef = fnDecl.ref;
         assert fnRef.signature != null;
 
-        var factory = FnDef.factory(body -> new FnDef(fnRef, fnDecl.modifiers, body));
+        var factory = FnDef.factory(body -> new FnDef(fnRef, fnDecl.modifiers, intern(body)));
         var teleVars = fnDecl.telescope.map(Expr.Param::ref);
 
         yield switch (fnDecl.body) {
@@ -67,6 +72,7 @@ public record StmtTycker(
               .bindTele(teleVars.view());
             tycker.solveMetas();
             fnRef.signature = fnRef.signature.descent(tycker::zonk);
+            if (HashCons.enabled()) fnRef.signature = fnRef.signature.descent(HashCons::intern);
             yield factory.apply(Either.left(tycker.zonk(result.wellTyped())));
           }
           case FnBody.BlockBody(var clauses, var elims) -> {
@@ -108,6 +114,14 @@ public record StmtTycker(
     };
   }
 
+  private static @NotNull Either<Term, ImmutableSeq<Term.Matching>>
+  intern(@NotNull Either<Term, ImmutableSeq<Term.Matching>> body) {
+    if (!HashCons.enabled()) return body;
+    return body.fold(
+      term -> Either.left(HashCons.intern(term)),
+      clauses -> Either.right(clauses.map(clause -> clause.descent(HashCons::intern, UnaryOperator.identity()))));
+  }
+
   public ExprTycker checkHeader(@NotNull Decl decl) {
     var tycker = mkTycker();
     switch (decl) {
@@ -135,6 +149,7 @@ public record StmtTycker(
         if (fn.body instanceof FnBody.BlockBody(var cls, _)) {
           tycker.solveMetas();
           fnRef.signature = fnRef.signature.descent(tycker::zonk);
+          if (HashCons.enabled()) fnRef.signature = fnRef.signature.descent(HashCons::intern);
           if (fnRef.signature.param().isEmpty() && cls.isEmpty())
             fail(new NobodyError(decl.sourcePos(), fn.ref));
         }
@@ -0,0 +1,65 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import kala.collection.mutable.MutableList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Predicate;
+
+/**
+ * The undo log of a {@link TyckState}, for speculative type checking.
+ * While a {@link #mark()} is open, every change to the state records how to undo it,
+ * so a {@link #rollback} undoes only what the speculation changed, instead of copying the state up front.
+ * Outside any mark nothing is recorded.
+ */
+public final class Trail {
+  public record Mark(int position, int depth) { }
+
+  private final @NotNull MutableList<Runnable> undo = MutableList.create();
+  private int depth = 0;
+
+  /** Record how to undo a change that is just made, if there is an open mark */
+  public void record(@NotNull Runnable undo) {
+    if (depth > 0) this.undo.append(undo);
+  }
+
+  /**
+   * Remove the elements of {@param list} that fail {@param keep}, in place.
+   * Only the removed elements are recorded, together with their positions.
+   */
+  public <T> void retainIf(@NotNull MutableList<T> list, @NotNull Predicate<T> keep) {
+    var positions = MutableList.<Integer>create();
+    var removed = MutableList.<T>create();
+    var kept = 0;
+    for (int i = 0; i < list.size(); i++) {
+      var element = list.get(i);
+      if (keep.test(element)) list.set(kept++, element);
+      else {
+        positions.append(i);
+        removed.append(element);
+      }
+    }
+    if (removed.isEmpty()) return;
+    while (list.size() > kept) list.removeLast();
+    record(() -> {
+      for (int i = 0; i < removed.size(); i++) list.insert(positions.get(i), removed.get(i));
+    });
+  }
+
+  public @NotNull Mark mark() {
+    return new Mark(undo.size(), depth++);
+  }
+
+  /** Undo the changes since {@param mark}, the marks opened after it are closed as well */
+  public void rollback(@NotNull Mark mark) {
+    while (undo.size() > mark.position()) undo.removeLast().run();
+    depth = mark.depth();
+  }
+
+  /** Keep the changes since {@param mark}, they are still undone by the rollback of an outer mark */
+  public void commit(@NotNull Mark mark) {
+    depth = mark.depth();
+    if (depth == 0) undo.clear();
+  }
+}
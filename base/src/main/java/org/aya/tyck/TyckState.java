@@ -3,17 +3,17 @@
 package org.aya.tyck;
 
 import kala.collection.mutable.MutableList;
-import kala.collection.mutable.MutableMap;
 import org.aya.generic.AyaDocile;
+import org.aya.normalize.WhnfCache;
 import org.aya.primitive.PrimFactory;
 import org.aya.primitive.ShapeFactory;
-import org.aya.prettier.FindUsage;
 import org.aya.pretty.doc.Doc;
 import org.aya.syntax.core.term.Term;
 import org.aya.syntax.core.term.call.MetaCall;
 import org.aya.syntax.ref.LocalCtx;
 import org.aya.syntax.ref.MetaVar;
 import org.aya.tyck.error.HoleProblem;
+import org.aya.unify.ConversionStats;
 import org.aya.unify.Unifier;
 import org.aya.util.Ordering;
 import org.aya.util.error.SourcePos;
@@ -26,19 +26,60 @@ import org.jetbrains.annotations.NotNull;
 import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 
+/**
+ * @param nbe whether conversion checking and full normalization go through the {@link org.aya.normalize.Evaluator}
+ */
 public record TyckState(
   @NotNull MutableList<Eqn> eqns,
   @NotNull MutableList<WithPos<MetaVar>> activeMetas,
-  @NotNull MutableMap<MetaVar, Term> solutions,
+  @NotNull MetaStore solutions,
   @NotNull ShapeFactory shapeFactory,
-  @NotNull PrimFactory primFactory
+  @NotNull PrimFactory primFactory,
+  @NotNull WhnfCache whnfCache,
+  @NotNull EqnIndex eqnIndex,
+  @NotNull ConversionStats conversionStats,
+  @NotNull Trail trail,
+  boolean nbe
 ) {
   public TyckState(@NotNull ShapeFactory shapeFactory, @NotNull PrimFactory primFactory) {
-    this(MutableList.create(), MutableList.create(), MutableMap.create(),
-      shapeFactory, primFactory);
+    this(shapeFactory, primFactory, false);
   }
+  public TyckState(@NotNull ShapeFactory shapeFactory, @NotNull PrimFactory primFactory, boolean nbe) {
+    this(shapeFactory, primFactory, nbe, new WhnfCache.Stats());
+  }
+  /** @param whnfStats the counters shared with other states, see {@link WhnfCache.Stats} */
+  public TyckState(
+    @NotNull ShapeFactory shapeFactory, @NotNull PrimFactory primFactory,
+    boolean nbe, @NotNull WhnfCache.Stats whnfStats
+  ) {
+    this(new Trail(), shapeFactory, primFactory, new WhnfCache(whnfStats), nbe);
+  }
+  private TyckState(
+    @NotNull Trail trail, @NotNull ShapeFactory shapeFactory,
+    @NotNull PrimFactory primFactory, @NotNull WhnfCache whnfCache, boolean nbe
+  ) {
+    this(MutableList.create(), MutableList.create(), new MetaStore(trail),
+      shapeFactory, primFactory, whnfCache, new EqnIndex(trail), new ConversionStats(), trail, nbe);
+  }
+
+  /// region Transactions
+  /** Start recording the changes to this state, see {@link Trail} */
+  public @NotNull Trail.Mark mark() { return trail.mark(); }
+  /** Undo the meta solutions and equations since {@param mark} */
+  public void rollback(@NotNull Trail.Mark mark) {
+    trail.rollback(mark);
+    // the whnf computed with the undone solutions are wrong now
+    whnfCache.invalidate();
+  }
+  public void commit(@NotNull Trail.Mark mark) { trail.commit(mark); }
+  /// endregion Transactions
+
   @ApiStatus.Internal
-  public void solve(MetaVar meta, Term candidate) { solutions.put(meta, candidate); }
+  public void solve(MetaVar meta, Term candidate) {
+    solutions.put(meta, candidate);
+    whnfCache.invalidate();
+    eqnIndex.wake(meta);
+  }
 
   private void solveEqn(@NotNull Reporter reporter, @NotNull Eqn eqn, boolean allowDelay) {
     var unifier = new Unifier(this, eqn.localCtx, reporter, eqn.pos, eqn.cmp, allowDelay);
@@ -61,37 +102,38 @@ public record TyckState(
   }
 
   public @NotNull Term computeSolution(@NotNull MetaCall meta, @NotNull UnaryOperator<Term> f) {
-    return solutions.getOption(meta.ref())
-      .map(sol -> f.apply(MetaCall.app(meta.ref(), sol, meta.args())))
-      .getOrDefault(meta);
+    var solution = solutions.get(meta.ref());
+    return solution == null ? meta : f.apply(MetaCall.app(meta.ref(), solution, meta.args()));
   }
 
-  /** @return true if <code>this.eqns</code> and <code>this.activeMetas</code> are mutated. */
+  /**
+   * Solve the equations woken up by {@link #solve}, see {@link EqnIndex}.
+   *
+   * @return true if <code>this.eqns</code> and <code>this.activeMetas</code> are mutated.
+   */
   private boolean simplify(@NotNull Reporter reporter) {
-    var removingMetas = MutableList.<WithPos<MetaVar>>create();
-    for (var activeMeta : activeMetas) {
-      var v = activeMeta.data();
-      if (solutions.containsKey(v)) {
-        eqns.retainIf(eqn -> {
-          if (FindUsage.meta(eqn.lhs, v) + FindUsage.meta(eqn.rhs, v) > 0) {
-            solveEqn(reporter, eqn, true);
-            return false;
-          } else return true;
-        });
-        removingMetas.append(activeMeta);
-      }
-    }
-    activeMetas.removeIf(removingMetas::contains);
-    return removingMetas.isNotEmpty();
+    var woken = eqnIndex.drain();
+    if (woken.isEmpty()) return false;
+    trail.retainIf(eqns, eqnIndex::isPending);
+    trail.retainIf(activeMetas, meta -> !solutions.containsKey(meta.data()));
+    for (var eqn : woken) solveEqn(reporter, eqn, true);
+    return true;
   }
 
   public void addEqn(Eqn eqn) {
     eqns.append(eqn);
+    eqnIndex.postpone(eqn);
     var currentActiveMetas = activeMetas.size();
+    trail.record(() -> {
+      eqns.removeLast();
+      while (activeMetas.size() > currentActiveMetas) activeMetas.removeLast();
+    });
     var consumer = new Consumer<Term>() {
       @Override public void accept(Term term) {
-        if (term instanceof MetaCall hole && !solutions.containsKey(hole.ref()))
+        if (term instanceof MetaCall hole && !solutions.containsKey(hole.ref())) {
           activeMetas.append(new WithPos<>(eqn.pos, hole.ref()));
+          eqnIndex.block(eqn, hole.ref());
+        }
         term.descent(tm -> {
           accept(tm);
           return tm;
@@ -8,6 +8,8 @@ import org.aya.util.error.SourcePos;
 import org.aya.util.prettier.PrettierOptions;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigInteger;
+
 public sealed interface PrimError extends TyckError {
   record NoResultType(@NotNull PrimDecl prim) implements PrimError {
     @Override public @NotNull Doc describe(@NotNull PrettierOptions options) {
@@ -34,7 +36,7 @@ public sealed interface PrimError extends TyckError {
     }
   }
 
-  record BadInterval(@NotNull SourcePos sourcePos, int integer) implements PrimError {
+  record BadInterval(@NotNull SourcePos sourcePos, @NotNull BigInteger integer) implements PrimError {
     @Override public @NotNull Doc describe(@NotNull PrettierOptions options) {
       return Doc.sep(Doc.english("The point"),
         Doc.code(String.valueOf(integer)),
@@ -8,6 +8,7 @@ import kala.collection.mutable.MutableSet;
 import org.aya.generic.InterruptException;
 import org.aya.generic.stmt.TyckOrder;
 import org.aya.generic.stmt.TyckUnit;
+import org.aya.normalize.WhnfCache;
 import org.aya.resolve.ResolveInfo;
 import org.aya.syntax.concrete.stmt.decl.Decl;
 import org.aya.syntax.concrete.stmt.decl.FnBody;
@@ -43,9 +44,10 @@ public record AyaSccTycker(
   @NotNull ResolveInfo resolveInfo,
   @NotNull MutableList<@NotNull TyckDef> wellTyped
 ) implements SCCTycker<TyckOrder, AyaSccTycker.SCCTyckingFailed>, Problematic {
-  public static @NotNull AyaSccTycker create(ResolveInfo info, @NotNull Reporter outReporter) {
+  /** @param nbe see {@link org.aya.tyck.TyckState#nbe()} */
+  public static @NotNull AyaSccTycker create(ResolveInfo info, @NotNull Reporter outReporter, boolean nbe) {
     var counting = CountingReporter.delegate(outReporter);
-    var stmt = new StmtTycker(counting, info.shapeFactory(), info.primFactory());
+    var stmt = new StmtTycker(counting, info.shapeFactory(), info.primFactory(), nbe, new WhnfCache.Stats());
     return new AyaSccTycker(stmt, counting, info, MutableList.create());
   }
 
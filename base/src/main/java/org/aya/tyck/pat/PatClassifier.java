@@ -31,6 +31,7 @@ import org.aya.util.tyck.pat.PatClass;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
 import java.util.Comparator;
 import java.util.stream.Collectors;
 
@@ -110,7 +111,7 @@ public record PatClassifier(
           var ml = MutableArrayList.<PatClass<Term>>create(classes.size() + 1);
           ml.appendAll(classes);
           var maxInt = lits.max(Comparator.comparing(p -> p.pat().repr())).pat();
-          var onePlus = maxInt.map(x -> x + 1).toTerm();
+          var onePlus = maxInt.map(x -> x.add(BigInteger.ONE)).toTerm();
           ml.append(new PatClass<>(onePlus, binds));
           return ml.toImmutableSeq();
         }
@@ -137,8 +137,7 @@ public class PatternTycker implements Problematic, Stateful {
         ));
       }
       case Pattern.Con con -> {
-        var var = con.resolved().data();
-        var realCon = selectCon(type, new ConDef.Delegate(var), pattern);
+        var realCon = selectCon(type, con.resolved().data(), pattern);
         if (realCon == null) yield randomPat(type);
         var conCore = realCon.conHead.ref();
 
@@ -0,0 +1,25 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.unify;
+
+/**
+ * How often {@link TermComparator#compare} is decided by its syntactic fast path,
+ * in the conversion checks of one {@link org.aya.tyck.TyckState}.
+ */
+public final class ConversionStats {
+  private int checks = 0;
+  private int hits = 0;
+
+  public void record(boolean hit) {
+    checks++;
+    if (hit) hits++;
+  }
+
+  public int checks() { return checks; }
+  public int hits() { return hits; }
+  public double hitRate() { return checks == 0 ? 0 : (double) hits / checks; }
+
+  @Override public String toString() {
+    return STR."ConversionStats(checks: \{checks}, fast path hits: \{hits})";
+  }
+}
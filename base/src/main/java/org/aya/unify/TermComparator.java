@@ -7,9 +7,12 @@ import kala.collection.immutable.ImmutableSeq;
 import org.aya.generic.NameGenerator;
 import org.aya.generic.stmt.Shaped;
 import org.aya.generic.term.SortKind;
+import org.aya.normalize.Evaluator;
+import org.aya.normalize.Normalizer;
 import org.aya.prettier.AyaPrettierOptions;
 import org.aya.syntax.compile.JitTele;
 import org.aya.syntax.core.def.AnyDef;
+import org.aya.syntax.core.def.FnDef;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.core.term.*;
 import org.aya.syntax.core.term.call.*;
@@ -40,12 +43,16 @@ import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 public abstract sealed class TermComparator extends AbstractTycker permits Unifier {
+  /** The number of subterm pairs the syntactic fast path of {@link #compare} visits before it gives up */
+  private static final int FAST_PATH_BUDGET = 64;
   protected final @NotNull SourcePos pos;
   protected @NotNull Ordering cmp;
   // If false, we refrain from solving meta, and return false if we encounter a non-identical meta.
   private boolean solveMeta = true;
   private @Nullable FailureData failure = null;
   private final @NotNull NameGenerator nameGen = new NameGenerator();
+  /** Whether an outer comparison is already rejected by the {@link Evaluator} */
+  private boolean evaluating = false;
 
   public TermComparator(
     @NotNull TyckState state, @NotNull LocalCtx ctx,
@@ -85,13 +92,23 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
    * Compare arguments ONLY.
    * For lossy comparisons, when we fail, we will need to compare them again later,
    * so don't forget to reset the {@link #failure} after first failure.
+   * The metas solved by a failed comparison are rolled back, as the arguments of different calls
+   * may well differ even if the calls are the same.
    */
   private @Nullable Term compareApprox(@NotNull Term lhs, @NotNull Term rhs) {
+    var mark = state.mark();
+    var result = doCompareApprox(lhs, rhs);
+    if (result == null) state.rollback(mark);
+    else state.commit(mark);
+    return result;
+  }
+
+  private @Nullable Term doCompareApprox(@NotNull Term lhs, @NotNull Term rhs) {
     return switch (new Pair<>(lhs, rhs)) {
       case Pair(FnCall lFn, FnCall rFn) -> compareCallApprox(lFn, rFn, lFn.ref());
       case Pair(PrimCall lFn, PrimCall rFn) -> compareCallApprox(lFn, rFn, lFn.ref());
       case Pair(IntegerTerm lInt, IntegerTerm rInt) ->
-        lInt.repr() == ((Shaped.@NotNull Nat<Term>) rInt).repr() ? lInt : null;
+        lInt.repr().equals(((Shaped.@NotNull Nat<Term>) rInt).repr()) ? lInt : null;
       case Pair(ConCallLike lCon, ConCallLike rCon) -> compareCallApprox(lCon, rCon, lCon.ref());
       default -> null;
     };
@@ -107,6 +124,50 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
     return compareMany(lhs.args(), rhs.args(), lhs.ulift(), TyckDef.defSignature(typeProvider));
   }
 
+  /**
+   * The outcome of {@link #compareLazyDelta}, with the terms unfolded so far,
+   * which are as good as the compared ones for anything that normalizes them.
+   */
+  private record LazyDelta(@Nullable Term result, @NotNull Term lhs, @NotNull Term rhs) { }
+
+  /**
+   * Lazy delta reduction: while {@param lhs} and {@param rhs} are calls to different functions,
+   * unfold the one with the larger {@link FnDef#height()} by one step (both if they are equally high),
+   * and compare the arguments as soon as the heads agree.
+   * This saves unfolding a function that the other side reduces to.
+   * Each step is compared under its own mark, so the metas solved by a failed step are rolled back.
+   *
+   * @return the result is the same as {@link #compareApprox}, null if the unfolding gets stuck or the heads never agree
+   */
+  private @NotNull LazyDelta compareLazyDelta(@NotNull Term lhs, @NotNull Term rhs) {
+    var normalizer = new Normalizer(state);
+    while (lhs instanceof FnCall lFn && rhs instanceof FnCall rFn && !lFn.ref().equals(rFn.ref())) {
+      var lHeight = height(lFn);
+      var rHeight = height(rFn);
+      if (lHeight < 0 || rHeight < 0) break;
+      var lNext = lHeight >= rHeight ? normalizer.unfold(lFn) : lFn;
+      var rNext = rHeight >= lHeight ? normalizer.unfold(rFn) : rFn;
+      if (lNext == null || rNext == null) break;
+      lhs = lNext;
+      rhs = rNext;
+      var mark = state.mark();
+      var result = doCompareApprox(lhs, rhs);
+      if (result != null) {
+        state.commit(mark);
+        return new LazyDelta(result, lhs, rhs);
+      }
+      state.rollback(mark);
+      failure = null;
+    }
+    return new LazyDelta(null, lhs, rhs);
+  }
+
+  /** @return the height of the function called, or -1 if it is compiled or not checked yet */
+  private static int height(@NotNull FnCall call) {
+    return call.ref() instanceof FnDef.Delegate delegate && delegate.core() != null
+      ? delegate.core().height() : -1;
+  }
+
   private <R> R swapped(@NotNull Supplier<R> callback) {
     cmp = cmp.invert();
     var result = callback.get();
@@ -120,13 +181,38 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
    * @return true if they are 'the same' under {@param type}, false otherwise.
    */
   public boolean compare(@NotNull Term preLhs, @NotNull Term preRhs, @Nullable Term type) {
-    if (preLhs == preRhs || preLhs instanceof ErrorTerm || preRhs instanceof ErrorTerm) return true;
+    if (preLhs instanceof ErrorTerm || preRhs instanceof ErrorTerm) return true;
+    var trivial = preLhs == preRhs || SyntacticEq.equal(preLhs, preRhs, FAST_PATH_BUDGET);
+    state.conversionStats().record(trivial);
+    if (trivial) return true;
+    if (evaluating || !state.nbe() || !isEvaluable(preLhs) || !isEvaluable(preRhs))
+      return doCompare(preLhs, preRhs, type);
+    if (new Evaluator(new Normalizer(state)).conv(preLhs, preRhs)) return true;
+    // the evaluator does not know, the subterms are not likely to be easier
+    evaluating = true;
+    try {
+      return doCompare(preLhs, preRhs, type);
+    } finally {
+      evaluating = false;
+    }
+  }
+
+  /** Terms the {@link Evaluator} can compare without solving metas */
+  private static boolean isEvaluable(@NotNull Term term) {
+    return !TermInfo.hasMeta(term) && TermInfo.looseBound(term) == 0;
+  }
+
+  private boolean doCompare(@NotNull Term preLhs, @NotNull Term preRhs, @Nullable Term type) {
     if (checkApproxResult(type, compareApprox(preLhs, preRhs))) return true;
     failure = null;
+    var delta = compareLazyDelta(preLhs, preRhs);
+    if (checkApproxResult(type, delta.result())) return true;
+    failure = null;
 
-    var lhs = whnf(preLhs);
-    var rhs = whnf(preRhs);
-    if ((!(lhs == preLhs && rhs == preRhs)) &&
+    // the unfolded terms are compared already, so only a further reduction is worth another try
+    var lhs = whnf(delta.lhs());
+    var rhs = whnf(delta.rhs());
+    if ((!(lhs == delta.lhs() && rhs == delta.rhs())) &&
       checkApproxResult(type, compareApprox(lhs, rhs))) return true;
 
     if (rhs instanceof MetaCall rMeta) {
@@ -213,6 +299,11 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
       var result = compareApprox(preLhs, preRhs);
       if (result != null) return result;
       failure = null;
+      var delta = compareLazyDelta(preLhs, preRhs);
+      if (delta.result() != null) return delta.result();
+      failure = null;
+      preLhs = delta.lhs();
+      preRhs = delta.rhs();
     }
 
     var lhs = whnf(preLhs);
@@ -276,7 +367,7 @@ public abstract sealed class TermComparator extends AbstractTycker permits Unifi
       case DimTerm l -> rhs instanceof DimTerm r && l == r ? l : null;
       case MetaCall mCall -> solveMeta(mCall, rhs, null);
       // By typing invariant, they should have the same type, so no need to check for repr equality.
-      case IntegerTerm(var lepr, _, _, var ty) -> rhs instanceof IntegerTerm rInt && lepr == rInt.repr() ? ty : null;
+      case IntegerTerm(var lepr, _, _, var ty) -> rhs instanceof IntegerTerm rInt && lepr.equals(rInt.repr()) ? ty : null;
       case ListTerm list -> switch (rhs) {
         case ListTerm rist -> {
           if (!list.compareUntyped(rist, (l, r) ->
@@ -31,15 +31,29 @@ public final class Unifier extends TermComparator {
     this.allowDelay = allowDelay;
   }
 
+  /**
+   * The equation gets a child of the current context instead of a copy of it:
+   * a context is only extended with fresh variables, which the equation does not mention,
+   * and the bindings made while solving the equation go to the child.
+   */
   public @NotNull TyckState.Eqn createEqn(@NotNull Term lhs, @NotNull Term rhs) {
-    return new TyckState.Eqn(lhs, rhs, cmp, pos, localCtx().clone());
+    return new TyckState.Eqn(lhs, rhs, cmp, pos, localCtx().derive());
   }
 
   public @NotNull Unifier derive(@NotNull SourcePos pos, Ordering ordering) {
     return new Unifier(state, localCtx().derive(), reporter, pos, ordering, allowDelay);
   }
 
+  /** Checking a solution may solve other metas, which are rolled back if the solution is rejected */
   @Override protected @Nullable Term doSolveMeta(@NotNull MetaCall meta, @NotNull Term rhs, @Nullable Term type) {
+    var mark = state.mark();
+    var result = trySolveMeta(meta, rhs, type);
+    if (result == null) state.rollback(mark);
+    else state.commit(mark);
+    return result;
+  }
+
+  private @Nullable Term trySolveMeta(@NotNull MetaCall meta, @NotNull Term rhs, @Nullable Term type) {
     // Assumption: rhs is in whnf
     var spine = meta.args();
 
@@ -0,0 +1,166 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.control.Option;
+import org.aya.generic.Modifier;
+import org.aya.syntax.core.def.ConDefLike;
+import org.aya.syntax.core.def.DataDef;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.TyckAnyDef;
+import org.aya.syntax.core.pat.CaseTree;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TupTerm;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.literate.CodeOptions;
+import org.aya.syntax.ref.LocalVar;
+import org.aya.tyck.TyckTest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CaseTreeTest {
+  private record Fixture(@NotNull TyckTest.TyckResult result, @NotNull Normalizer normalizer) {
+    Fixture(@NotNull TyckTest.TyckResult result) { this(result, new Normalizer(result.info().makeTyckState())); }
+
+    @NotNull FnDef fn(@NotNull String name) {
+      return (FnDef) result.defs().find(def -> def.ref().name().equals(name)).get();
+    }
+
+    @NotNull Term con(@NotNull String name, Term... args) {
+      var con = (ConDefLike) TyckAnyDef.make(result.defs().view()
+        .flatMap(def -> def instanceof DataDef data ? data.body : ImmutableSeq.empty())
+        .find(def -> def.ref().name().equals(name)).get());
+      return new ConCall(con, ImmutableSeq.empty(), 0, ImmutableSeq.from(args));
+    }
+
+    @NotNull Term nat(int n) {
+      var term = con("O");
+      for (int i = 0; i < n; i++) term = con("S", term);
+      return term;
+    }
+
+    @NotNull Option<String> byTree(@NotNull FnDef fn, Term... args) {
+      var tree = fn.tree();
+      assertNotNull(tree);
+      return render(normalizer.tryUnfoldClauses(tree, fn.body().getRightValue(), ImmutableSeq.from(args), 0));
+    }
+
+    @NotNull Option<String> byClauses(@NotNull FnDef fn, Term... args) {
+      return render(normalizer.tryUnfoldClauses(fn.body().getRightValue(), ImmutableSeq.from(args), 0,
+        fn.is(Modifier.Overlap)));
+    }
+
+    /** Both ways of unfolding agree, and give {@param expected} */
+    void assertUnfold(@NotNull Option<String> expected, @NotNull FnDef fn, Term... args) {
+      assertEquals(expected, byClauses(fn, args));
+      assertEquals(expected, byTree(fn, args));
+    }
+
+    @NotNull Option<String> render(@NotNull Option<Term> term) {
+      return term.map(t -> normalizer.normalize(t, CodeOptions.NormalizeMode.FULL).debuggerOnlyToString());
+    }
+
+    @NotNull String render(@NotNull Term term) {
+      return normalizer.normalize(term, CodeOptions.NormalizeMode.FULL).debuggerOnlyToString();
+    }
+  }
+
+  private static @NotNull Term free(@NotNull String name) { return new FreeTerm(new LocalVar(name)); }
+
+  @Test public void overlapping() {
+    var fx = new Fixture(TyckTest.tyck("""
+      open data Nat | O | S Nat
+      overlap def infix + (a b : Nat) : Nat
+      | 0, b => b
+      | a, 0 => a
+      | S a, b => S (a + b)
+      | a, S b => S (a + b)
+      """));
+    var plus = fx.fn("+");
+    var x = free("x");
+    assertUnfold(fx, plus, fx.nat(2), fx.nat(0), fx.nat(2));
+    assertUnfold(fx, plus, fx.nat(0), fx.nat(2), fx.nat(2));
+    assertUnfold(fx, plus, fx.nat(2), fx.nat(1), fx.nat(3));
+    // the clauses stuck on x are skipped
+    assertUnfold(fx, plus, x, fx.nat(0), x);
+    assertUnfold(fx, plus, x, fx.nat(1), fx.con("S", x));
+    fx.assertUnfold(Option.none(), plus, x, free("y"));
+  }
+
+  private static void assertUnfold(@NotNull Fixture fx, @NotNull FnDef fn, @NotNull Term a, @NotNull Term b, @NotNull Term expected) {
+    fx.assertUnfold(Option.some(fx.render(expected)), fn, a, b);
+  }
+
+  @Test public void orderedStuck() {
+    var fx = new Fixture(TyckTest.tyck("""
+      open data Nat | O | S Nat
+      def f (a b : Nat) : Nat
+      | 0, _ => 0
+      | _, 0 => 1
+      | S _, S _ => 2
+      """));
+    var f = fx.fn("f");
+    var x = free("x");
+    assertUnfold(fx, f, fx.nat(0), x, fx.nat(0));
+    assertUnfold(fx, f, fx.nat(3), fx.nat(0), fx.nat(1));
+    assertUnfold(fx, f, fx.nat(3), fx.nat(1), fx.nat(2));
+    // stuck on the first clause, so the second is not tried, even though it matches
+    fx.assertUnfold(Option.none(), f, x, fx.nat(0));
+  }
+
+  @Test public void tuple() {
+    var fx = new Fixture(TyckTest.tyck("""
+      open data Nat | O | S Nat
+      def f (p : Sig Nat ** Nat) (n : Nat) : Nat
+      | (0, b), _ => b
+      | (S a, _), 0 => a
+      | (S _, b), S n => S b
+      """));
+    var f = fx.fn("f");
+    var x = free("x");
+    fx.assertUnfold(Option.some(fx.render(fx.nat(2))), f, new TupTerm(ImmutableSeq.of(fx.nat(0), fx.nat(2))), x);
+    fx.assertUnfold(Option.some(fx.render(fx.nat(4))), f, new TupTerm(ImmutableSeq.of(fx.nat(5), x)), fx.nat(0));
+    fx.assertUnfold(Option.some(fx.render(fx.nat(3))), f, new TupTerm(ImmutableSeq.of(fx.nat(5), fx.nat(2))), fx.nat(1));
+    // the tuple itself, or its first element, is stuck
+    fx.assertUnfold(Option.none(), f, x, fx.nat(0));
+    fx.assertUnfold(Option.none(), f, new TupTerm(ImmutableSeq.of(x, fx.nat(2))), fx.nat(0));
+  }
+
+  /**
+   * A function over {@code c0 ..< c[size]} with a clause for each pair of constructors but the last one,
+   * and a catch-all clause at the end
+   */
+  private static @NotNull String large(int size) {
+    var cons = ImmutableSeq.fill(size, i -> STR."c\{i}");
+    var clauses = ImmutableSeq.fill(size - 1, i -> i).flatMap(i ->
+      ImmutableSeq.fill(size, j -> STR."| c\{i}, c\{j} => c\{(i + j) % size}"));
+    return STR."""
+      open data D \{cons.map(c -> STR."| \{c}").joinToString(" ")}
+      def f (a b : D) : D
+      \{clauses.joinToString("\n")}
+      | _, b => b
+      """;
+  }
+
+  @Test public void maxSize() {
+    var size = 24;
+    var fx = new Fixture(TyckTest.tyck(large(size)));
+    var f = fx.fn("f");
+    assertTrue(f.body().getRightValue().size() > CaseTree.MAX_SIZE);
+    // too large for a tree, the clauses are matched one by one
+    assertNull(f.tree());
+    var call = new FnDef.Delegate(f.ref());
+    var unfolded = fx.normalizer().apply(new FnCall(call, 0, ImmutableSeq.of(fx.con("c5"), fx.con("c7"))));
+    assertEquals(fx.render(fx.con("c12")), fx.render(unfolded));
+    var last = fx.normalizer().apply(new FnCall(call, 0, ImmutableSeq.of(fx.con(STR."c\{size - 1}"), fx.con("c7"))));
+    assertEquals(fx.render(fx.con("c7")), fx.render(last));
+    // stuck on the first clause, the catch-all is not tried
+    var stuck = fx.normalizer().apply(new FnCall(call, 0, ImmutableSeq.of(free("x"), fx.con("c7"))));
+    assertInstanceOf(FnCall.class, stuck);
+  }
+}
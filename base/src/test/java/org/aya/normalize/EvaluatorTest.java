@@ -0,0 +1,93 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.syntax.SyntaxTestUtil;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.literate.CodeOptions;
+import org.aya.tyck.ExprTycker;
+import org.aya.tyck.TyckState;
+import org.aya.tyck.TyckTest;
+import org.aya.util.Ordering;
+import org.aya.util.error.SourcePos;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EvaluatorTest {
+  private static final @NotNull TyckTest.TyckResult RESULT = TyckTest.tyck("""
+    open data Nat | O | S Nat
+    def infix + (a b : Nat) : Nat elim a
+    | O => b
+    | S a => S (a + b)
+    def infix * (a b : Nat) : Nat elim a
+    | O => O
+    | S a => b + (a * b)
+    def id {A : Type} (a : A) => a
+    def compose {A B C : Type} (g : B -> C) (f : A -> B) (a : A) : C => g (f a)
+    open data List (A : Type) | nil | cons A (List A)
+    def map {A B : Type} (f : A -> B) (xs : List A) : List B elim xs
+    | nil => nil
+    | cons x xs => cons (f x) (map f xs)
+
+    def two : Nat => S (S O)
+    def six : Nat => two * (two + S O)
+    def sixLit : Nat => S (S (S (S (S (S O)))))
+    def plusTwo : Nat -> Nat => fn n => two + n
+    def twice : Nat -> Nat => compose plusTwo plusTwo
+    def twiceLit : Nat -> Nat => fn n => S (S (S (S n)))
+    def pair : Sig Nat ** Nat => (six, id two)
+    def list : List Nat => map (fn n => n * two) (cons six (cons two nil))
+    def ty : Type => Fn (n : Nat) -> List Nat
+    """);
+
+  private static @NotNull TyckState state(boolean nbe) {
+    return new TyckState(RESULT.info().shapeFactory(), RESULT.info().primFactory(), nbe);
+  }
+
+  private static @NotNull FnDef fn(@NotNull String name) {
+    return (FnDef) RESULT.defs().find(def -> def.ref().name().equals(name)).get();
+  }
+
+  private static @NotNull Term call(@NotNull String name) {
+    return new FnCall(new FnDef.Delegate(fn(name).ref()), 0, ImmutableSeq.empty());
+  }
+
+  /** The definitions without parameters */
+  private static @NotNull ImmutableSeq<Term> closed() {
+    return RESULT.defs().view()
+      .filter(def -> def instanceof FnDef && def.telescope().isEmpty())
+      .map(def -> call(def.ref().name()))
+      .toImmutableSeq();
+  }
+
+  @Test public void normalize() {
+    var syntactic = new Normalizer(state(false));
+    var nbe = new Normalizer(state(true));
+    var terms = closed();
+    assertTrue(terms.sizeGreaterThan(5));
+    for (var term : terms) assertEquals(
+      syntactic.normalize(term, CodeOptions.NormalizeMode.FULL),
+      nbe.normalize(term, CodeOptions.NormalizeMode.FULL),
+      term::debuggerOnlyToString);
+  }
+
+  private static boolean conv(boolean nbe, @NotNull String lhs, @NotNull String rhs) {
+    return new ExprTycker(state(nbe), SyntaxTestUtil.THROWING)
+      .unifier(SourcePos.NONE, Ordering.Eq)
+      .compare(call(lhs), call(rhs), fn(lhs).result());
+  }
+
+  @Test public void conversion() {
+    for (var nbe : new boolean[]{false, true}) {
+      assertTrue(conv(nbe, "six", "sixLit"));
+      assertTrue(conv(nbe, "twice", "twiceLit"));
+      assertFalse(conv(nbe, "six", "two"));
+      assertFalse(conv(nbe, "twice", "plusTwo"));
+    }
+  }
+}
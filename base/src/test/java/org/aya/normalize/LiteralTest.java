@@ -0,0 +1,62 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.repr.AyaShape;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.literate.CodeOptions;
+import org.aya.tyck.TyckTest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LiteralTest {
+  private static final @NotNull TyckTest.TyckResult RESULT = TyckTest.tyck("""
+    open data Nat | zero | suc Nat
+    def infix + Nat Nat : Nat
+    | zero, b => b
+    | suc a, b => suc (a + b)
+    def infix * Nat Nat : Nat
+    | zero, b => zero
+    | suc a, b => b + (a * b)
+    def pow Nat Nat : Nat
+    | a, zero => suc zero
+    | a, suc b => a * (pow a b)
+
+    def big : Nat => 3000000000
+    def mul : Nat => 5000000000 * 5000000000
+    def pow2 : Nat => pow 2 100
+    def powBig : Nat => pow 4294967296 3
+    def mixed : Nat => suc ((pow 3000000000 2) + (3000000000 * 2))
+    """);
+
+  /** @return the normal form of the definition {@param name}, which must be a literal */
+  private static @NotNull BigInteger eval(@NotNull String name) {
+    var fn = (FnDef) RESULT.defs().find(def -> def.ref().name().equals(name)).get();
+    var call = new FnCall(new FnDef.Delegate(fn.ref()), 0, ImmutableSeq.empty());
+    var state = RESULT.info().makeTyckState();
+    var result = new Normalizer(state).normalize(call, CodeOptions.NormalizeMode.FULL);
+    return assertInstanceOf(IntegerTerm.class, result, result::debuggerOnlyToString).repr();
+  }
+
+  @Test public void shapes() {
+    var shapes = RESULT.info().shapeFactory();
+    assertTrue(shapes.findImpl(AyaShape.MULT_SHAPE).isNotEmpty());
+    assertTrue(shapes.findImpl(AyaShape.POW_SHAPE).isNotEmpty());
+  }
+
+  /** The literals beyond {@link Integer#MAX_VALUE} are parsed and computed on without overflowing */
+  @Test public void large() {
+    assertEquals(new BigInteger("3000000000"), eval("big"));
+    assertEquals(new BigInteger("25000000000000000000"), eval("mul"));
+    assertEquals(BigInteger.TWO.pow(100), eval("pow2"));
+    assertEquals(BigInteger.TWO.pow(96), eval("powBig"));
+    assertEquals(new BigInteger("9000000006000000001"), eval("mixed"));
+  }
+}
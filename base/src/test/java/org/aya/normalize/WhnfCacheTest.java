@@ -0,0 +1,106 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.normalize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.value.MutableValue;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.pat.Pat;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.MetaPatTerm;
+import org.aya.syntax.core.term.SortTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.ref.LocalVar;
+import org.aya.tyck.TyckTest;
+import org.aya.util.error.SourcePos;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WhnfCacheTest {
+  private static @NotNull Term free(@NotNull String name) { return new FreeTerm(new LocalVar(name)); }
+
+  private static @NotNull MetaPatTerm patMeta(@NotNull Term type) {
+    return new MetaPatTerm(new Pat.Meta(MutableValue.create(), "m", type, SourcePos.NONE));
+  }
+
+  /** A pattern meta is solved behind the back of the state, the call on it must not stay stuck */
+  @Test public void patMeta() {
+    var result = TyckTest.tyck("""
+      open data Nat | O | S Nat
+      def pred (n : Nat) : Nat
+      | O => O
+      | S n => n
+      """);
+    var pred = (FnDef) result.defs().find(def -> def.ref().name().equals("pred")).get();
+    var meta = patMeta(pred.telescope().getFirst().type());
+    var call = new FnCall(new FnDef.Delegate(pred.ref()), 0, ImmutableSeq.of(meta));
+    var state = result.info().makeTyckState();
+    var normalizer = new Normalizer(state);
+    assertSame(call, normalizer.apply(call));
+    // solve it like a pattern does when it is matched against the second clause
+    PatMatcher.doSolveMeta(pred.body().getRightValue().get(1).patterns().getFirst(), meta.meta());
+    assertInstanceOf(MetaPatTerm.class, normalizer.apply(call));
+    assertEquals(0, state.whnfCache().size());
+  }
+
+  /** Before a function of a mutual block gets its core, its calls and the calls unfolding to them are stuck */
+  @Test public void coreless() {
+    var result = TyckTest.tyck("""
+      open data Nat | O | S Nat
+      def pred (n : Nat) : Nat
+      | O => O
+      | S n => n
+      def pred2 (n : Nat) : Nat => pred n
+      def one : Nat => S O
+      """);
+    var defs = result.defs().filterIsInstance(FnDef.class);
+    var pred = defs.find(def -> def.ref().name().equals("pred")).get();
+    var pred2 = defs.find(def -> def.ref().name().equals("pred2")).get();
+    var one = defs.find(def -> def.ref().name().equals("one")).get().body().getLeftValue();
+    var call = new FnCall(new FnDef.Delegate(pred.ref()), 0, ImmutableSeq.of(one));
+    var call2 = new FnCall(new FnDef.Delegate(pred2.ref()), 0, ImmutableSeq.of(one));
+    var state = result.info().makeTyckState();
+    var normalizer = new Normalizer(state);
+    pred.ref().core = null;
+    try {
+      assertSame(call, normalizer.apply(call));
+      assertInstanceOf(FnCall.class, normalizer.apply(call2));
+      assertEquals(0, state.whnfCache().size());
+    } finally {
+      pred.ref().core = pred;
+    }
+    assertInstanceOf(ConCall.class, normalizer.apply(call));
+    assertInstanceOf(ConCall.class, normalizer.apply(call2));
+  }
+
+  @Test public void bounded() {
+    var cache = new WhnfCache();
+    for (int i = 0; i < WhnfCache.CAPACITY; i++) cache.put(free(STR."x\{i}"), SortTerm.Type0);
+    assertEquals(WhnfCache.CAPACITY, cache.size());
+    assertEquals(0, cache.stats().evictions());
+    var last = free("last");
+    cache.put(last, SortTerm.Type0);
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.stats().evictions());
+    assertSame(SortTerm.Type0, cache.get(last));
+  }
+
+  /** The states of one module count into the same statistics */
+  @Test public void stats() {
+    var stats = new WhnfCache.Stats();
+    var lhs = new WhnfCache(stats);
+    var rhs = new WhnfCache(stats);
+    var x = free("x");
+    assertNull(lhs.get(x));
+    lhs.put(x, SortTerm.Type0);
+    assertSame(SortTerm.Type0, lhs.get(x));
+    assertNull(rhs.get(x));
+    assertEquals(1, stats.hits());
+    assertEquals(2, stats.misses());
+    assertEquals("whnf cache: 1 hits, 2 misses, 0 evictions", stats.toString());
+  }
+}
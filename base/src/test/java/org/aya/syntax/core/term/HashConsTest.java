@@ -0,0 +1,38 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.term;
+
+import org.aya.generic.term.SortKind;
+import org.aya.syntax.ref.LocalVar;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashConsTest {
+  /** {@code head 0 1 ... (depth - 1)}, deep enough to overflow a recursive traversal */
+  private static @NotNull Term spine(@NotNull Term head, int depth) {
+    var term = head;
+    for (int i = 0; i < depth; i++) term = new AppTerm(term, new LocalTerm(i));
+    return term;
+  }
+
+  @Test public void deep() {
+    var lhs = HashCons.intern(spine(SortTerm.Type0, 100_000));
+    var rhs = HashCons.intern(spine(new SortTerm(SortKind.Type, 0), 100_000));
+    assertSame(lhs, rhs);
+    assertSame(lhs, HashCons.intern(lhs));
+  }
+
+  @Test public void free() {
+    var x = new FreeTerm(new LocalVar("x"));
+    var closed = HashCons.intern(new AppTerm(SortTerm.Type0, new LocalTerm(0)));
+    var lhs = HashCons.intern(new AppTerm(x, new AppTerm(SortTerm.Type0, new LocalTerm(0))));
+    var rhs = HashCons.intern(new AppTerm(x, new AppTerm(SortTerm.Type0, new LocalTerm(0))));
+    // terms with free variables are not canonical, but their closed subterms are
+    assertNotSame(lhs, rhs);
+    assertEquals(lhs, rhs);
+    assertSame(closed, ((AppTerm) lhs).arg());
+    assertSame(closed, ((AppTerm) rhs).arg());
+  }
+}
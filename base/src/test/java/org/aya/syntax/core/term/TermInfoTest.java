@@ -0,0 +1,73 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.term;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.syntax.core.Closure;
+import org.aya.syntax.ref.LocalVar;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TermInfoTest {
+  /** {@code x 0 1 ... (depth - 1)}, deep enough to overflow a recursive computation */
+  private static @NotNull Term spine(int depth) {
+    Term term = new FreeTerm(new LocalVar("x"));
+    for (int i = 0; i < depth; i++) term = new AppTerm(term, new LocalTerm(i));
+    return term;
+  }
+
+  @Test public void info() {
+    var term = spine(100_000);
+    assertEquals(100_000, TermInfo.looseBound(term));
+    assertTrue(TermInfo.hasFree(term));
+    assertFalse(TermInfo.hasMeta(term));
+    // binding one variable lowers the bound by one
+    var lam = new LamTerm(new Closure.Idx(term));
+    assertEquals(99_999, TermInfo.looseBound(lam));
+    var closed = new LamTerm(new Closure.Idx(new LocalTerm(0)));
+    assertEquals(0, TermInfo.looseBound(closed));
+    assertFalse(TermInfo.hasFree(closed));
+  }
+
+  /** {@param body} of a closure, with its index 1 deferred to {@param arg} */
+  private static @NotNull Closure.Env deferred(@NotNull Term body, @NotNull Term arg) {
+    return (Closure.Env) new Closure.Idx(body).defer(ImmutableSeq.of(arg));
+  }
+
+  @Test public void env() {
+    var x = new LocalVar("x");
+    var body = new AppTerm(new LocalTerm(1), new LocalTerm(0));
+    var closed = new LamTerm(deferred(body, SortTerm.Type0));
+    assertEquals(0, TermInfo.looseBound(closed));
+    assertFalse(TermInfo.hasFree(closed));
+    // nothing to do, so the substitution is still deferred
+    assertSame(closed, closed.bindAt(x, 0));
+    assertSame(closed, closed.replaceAllFrom(0, ImmutableSeq.of(SortTerm.Type0)));
+    var free = new LamTerm(deferred(body, new FreeTerm(x)));
+    assertEquals(0, TermInfo.looseBound(free));
+    assertTrue(TermInfo.hasFree(free));
+    assertEquals(new LamTerm(new Closure.Idx(body)), free.bindAt(x, 0));
+    // an index beyond the environment stays
+    var loose = new LamTerm(deferred(new AppTerm(new LocalTerm(2), body), SortTerm.Type0));
+    assertEquals(TermInfo.looseBound(new LamTerm(((Closure.Env) loose.body()).toIdx())), TermInfo.looseBound(loose));
+    assertEquals(2, TermInfo.looseBound(loose));
+  }
+
+  /** The cache is shared by all threads, which compute the same term at the same time */
+  @Test public void concurrent() throws InterruptedException, ExecutionException {
+    var term = spine(50_000);
+    var pool = Executors.newFixedThreadPool(8);
+    try {
+      var tasks = ImmutableSeq.<Callable<Integer>>fill(8, _ -> () -> TermInfo.looseBound(term));
+      for (var result : pool.invokeAll(tasks.asJava())) assertEquals(50_000, result.get());
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,39 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.tyck;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TrailTest {
+  @Test public void retainIf() {
+    var trail = new Trail();
+    var list = MutableList.of(0, 1, 2, 3, 4, 5, 6, 7);
+    var mark = trail.mark();
+    trail.retainIf(list, i -> i % 3 == 1);
+    assertEquals(ImmutableSeq.of(1, 4, 7), list.toImmutableSeq());
+    list.append(10);
+    trail.retainIf(list, i -> i > 1);
+    assertEquals(ImmutableSeq.of(4, 7, 10), list.toImmutableSeq());
+    trail.rollback(mark);
+    // the append is not recorded, so it stays, after the elements that were there before it
+    assertEquals(ImmutableSeq.of(0, 1, 2, 3, 4, 5, 6, 7, 10), list.toImmutableSeq());
+  }
+
+  @Test public void nested() {
+    var trail = new Trail();
+    var list = MutableList.of("a", "b", "c", "d");
+    var outer = trail.mark();
+    trail.retainIf(list, s -> !s.equals("b"));
+    var inner = trail.mark();
+    trail.retainIf(list, s -> s.equals("a"));
+    trail.rollback(inner);
+    assertEquals(ImmutableSeq.of("a", "c", "d"), list.toImmutableSeq());
+    trail.retainIf(list, s -> !s.equals("d"));
+    trail.rollback(outer);
+    assertEquals(ImmutableSeq.of("a", "b", "c", "d"), list.toImmutableSeq());
+  }
+}
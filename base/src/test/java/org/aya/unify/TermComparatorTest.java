@@ -0,0 +1,94 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.unify;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.syntax.SyntaxTestUtil;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.core.term.call.MetaCall;
+import org.aya.syntax.ref.MetaVar;
+import org.aya.tyck.ExprTycker;
+import org.aya.tyck.TyckTest;
+import org.aya.util.Ordering;
+import org.aya.util.error.SourcePos;
+import org.aya.util.reporter.BufferReporter;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TermComparatorTest {
+  private static final @NotNull TyckTest.TyckResult RESULT = TyckTest.tyck("""
+    open data Nat | O | S Nat
+    def k (a b : Nat) : Nat => b
+    def j (a : Nat) : Nat => k a (S O)
+    def j2 (a : Nat) : Nat => k (S a) (S O)
+    def zero : Nat => O
+    def one : Nat => S O
+    def kOO : Nat => k O O
+    def kOSO : Nat => k O (S O)
+    open data Unit | unit
+    open data P (A B : Type) | mk
+    def pNatUnit : P Nat Unit => mk
+    """);
+
+  private static @NotNull FnDef fn(@NotNull String name) {
+    return (FnDef) RESULT.defs().find(def -> def.ref().name().equals(name)).get();
+  }
+
+  private static @NotNull Term call(@NotNull String name, @NotNull Term arg) {
+    return new FnCall(new FnDef.Delegate(fn(name).ref()), 0, ImmutableSeq.of(arg));
+  }
+
+  private static @NotNull Term body(@NotNull String name) {
+    return fn(name).body().getLeftValue();
+  }
+
+  private record Setup(@NotNull ExprTycker tycker, @NotNull MetaCall meta) {
+    boolean compare(@NotNull Term lhs, @NotNull Term rhs) {
+      return tycker.unifier(SourcePos.NONE, Ordering.Eq).compare(lhs, rhs, fn("k").result());
+    }
+    boolean solved() { return tycker.state().solutions().containsKey(meta.ref()); }
+  }
+
+  private static @NotNull Setup setup() {
+    var tycker = new ExprTycker(RESULT.info().makeTyckState(), SyntaxTestUtil.THROWING);
+    var meta = tycker.freshMeta("m", SourcePos.NONE, new MetaVar.OfType(fn("k").result()));
+    return new Setup(tycker, meta);
+  }
+
+  /** {@code j ?m} unfolds to {@code k ?m (S O)}, which solves {@code ?m} before it fails on the second argument */
+  @Test public void failedStep() {
+    var setup = setup();
+    assertFalse(setup.compare(call("j", setup.meta()), body("kOO")));
+    assertFalse(setup.solved());
+  }
+
+  @Test public void successfulStep() {
+    var setup = setup();
+    assertTrue(setup.compare(call("j", setup.meta()), body("kOSO")));
+    assertTrue(setup.solved());
+  }
+
+  /** Both sides are unfolded, the arguments disagree, but the unfolded terms have the same normal form */
+  @Test public void unfolded() {
+    var setup = setup();
+    assertTrue(setup.compare(call("j", body("zero")), call("j2", body("one"))));
+    assertFalse(setup.compare(call("j", body("zero")), body("kOO")));
+  }
+
+  /** The type of {@code ?m} is compared with the type of the solution, which solves {@code ?t} before it fails */
+  @Test public void rejectedSolution() {
+    var tycker = new ExprTycker(RESULT.info().makeTyckState(), new BufferReporter());
+    var type = (DataCall) fn("pNatUnit").result();
+    var t = tycker.freshMeta("t", SourcePos.NONE, MetaVar.Misc.IsType);
+    var target = new DataCall(type.ref(), 0, ImmutableSeq.of(t, type.args().getFirst()));
+    var m = tycker.freshMeta("m", SourcePos.NONE, new MetaVar.OfType(target));
+    assertFalse(tycker.unifier(SourcePos.NONE, Ordering.Eq).compare(m, body("pNatUnit"), type));
+    assertFalse(tycker.state().solutions().containsKey(t.ref()));
+    assertFalse(tycker.state().solutions().containsKey(m.ref()));
+  }
+}
@@ -0,0 +1,28 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+
+plugins {
+  id("me.champeau.jmh")
+}
+
+dependencies {
+  jmh(project(":jit-compiler"))
+  jmh(project(":producer"))
+  jmh(libs.sourcebuddy)
+}
+
+// The benchmarks run on the fixtures of the compiler tests
+sourceSets.jmh { resources.srcDir(project(":jit-compiler").file("src/test/resources")) }
+
+jmh {
+  jmhVersion = libs.versions.jmh.get()
+  jvmArgs.addAll("--enable-preview", "-Xss32M")
+  // Fixed iteration counts, so that the numbers of different commits are comparable
+  fork = 1
+  warmupIterations = 3
+  iterations = 5
+  resultFormat = "JSON"
+}
+
+// Nothing to publish
+tasks.withType<PublishToMavenRepository>().configureEach { enabled = false }
@@ -0,0 +1,37 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.benchmark;
+
+import org.aya.normalize.Normalizer;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.literate.CodeOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Head normalize {@code isZero (sub (sub (... (sub n 1) ...) 1) 1)} nested {@link #depth} times,
+ * the arguments of each {@code sub} are only normalized as far as its clauses look into them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ArithBenchmark {
+  @Param({"10", "100"}) public int depth;
+
+  private TreeSort treeSort;
+  private Term term;
+
+  @Setup public void setup() throws IOException {
+    treeSort = TreeSort.load();
+    var defs = treeSort.tycked();
+    var nat = defs.nat(depth * 2);
+    for (int i = 0; i < depth; i++) nat = defs.call("sub", nat, defs.nat(1));
+    term = defs.call("isZero", nat);
+  }
+
+  @Benchmark public Term whnf() {
+    return new Normalizer(treeSort.info().makeTyckState()).normalize(term, CodeOptions.NormalizeMode.HEAD);
+  }
+}
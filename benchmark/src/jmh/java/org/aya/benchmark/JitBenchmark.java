@@ -0,0 +1,33 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.benchmark;
+
+import org.aya.normalize.Normalizer;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.literate.CodeOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Compiled {@link org.aya.syntax.compile.JitFn#invoke} against interpreted {@link org.aya.syntax.core.def.FnDef} unfolding */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JitBenchmark {
+  @Param({"true", "false"}) public boolean compiled;
+  @Param({"20", "200"}) public int size;
+
+  private TreeSort treeSort;
+  private Term term;
+
+  @Setup public void setup() throws IOException {
+    treeSort = TreeSort.load();
+    var defs = compiled ? treeSort.compiled() : treeSort.tycked();
+    term = defs.call("tree_sortNat", defs.randomNatList(size));
+  }
+
+  @Benchmark public Term sort() {
+    return new Normalizer(treeSort.info().makeTyckState()).normalize(term, CodeOptions.NormalizeMode.FULL);
+  }
+}
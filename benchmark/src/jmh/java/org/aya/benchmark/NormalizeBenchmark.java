@@ -0,0 +1,33 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.benchmark;
+
+import org.aya.normalize.Normalizer;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.literate.CodeOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Sort a list with the interpreter, the normalizer is created per invocation so that nothing is cached */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NormalizeBenchmark {
+  @Param({"HEAD", "FULL"}) public CodeOptions.NormalizeMode mode;
+  @Param({"20", "200"}) public int size;
+
+  private TreeSort treeSort;
+  private Term term;
+
+  @Setup public void setup() throws IOException {
+    treeSort = TreeSort.load();
+    var defs = treeSort.tycked();
+    term = defs.call("tree_sortNat", defs.randomNatList(size));
+  }
+
+  @Benchmark public Term normalize() {
+    return new Normalizer(treeSort.info().makeTyckState()).normalize(term, mode);
+  }
+}
@@ -0,0 +1,66 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.benchmark;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.control.Option;
+import org.aya.normalize.Normalizer;
+import org.aya.normalize.PatMatcher;
+import org.aya.syntax.core.pat.CaseTree;
+import org.aya.syntax.core.term.Term;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching the nested patterns of {@code balanceLeft}, the arguments match
+ * the first clause ({@code color = black}) or fall through to the last one ({@code color = red}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PatMatchBenchmark {
+  @Param({"black", "red"}) public String color;
+
+  private ImmutableSeq<Term.Matching> clauses;
+  private CaseTree tree;
+  private ImmutableSeq<Term> args;
+  private Normalizer normalizer;
+
+  @Setup public void setup() throws IOException {
+    var treeSort = TreeSort.load();
+    var fn = treeSort.fn("balanceLeft");
+    clauses = fn.body().getRightValue();
+    tree = Objects.requireNonNull(fn.tree());
+    normalizer = new Normalizer(treeSort.info().makeTyckState());
+
+    var defs = treeSort.tycked();
+    var A = ImmutableSeq.<Term>of(defs.natCall());
+    var leaf = defs.con("RBTree", "rbLeaf", A);
+    var red = defs.con("Color", "red", ImmutableSeq.empty());
+    var inner = defs.con("RBTree", "rbNode", A, red, leaf, defs.nat(1), leaf);
+    var outer = defs.con("RBTree", "rbNode", A, red, inner, defs.nat(2), leaf);
+    args = ImmutableSeq.of(defs.natCall(), defs.con("Color", color, ImmutableSeq.empty()), outer, defs.nat(3), leaf);
+    if (!clauses.allMatch(clause -> clause.patterns().sizeEquals(args)))
+      throw new IllegalStateException("The telescope of balanceLeft changed");
+  }
+
+  @Benchmark public Term apply() {
+    var matcher = new PatMatcher(false, normalizer);
+    for (var clause : clauses) {
+      var result = matcher.apply(clause, args);
+      if (result.isOk()) return result.get();
+    }
+    return null;
+  }
+
+  @Benchmark public Option<Term> sequential() {
+    return normalizer.tryUnfoldClauses(clauses, args, 0, false);
+  }
+
+  @Benchmark public Option<Term> caseTree() {
+    return normalizer.tryUnfoldClauses(tree, clauses, args, 0);
+  }
+}
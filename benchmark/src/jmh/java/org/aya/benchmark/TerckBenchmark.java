@@ -0,0 +1,38 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.benchmark;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableSet;
+import org.aya.syntax.core.def.FnDef;
+import org.aya.syntax.core.def.TyckDef;
+import org.aya.syntax.core.term.call.Callable;
+import org.aya.terck.CallResolver;
+import org.aya.util.terck.CallGraph;
+import org.aya.util.terck.Diagonal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** {@link CallGraph#findBadRecursion} on the call graph of all functions defined by pattern matching */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TerckBenchmark {
+  private CallGraph<Callable.Tele, TyckDef> graph;
+
+  @Setup public void setup() throws IOException {
+    var treeSort = TreeSort.load();
+    var fns = treeSort.defs()
+      .filterIsInstance(FnDef.class)
+      .filter(fn -> fn.body().isRight());
+    var targets = MutableSet.<TyckDef>from(fns);
+    graph = CallGraph.create();
+    fns.forEach(fn -> new CallResolver(treeSort.info().makeTyckState(), fn, targets, graph).check());
+  }
+
+  @Benchmark public ImmutableSeq<Diagonal<Callable.Tele, TyckDef>> findBadRecursion() {
+    return graph.findBadRecursion();
+  }
+}
@@ -0,0 +1,148 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.benchmark;
+
+import com.javax0.sourcebuddy.Compiler;
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.compiler.AyaSerializer;
+import org.aya.compiler.FileSerializer;
+import org.aya.compiler.ModuleSerializer;
+import org.aya.prettier.AyaPrettierOptions;
+import org.aya.producer.AyaParserImpl;
+import org.aya.resolve.ResolveInfo;
+import org.aya.resolve.context.EmptyContext;
+import org.aya.resolve.module.DumbModuleLoader;
+import org.aya.resolve.module.ModuleCallback;
+import org.aya.syntax.compile.JitCon;
+import org.aya.syntax.compile.JitData;
+import org.aya.syntax.compile.JitDef;
+import org.aya.syntax.compile.JitFn;
+import org.aya.syntax.core.def.*;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.core.term.call.FnCall;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.core.term.repr.ListTerm;
+import org.aya.util.error.SourceFile;
+import org.aya.util.reporter.ThrowingReporter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.aya.compiler.AbstractSerializer.javify;
+
+/**
+ * The red-black tree sort of the jit-compiler tests, tycked once per fork.
+ * Terms are built from either the tycked defs or the compiled ones, see {@link Defs}.
+ */
+public record TreeSort(@NotNull ImmutableSeq<TyckDef> defs, @NotNull ResolveInfo info) {
+  public static final @NotNull ThrowingReporter REPORTER = new ThrowingReporter(AyaPrettierOptions.pretty());
+  private static final @NotNull Path FILE = Path.of("TreeSort.aya");
+  private static final long SEED = 114514L;
+
+  public static @NotNull TreeSort load() throws IOException {
+    String code;
+    try (var stream = TreeSort.class.getResourceAsStream("/TreeSort.aya")) {
+      assert stream != null;
+      code = new String(stream.readAllBytes());
+    }
+    var moduleLoader = new DumbModuleLoader(new EmptyContext(REPORTER, FILE));
+    var callback = new ModuleCallback<RuntimeException>() {
+      ImmutableSeq<TyckDef> ok;
+      @Override public void onModuleTycked(@NotNull ResolveInfo x, @NotNull ImmutableSeq<TyckDef> defs) { ok = defs; }
+    };
+    var info = moduleLoader.tyckModule(moduleLoader.resolve(new AyaParserImpl(REPORTER).program(
+      new SourceFile("<TreeSort>", FILE, code))), callback);
+    return new TreeSort(callback.ok, info);
+  }
+
+  /** @return {@param size} numbers below {@param size}, the same ones in every run */
+  public static @NotNull ImmutableSeq<Integer> randomNats(int size) {
+    var random = new Random(SEED);
+    return ImmutableSeq.fill(size, _ -> random.nextInt(size));
+  }
+
+  public @NotNull TyckDef def(@NotNull String name) {
+    return defs.find(def -> def.ref().name().equals(name)).get();
+  }
+
+  public @NotNull FnDef fn(@NotNull String name) { return (FnDef) def(name); }
+
+  /** The defs that terms are built from, they are either all tycked or all compiled */
+  public interface Defs {
+    @NotNull DataDefLike data(@NotNull String name);
+    @NotNull ConDefLike con(@NotNull String data, @NotNull String name);
+    @NotNull FnDefLike fn(@NotNull String name);
+
+    default @NotNull DataCall natCall() { return new DataCall(data("Nat"), 0, ImmutableSeq.empty()); }
+    default @NotNull DataCall listCall(@NotNull Term elem) {
+      return new DataCall(data("List"), 0, ImmutableSeq.of(elem));
+    }
+    default @NotNull Term nat(int i) {
+      return new IntegerTerm(i, con("Nat", "O"), con("Nat", "S"), natCall());
+    }
+    default @NotNull Term natList(@NotNull ImmutableSeq<Integer> xs) {
+      return new ListTerm(xs.map(this::nat), con("List", "[]"), con("List", ":>"), listCall(natCall()));
+    }
+    default @NotNull Term randomNatList(int size) { return natList(randomNats(size)); }
+    default @NotNull Term call(@NotNull String fn, @NotNull Term... args) {
+      return new FnCall(fn(fn), 0, ImmutableSeq.from(args));
+    }
+    default @NotNull Term con(@NotNull String data, @NotNull String name, @NotNull ImmutableSeq<Term> ownerArgs, @NotNull Term... args) {
+      return new ConCall(con(data, name), ownerArgs, 0, ImmutableSeq.from(args));
+    }
+  }
+
+  /** Unfold the tycked defs with the interpreter */
+  public @NotNull Defs tycked() {
+    return new Defs() {
+      @Override public @NotNull DataDefLike data(@NotNull String name) {
+        return new DataDef.Delegate(((DataDef) def(name)).ref);
+      }
+      @Override public @NotNull ConDefLike con(@NotNull String data, @NotNull String name) {
+        return new ConDef.Delegate(((DataDef) def(data)).body.find(con -> con.ref.name().equals(name)).get().ref);
+      }
+      @Override public @NotNull FnDefLike fn(@NotNull String name) {
+        return new FnDef.Delegate(TreeSort.this.fn(name).ref);
+      }
+    };
+  }
+
+  /** Serialize the defs and compile them with the system java compiler, this takes seconds */
+  public @NotNull Defs compiled() {
+    var code = new FileSerializer(info.shapeFactory())
+      .serialize(new FileSerializer.FileResult(null, new ModuleSerializer.ModuleResult(
+        DumbModuleLoader.DUMB_MODULE_NAME, defs.filterIsInstance(TopLevelDef.class), ImmutableSeq.empty())))
+      .result();
+    ClassLoader loader;
+    try {
+      loader = Compiler.java().from(STR."\{AyaSerializer.PACKAGE_BASE}.\{DumbModuleLoader.DUMB_MODULE_NAME}", code)
+        .compile().load().get().getClassLoader();
+    } catch (ClassNotFoundException | Compiler.CompileException e) {
+      throw new RuntimeException(e);
+    }
+    return new Defs() {
+      private <T extends JitDef> @NotNull T load(@NotNull String... qualified) {
+        var name = ImmutableSeq.of(qualified).prepended(DumbModuleLoader.DUMB_MODULE_NAME).joinToString("$");
+        try {
+          @SuppressWarnings("unchecked") var instance = (T) loader
+            .loadClass(STR."\{AyaSerializer.PACKAGE_BASE}.\{name}")
+            .getField(AyaSerializer.STATIC_FIELD_INSTANCE)
+            .get(null);
+          return instance;
+        } catch (ReflectiveOperationException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+      @Override public @NotNull JitData data(@NotNull String name) { return load(javify(name)); }
+      @Override public @NotNull JitCon con(@NotNull String data, @NotNull String name) {
+        return load(javify(data), javify(name));
+      }
+      @Override public @NotNull JitFn fn(@NotNull String name) { return load(javify(name)); }
+    };
+  }
+}
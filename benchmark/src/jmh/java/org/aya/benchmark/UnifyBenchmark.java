@@ -0,0 +1,45 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.benchmark;
+
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.ref.LocalCtx;
+import org.aya.unify.Unifier;
+import org.aya.util.Ordering;
+import org.aya.util.error.SourcePos;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link org.aya.unify.TermComparator#compare} on a sorted list against
+ * an equal literal ({@code reduce = false}) or the call that sorts it ({@code reduce = true}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UnifyBenchmark {
+  @Param({"false", "true"}) public boolean reduce;
+  @Param({"20", "200"}) public int size;
+
+  private TreeSort treeSort;
+  private Term lhs, rhs, type;
+
+  @Setup public void setup() throws IOException {
+    treeSort = TreeSort.load();
+    var defs = treeSort.tycked();
+    var nats = TreeSort.randomNats(size);
+    var sorted = nats.view().sorted(Comparator.naturalOrder()).toImmutableSeq();
+    lhs = reduce ? defs.call("tree_sortNat", defs.natList(nats)) : defs.natList(sorted);
+    rhs = defs.natList(sorted);
+    type = defs.listCall(defs.natCall());
+  }
+
+  @Benchmark public boolean compare() {
+    var unifier = new Unifier(treeSort.info().makeTyckState(), new LocalCtx(),
+      TreeSort.REPORTER, SourcePos.NONE, Ordering.Eq, false);
+    return unifier.compare(lhs, rhs, type);
+  }
+}
@@ -11,6 +11,7 @@ plugins {
   `maven-publish`
   signing
   alias(libs.plugins.jlink) apply false
+  alias(libs.plugins.jmh) apply false
 }
 
 var projectVersion: String by rootProject.ext
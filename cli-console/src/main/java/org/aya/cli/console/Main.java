@@ -15,9 +15,11 @@ import org.aya.cli.utils.CliEnums;
 import org.aya.prettier.AyaPrettierOptions;
 import org.aya.primitive.PrimFactory;
 import org.aya.producer.flcl.FlclParser;
+import org.aya.syntax.core.term.HashCons;
 import org.aya.util.FileUtil;
 import org.aya.util.error.SourceFile;
 import org.aya.util.error.SourceFileLocator;
+import org.aya.util.reporter.Problem;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import picocli.CommandLine;
@@ -75,6 +77,7 @@ public class Main extends MainArgs implements Callable<Integer> {
   }
 
   private int doCompile(@NotNull CompileAction compile) throws IOException {
+    HashCons.setEnabled(compile.hashCons);
     var message = asciiOnly
       ? CompilerFlags.Message.ASCII
       : CompilerFlags.Message.EMOJI;
@@ -89,7 +92,7 @@ public class Main extends MainArgs implements Callable<Integer> {
     var flags = new CompilerFlags(message, interruptedTrace,
       compile.isRemake, pretty,
       modulePaths().view().map(Paths::get),
-      outputPath);
+      outputPath, compile.jobs, compile.nbe, verbosity == Problem.Severity.INFO);
 
     if (compile.isLibrary || compile.isRemake || compile.isNoCode) {
       var advisor = compile.isNoCode ? CompilerAdvisor.inMemory() : CompilerAdvisor.onDisk();
@@ -41,6 +41,15 @@ public class MainArgs {
     @Option(names = {"--no-code"}, description =
       "Treat input file as a library root (no outputs will be saved to disk)")
     public boolean isNoCode;
+    @Option(names = {"--make-jobs", "-j"}, defaultValue = "1", description =
+      "Number of threads used to type check independent modules of a library", paramLabel = "jobs")
+    public int jobs = 1;
+    @Option(names = {"--hash-cons"}, description =
+      "Share equal closed terms of type checked definitions, saving memory on large libraries")
+    public boolean hashCons;
+    @Option(names = {"--nbe"}, description =
+      "Check conversion by normalization by evaluation before the syntactic algorithm")
+    public boolean nbe;
   }
 
   public static class PlctAction {
@@ -9,6 +9,7 @@ import org.aya.resolve.context.PhysicalModuleContext;
 import org.aya.syntax.concrete.stmt.ModuleName;
 import org.aya.syntax.concrete.stmt.Stmt;
 import org.aya.syntax.ref.AnyVar;
+import org.aya.syntax.ref.CompiledVar;
 import org.aya.syntax.ref.DefVar;
 import org.aya.syntax.ref.ModulePath;
 import org.aya.util.RepoLike;
@@ -34,10 +35,11 @@ public final class ReplContext extends PhysicalModuleContext implements RepoLike
   ) {
     // REPL always overwrites symbols.
     symbols().add(modName, name, ref);
-    if (ref instanceof DefVar<?, ?> defVar && acc == Stmt.Accessibility.Public) exportSymbol(modName, name, defVar);
+    if ((ref instanceof DefVar<?, ?> || ref instanceof CompiledVar) && acc == Stmt.Accessibility.Public)
+      exportSymbol(modName, name, ref);
   }
 
-  @Override public boolean exportSymbol(@NotNull ModuleName modName, @NotNull String name, @NotNull DefVar<?, ?> ref) {
+  @Override public boolean exportSymbol(@NotNull ModuleName modName, @NotNull String name, @NotNull AnyVar ref) {
     super.exportSymbol(modName, name, ref);
     // REPL always overwrites symbols.
     return true;
@@ -3,7 +3,11 @@
 package org.aya.cli.library;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.ImmutableSet;
+import kala.collection.mutable.MutableMap;
 import kala.collection.mutable.MutableSet;
+import kala.tuple.Tuple;
+import kala.tuple.Tuple2;
 import org.aya.cli.library.incremental.CompilerAdvisor;
 import org.aya.cli.library.json.LibraryConfigData;
 import org.aya.cli.library.source.DiskLibraryOwner;
@@ -28,6 +32,7 @@ import org.aya.syntax.concrete.stmt.decl.PrimDecl;
 import org.aya.util.error.Panic;
 import org.aya.util.more.StringUtil;
 import org.aya.util.reporter.CountingReporter;
+import org.aya.util.reporter.Problem;
 import org.aya.util.reporter.Reporter;
 import org.aya.util.terck.MutableGraph;
 import org.aya.util.tyck.OrgaTycker;
@@ -38,6 +43,10 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
 
 /**
  * @author kiva
@@ -65,7 +74,7 @@ public class LibraryCompiler {
     @NotNull CompilerAdvisor advisor,
     @NotNull LibraryOwner owner
   ) {
-    return new LibraryCompiler(reporter, flags, owner, advisor, new LibraryModuleLoader.United(primFactory));
+    return new LibraryCompiler(reporter, flags, owner, advisor, new LibraryModuleLoader.United(primFactory, flags.nbe(), flags.reportStats()));
   }
 
   public static @NotNull LibraryCompiler newCompiler(
@@ -112,8 +121,8 @@ public class LibraryCompiler {
 
   /**
    * Traverse the source file's import statements and build its dependency graph.
-   * The graph is used to generate incremental build list according to files'
-   * last modified time.
+   * The graph is used to generate incremental build list according to
+   * {@link CompilerAdvisor#isSourceModified} and {@link CompilerAdvisor#isExportChanged}.
    */
   private void resolveImportsIfNeeded(@NotNull LibrarySource source) throws IOException {
     if (parseIfNeeded(source)) return; // already resolved
@@ -258,8 +267,10 @@ public class LibraryCompiler {
     advisor.prepareLibraryOutput(owner);
     advisor.notifyIncrementalJob(modified, SCCs);
 
-    var tycker = new LibraryOrgaTycker(new LibrarySccTycker(reporter, moduleLoader, advisor), affected);
-    SCCs.forEachChecked(tycker::tyckSCC);
+    var sccTycker = new LibrarySccTycker(reporter, moduleLoader, advisor, ImmutableSet.from(modified));
+    var tycker = new LibraryOrgaTycker(sccTycker, affected);
+    if (flags.parallelism() > 1) tyckParallel(tycker, SCCs);
+    else SCCs.forEachChecked(tycker::tyckSCC);
     if (tycker.skippedSet.isNotEmpty()) {
       reporter.reportString("I dislike the following module(s):");
       tycker.skippedSet.forEach(f ->
@@ -272,6 +283,77 @@ public class LibraryCompiler {
     return false;
   }
 
+  /**
+   * Tyck SCCs with {@link CompilerFlags#parallelism()} threads.
+   * An SCC is scheduled as soon as all SCCs it depends on are tycked.
+   * Each task reports to its own {@link CountingReporter}, so errors in one SCC
+   * do not make others fail. Like the sequential path, a failed task resets the shared reporter,
+   * so its errors do not count for the SCCs of later waves.
+   * The skipped set is only touched by the current thread.
+   *
+   * @param SCCs the SCCs in topological order
+   */
+  private void tyckParallel(
+    @NotNull LibraryOrgaTycker tycker,
+    @NotNull ImmutableSeq<ImmutableSeq<LibrarySource>> SCCs
+  ) throws IOException {
+    var sccOf = MutableMap.<LibrarySource, Integer>create();
+    SCCs.forEachIndexed((i, scc) -> scc.forEach(src -> sccOf.put(src, i)));
+    // users.get(i): SCCs that import SCC i, pending[i]: number of unfinished SCCs imported by SCC i
+    var users = SCCs.map(_ -> MutableSet.<Integer>create());
+    var pending = new int[SCCs.size()];
+    SCCs.forEachIndexed((i, scc) -> scc.forEach(src -> tycker.usageGraph().suc(src).forEach(user -> {
+      int j = sccOf.get(user);
+      if (j != i && users.get(i).add(j)) pending[j]++;
+    })));
+
+    var sharedReporter = new SyncReporter(reporter);
+    var states = moduleLoader.loader.states();
+    var executor = Executors.newFixedThreadPool(flags.parallelism());
+    var completion = new ExecutorCompletionService<Tuple2<Integer, ImmutableSeq<LibrarySource>>>(executor);
+    IntConsumer submit = i -> {
+      var scc = SCCs.get(i).filterNot(tycker.skippedSet()::contains);
+      completion.submit(() -> {
+        var localReporter = CountingReporter.delegate(sharedReporter);
+        var localLoader = moduleLoader.fork(new LibraryModuleLoader(localReporter, owner, advisor, states));
+        var localTycker = new LibrarySccTycker(localReporter, localLoader, advisor, tycker.sccTycker().modified());
+        var skipped = localTycker.tyckSCC(scc);
+        if (skipped.isNotEmpty()) sharedReporter.clear();
+        return Tuple.of(i, skipped);
+      });
+    };
+    try {
+      var running = 0;
+      for (int i = 0; i < pending.length; i++)
+        if (pending[i] == 0) {
+          submit.accept(i);
+          running++;
+        }
+      while (running > 0) {
+        var done = completion.take().get();
+        running--;
+        tycker.skip(done.component2());
+        for (var j : users.get(done.component1()))
+          if (--pending[j] == 0) {
+            submit.accept(j);
+            running++;
+          }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Panic("Interrupted while tycking library", e);
+    } catch (ExecutionException e) {
+      switch (e.getCause()) {
+        case IOException io -> throw io;
+        case RuntimeException re -> throw re;
+        case Error err -> throw err;
+        default -> throw new Panic("Failed to tyck library", e.getCause());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private void reparseAffected(@NotNull LibrarySource src) throws IOException {
     if (src.tycked().get() == null) return;
     src.tycked().set(null);
@@ -290,7 +372,10 @@ public class LibraryCompiler {
     src.imports().clear();
   }
 
-  /** collect usages of directly modified source files */
+  /**
+   * collect usages of directly modified source files,
+   * some of them may be cut off by {@link LibrarySccTycker#isUpToDate}
+   */
   private static @NotNull MutableGraph<LibrarySource> collectAffected(
     @NotNull ImmutableSeq<LibrarySource> modified,
     @NotNull MutableGraph<LibrarySource> depGraph
@@ -353,13 +438,16 @@ public class LibraryCompiler {
   record LibrarySccTycker(
     @NotNull CountingReporter reporter,
     @NotNull ModuleLoader moduleLoader,
-    @NotNull CompilerAdvisor advisor
+    @NotNull CompilerAdvisor advisor,
+    @NotNull ImmutableSet<LibrarySource> modified
   ) implements SCCTycker<LibrarySource, IOException> {
     @Override
     public @NotNull ImmutableSeq<LibrarySource> tyckSCC(@NotNull ImmutableSeq<LibrarySource> order) throws IOException {
-      for (var f : order) advisor.clearModuleOutput(f);
+      var upToDate = isUpToDate(order);
+      // compiled cores of up-to-date modules are kept, and loaded instead of tycked
+      if (!upToDate) for (var f : order) advisor.clearModuleOutput(f);
       for (var f : order) {
-        tyckOne(f);
+        tyckOne(f, upToDate);
         if (reporter.anyError()) {
           reporter.clear();
           return ImmutableSeq.of(f);
@@ -368,9 +456,21 @@ public class LibraryCompiler {
       return ImmutableSeq.empty();
     }
 
-    private void tyckOne(@NotNull LibrarySource file) {
+    /**
+     * Early cutoff: the SCC is affected only because it imports rebuilt modules,
+     * but none of them changed their exported interface.
+     * Checking the direct imports is enough, because an export hash includes the export hashes of its imports.
+     * The cut off SCC refers to the compiled definitions of the rebuilt imports,
+     * which {@link LibraryModuleLoader#load} also gives to the other importers.
+     */
+    private boolean isUpToDate(@NotNull ImmutableSeq<LibrarySource> order) {
+      return order.noneMatch(modified::contains)
+        && order.allMatch(f -> f.imports().noneMatch(advisor::isExportChanged));
+    }
+
+    private void tyckOne(@NotNull LibrarySource file, boolean upToDate) {
       var moduleName = file.moduleName();
-      reporter.reportNest("[Tyck] %s (%s)".formatted(
+      reporter.reportNest("[%s] %s (%s)".formatted(upToDate ? "Load" : "Tyck",
         moduleName.toString(), file.displayPath()), LibraryOwner.DEFAULT_INDENT);
       var mod = moduleLoader.load(moduleName);
       if (mod == null || file.resolveInfo().get() == null)
@@ -378,6 +478,21 @@ public class LibraryCompiler {
     }
   }
 
+  /** Serializes problems reported from different threads. */
+  record SyncReporter(@NotNull CountingReporter delegated) implements CountingReporter {
+    @Override public synchronized void report(@NotNull Problem problem) {
+      delegated.report(problem);
+    }
+
+    @Override public synchronized int problemSize(@NotNull Problem.Severity severity) {
+      return delegated.problemSize(severity);
+    }
+
+    @Override public synchronized void clear() {
+      delegated.clear();
+    }
+  }
+
   public static class LibraryTyckingFailed extends InterruptException {
     @Override public InterruptStage stage() {
       return InterruptStage.Tycking;
@@ -14,6 +14,7 @@ import org.aya.resolve.module.ModuleLoader;
 import org.aya.syntax.AyaFiles;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.ref.ModulePath;
+import org.aya.util.error.Panic;
 import org.aya.util.reporter.CountingReporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -48,11 +49,13 @@ record LibraryModuleLoader(
     var sourcePath = AyaFiles.resolveAyaSourceFile(basePaths, mod.module());
     if (sourcePath == null) {
       // We are loading a module belonging to dependencies, find the compiled core.
-      // The compiled core should always exist, otherwise the dependency is not built.
+      // The compiled core should always exist, otherwise the dependency is not built,
+      // or it cannot be compiled, see DiskCompilerAdvisor.
       // TODO: what if module name clashes?
       var depCorePath = AyaFiles.resolveAyaCompiledFile(basePaths, mod.module());
       var core = loadCompiledCore(mod, depCorePath, depCorePath, recurseLoader);
-      assert core != null : "dependencies not built?";
+      if (core == null)
+        throw new Panic(STR."Dependency module \{mod} has no compiled core, it is not built or cannot be compiled");
       return core;
     }
 
@@ -75,12 +78,21 @@ record LibraryModuleLoader(
     var context = new EmptyContext(reporter, sourcePath).derive(mod);
     var resolveInfo = resolveModule(states.primFactory, context, program, recurseLoader);
     source.resolveInfo().set(resolveInfo);
-    return tyckModule(resolveInfo, (moduleResolve, defs) -> {
+    var tycked = tyckModule(resolveInfo, (moduleResolve, defs) -> {
       source.notifyTycked(moduleResolve, defs);
       if (reporter.noError()) saveCompiledCore(source, moduleResolve, defs);
     });
+    if (reporter.anyError()) return tycked;
+    // The importers get the definitions from the core just saved, if any. A module cut off by
+    // LibraryCompiler is loaded from its core, which refers to them instead of the tycked ones,
+    // and an importer of both must not see two different references to one definition.
+    var compiled = loadCompiledCore(mod, sourcePath, corePath, recurseLoader);
+    return compiled != null ? compiled : tycked;
   }
 
+  @Override public boolean nbe() { return states.nbe(); }
+  @Override public boolean reportStats() { return states.reportStats(); }
+
   @Override
   public boolean existsFileLevelModule(@NotNull ModulePath path) {
     return owner.findModule(path) != null;
@@ -90,7 +102,7 @@ record LibraryModuleLoader(
     @NotNull ModulePath mod, @Nullable Path sourcePath,
     @Nullable Path corePath, @NotNull ModuleLoader recurseLoader
   ) {
-    return advisor.loadCompiledCore(reporter, mod, sourcePath, corePath, recurseLoader);
+    return advisor.loadCompiledCore(reporter, mod, sourcePath, corePath, recurseLoader, states.primFactory);
   }
 
   private void saveCompiledCore(
@@ -101,6 +113,6 @@ record LibraryModuleLoader(
     advisor.saveCompiledCore(file, resolveInfo, defs);
   }
 
-  record United(@NotNull PrimFactory primFactory) {
+  record United(@NotNull PrimFactory primFactory, boolean nbe, boolean reportStats) {
   }
 }
@@ -5,6 +5,7 @@ package org.aya.cli.library.incremental;
 import kala.collection.immutable.ImmutableSeq;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
+import org.aya.primitive.PrimFactory;
 import org.aya.producer.AyaParserImpl;
 import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.module.CachedModuleLoader;
@@ -34,6 +35,15 @@ public interface CompilerAdvisor {
   boolean isSourceModified(@NotNull LibrarySource source);
   void updateLastModified(@NotNull LibrarySource source);
 
+  /**
+   * Used for early cutoff: a module whose source is not modified need not be
+   * rebuilt if none of its imports changed the exported interface in this build.
+   *
+   * @return whether the exported interface of the source changed since last build,
+   * conservatively true if unknown.
+   */
+  default boolean isExportChanged(@NotNull LibrarySource source) { return true; }
+
   void prepareLibraryOutput(@NotNull LibraryOwner owner) throws IOException;
   void clearLibraryOutput(@NotNull LibraryOwner owner) throws IOException;
   void clearModuleOutput(@NotNull LibrarySource source) throws IOException;
@@ -60,13 +70,16 @@ public interface CompilerAdvisor {
    * For {@link DiskCompilerAdvisor}, returns null if the core path does not exist
    * or either source or core path is null.
    * For {@link InMemoryCompilerAdvisor}, returns null if the mod does not store in memory.
+   *
+   * @param primFactory the primitives of the compilation, which the primitives of the core are bound to
    */
   @Nullable ResolveInfo doLoadCompiledCore(
     @NotNull Reporter reporter,
     @NotNull ModulePath mod,
     @Nullable Path sourcePath,
     @Nullable Path corePath,
-    @NotNull ModuleLoader recurseLoader
+    @NotNull ModuleLoader recurseLoader,
+    @NotNull PrimFactory primFactory
   ) throws IOException, ClassNotFoundException;
 
   void doSaveCompiledCore(
@@ -81,11 +94,12 @@ public interface CompilerAdvisor {
     @NotNull ModulePath mod,
     @Nullable Path sourcePath,
     @Nullable Path corePath,
-    @NotNull ModuleLoader recurseLoader
+    @NotNull ModuleLoader recurseLoader,
+    @NotNull PrimFactory primFactory
   ) {
     assert recurseLoader instanceof CachedModuleLoader<?>;
     try {
-      return doLoadCompiledCore(reporter, mod, sourcePath, corePath, recurseLoader);
+      return doLoadCompiledCore(reporter, mod, sourcePath, corePath, recurseLoader, primFactory);
     } catch (IOException | ClassNotFoundException e) {
       throw new Panic("Compiled aya found but cannot be loaded", e);
     }
@@ -5,6 +5,7 @@ package org.aya.cli.library.incremental;
 import kala.collection.immutable.ImmutableSeq;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
+import org.aya.primitive.PrimFactory;
 import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.module.ModuleLoader;
 import org.aya.syntax.GenericAyaParser;
@@ -35,6 +36,10 @@ public class DelegateCompilerAdvisor implements CompilerAdvisor {
     delegate.updateLastModified(source);
   }
 
+  @Override public boolean isExportChanged(@NotNull LibrarySource source) {
+    return delegate.isExportChanged(source);
+  }
+
   @Override public void prepareLibraryOutput(@NotNull LibraryOwner owner) throws IOException {
     delegate.prepareLibraryOutput(owner);
   }
@@ -52,8 +57,8 @@ public class DelegateCompilerAdvisor implements CompilerAdvisor {
   }
 
   @Override public @Nullable ResolveInfo
-  doLoadCompiledCore(@NotNull Reporter reporter, @NotNull ModulePath mod, @Nullable Path sourcePath, @Nullable Path corePath, @NotNull ModuleLoader recurseLoader) throws IOException, ClassNotFoundException {
-    return delegate.doLoadCompiledCore(reporter, mod, sourcePath, corePath, recurseLoader);
+  doLoadCompiledCore(@NotNull Reporter reporter, @NotNull ModulePath mod, @Nullable Path sourcePath, @Nullable Path corePath, @NotNull ModuleLoader recurseLoader, @NotNull PrimFactory primFactory) throws IOException, ClassNotFoundException {
+    return delegate.doLoadCompiledCore(reporter, mod, sourcePath, corePath, recurseLoader, primFactory);
   }
 
   @Override public void
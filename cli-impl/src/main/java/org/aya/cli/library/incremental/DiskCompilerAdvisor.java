@@ -3,31 +3,122 @@
 package org.aya.cli.library.incremental;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableMap;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
 import org.aya.cli.utils.CompilerUtil;
 import org.aya.compiler.CompiledModule;
+import org.aya.compiler.CompiledModuleFormat;
+import org.aya.compiler.JitClassLoader;
+import org.aya.compiler.ModuleCompiler;
+import org.aya.prettier.AyaPrettierOptions;
+import org.aya.primitive.PrimFactory;
+import org.aya.primitive.ShapeFactory;
 import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.context.EmptyContext;
 import org.aya.resolve.module.ModuleLoader;
 import org.aya.syntax.core.def.TyckDef;
 import org.aya.syntax.ref.ModulePath;
 import org.aya.util.FileUtil;
+import org.aya.util.error.Panic;
 import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Decides modifications by content hashes instead of timestamps, so that
+ * checking out, restoring or touching a file does not trigger a rebuild.
+ * Next to each compiled core, the {@link LibrarySource#compiledHashPath()} file
+ * stores the hash of the source file and the hash of the exported interface,
+ * which is the compiled core together with the tycked definitions,
+ * and the export hashes of the imports of the module.
+ * Since the latter are included, the export hash changes whenever the export hash of any
+ * transitive import does, as a definition may unfold to definitions of the imports of its module.
+ * A dependent is rebuilt only if the export hash of some direct import changes.
+ * <p>
+ * The tycked definitions are compiled to classes under {@link LibraryOwner#outDir()},
+ * and loaded back by a {@link JitClassLoader} shared by all libraries of this compilation,
+ * so later runs never compile unchanged modules again.
+ * A module that {@link ModuleCompiler} cannot compile, or that imports such a module,
+ * gets no compiled core, so it is checked from source in every build, while its export hash is still kept.
+ */
 public class DiskCompilerAdvisor implements CompilerAdvisor {
+  private final @NotNull JitClassLoader classLoader = new JitClassLoader();
+  /** Export hashes of the previous build, remembered before the module output is cleared */
+  private final @NotNull MutableMap<Path, String> lastExportHash = MutableMap.wrapJava(new ConcurrentHashMap<>());
+  /** Export hashes of this build, written to disk in {@link #updateLastModified} */
+  private final @NotNull MutableMap<Path, String> exportHash = MutableMap.wrapJava(new ConcurrentHashMap<>());
+  private final @NotNull Set<Path> exportChanged = ConcurrentHashMap.newKeySet();
+
+  record ModuleHash(@NotNull String source, @NotNull String export) {
+    static @Nullable ModuleHash read(@NotNull Path hashFile) {
+      try {
+        var lines = Files.readAllLines(hashFile);
+        return lines.size() == 2 ? new ModuleHash(lines.get(0), lines.get(1)) : null;
+      } catch (IOException ignore) {
+        return null;
+      }
+    }
+
+    void write(@NotNull Path hashFile) throws IOException {
+      FileUtil.writeString(hashFile, STR."\{source}\n\{export}\n");
+    }
+  }
+
+  private static @NotNull MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new Panic(e);
+    }
+  }
+
+  private static @NotNull String sourceHash(@NotNull LibrarySource source) throws IOException {
+    return HexFormat.of().formatHex(sha256().digest(Files.readAllBytes(source.underlyingFile())));
+  }
+
+  private static @NotNull String exportHash(
+    byte @NotNull [] core, @NotNull ImmutableSeq<TyckDef> defs,
+    @NotNull ImmutableSeq<String> importHashes
+  ) {
+    var digest = sha256();
+    digest.update(core);
+    var options = AyaPrettierOptions.debug();
+    defs.forEach(def -> digest.update(def.toDoc(options).debugRender().getBytes(StandardCharsets.UTF_8)));
+    importHashes.forEach(hash -> digest.update(hash.getBytes(StandardCharsets.UTF_8)));
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * @return the export hash of {@param source}, which is either saved in this build,
+   * or kept on disk from a previous one
+   */
+  private @NotNull String exportHashOf(@NotNull LibrarySource source) {
+    var export = exportHash.getOrNull(source.underlyingFile());
+    if (export != null) return export;
+    var hash = ModuleHash.read(source.compiledHashPath());
+    return hash == null ? "" : hash.export;
+  }
+
   @Override public boolean isSourceModified(@NotNull LibrarySource source) {
     try {
-      var core = source.compiledCorePath();
-      if (!Files.exists(core)) return true;
-      return Files.getLastModifiedTime(source.underlyingFile())
-        .compareTo(Files.getLastModifiedTime(core)) > 0;
+      var corePath = source.compiledCorePath();
+      if (!Files.exists(corePath)) return true;
+      // a core of an older format is rebuilt like a modified source
+      if (!CompiledModuleFormat.isCurrent(corePath)) return true;
+      var hash = ModuleHash.read(source.compiledHashPath());
+      return hash == null || !hash.source.equals(sourceHash(source));
     } catch (IOException ignore) {
       return true;
     }
@@ -35,12 +126,17 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
 
   @Override public void updateLastModified(@NotNull LibrarySource source) {
     try {
-      var core = source.compiledCorePath();
-      Files.setLastModifiedTime(core, Files.getLastModifiedTime(source.underlyingFile()));
+      var export = exportHash.remove(source.underlyingFile());
+      if (export.isEmpty()) return;
+      new ModuleHash(sourceHash(source), export.get()).write(source.compiledHashPath());
     } catch (IOException ignore) {
     }
   }
 
+  @Override public boolean isExportChanged(@NotNull LibrarySource source) {
+    return exportChanged.contains(source.underlyingFile());
+  }
+
   @Override public void prepareLibraryOutput(@NotNull LibraryOwner owner) throws IOException {
     Files.createDirectories(owner.outDir());
   }
@@ -50,24 +146,37 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
   }
 
   @Override public void clearModuleOutput(@NotNull LibrarySource source) throws IOException {
+    var key = source.underlyingFile();
+    var hashFile = source.compiledHashPath();
+    var hash = ModuleHash.read(hashFile);
+    if (hash != null) lastExportHash.put(key, hash.export);
+    exportChanged.remove(key);
     Files.deleteIfExists(source.compiledCorePath());
+    Files.deleteIfExists(hashFile);
+    // the classes are kept, ModuleCompiler decides whether they are stale
   }
+
   @Override public @Nullable ResolveInfo doLoadCompiledCore(
     @NotNull Reporter reporter,
     @NotNull ModulePath mod,
     @Nullable Path sourcePath,
     @Nullable Path corePath,
-    @NotNull ModuleLoader recurseLoader
+    @NotNull ModuleLoader recurseLoader,
+    @NotNull PrimFactory primFactory
   ) throws IOException, ClassNotFoundException {
     if (corePath == null || sourcePath == null) return null;
     if (!Files.exists(corePath)) return null;
 
+    var compiledAya = CompiledModuleFormat.read(corePath);
+    // stale core of an older format, told modified by isSourceModified and recompiled
+    if (compiledAya == null) return null;
+    // the classes are in the output directory that the core is in
+    var classRoot = corePath.toAbsolutePath();
+    for (var _ : mod.module()) classRoot = classRoot.getParent();
+    classLoader.addRoot(classRoot);
     var context = new EmptyContext(reporter, sourcePath).derive(mod);
-    // TODO: load defs
-    try (var inputStream = FileUtil.ois(corePath)) {
-      var compiledAya = (CompiledModule) inputStream.readObject();
-      return compiledAya.toResolveInfo(recurseLoader, context);
-    }
+    return compiledAya.toResolveInfo(recurseLoader, context, new CompiledModule.DeState(classLoader),
+      primFactory, new ShapeFactory());
   }
 
   @Override public void doSaveCompiledCore(
@@ -75,8 +184,28 @@ public class DiskCompilerAdvisor implements CompilerAdvisor {
     @NotNull ResolveInfo resolveInfo,
     @NotNull ImmutableSeq<TyckDef> defs
   ) throws IOException {
-    // TODO: compile defs
+    var classRoot = file.owner().outDir();
+    classLoader.addRoot(classRoot);
+    var moduleName = file.moduleName();
+    // the classes refer to the classes of the imports, which exist if and only if the imports have cores
+    var compiled = file.imports().allMatch(imp -> Files.exists(imp.compiledCorePath()))
+      ? ModuleCompiler.compile(moduleName, defs, resolveInfo.shapeFactory(), classRoot)
+      : null;
     var coreFile = file.compiledCorePath();
-    CompilerUtil.saveCompiledCore(coreFile, resolveInfo);
+    byte[] core;
+    if (compiled == null) {
+      // a core without the definitions cannot be loaded, so such a module is always checked from source
+      ModuleCompiler.deleteClasses(classRoot, moduleName);
+      Files.deleteIfExists(coreFile);
+      core = CompiledModuleFormat.write(CompiledModule.from(resolveInfo));
+    } else core = CompilerUtil.saveCompiledCore(coreFile, resolveInfo, compiled);
+    var key = file.underlyingFile();
+    var importHashes = file.imports().view()
+      .sorted(Comparator.comparing(imp -> imp.moduleName().toString()))
+      .map(this::exportHashOf)
+      .toImmutableSeq();
+    var export = exportHash(core, defs, importHashes);
+    exportHash.put(key, export);
+    if (!export.equals(lastExportHash.remove(key).getOrNull())) exportChanged.add(key);
   }
 }
@@ -6,6 +6,7 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableMap;
 import org.aya.cli.library.source.LibraryOwner;
 import org.aya.cli.library.source.LibrarySource;
+import org.aya.primitive.PrimFactory;
 import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.module.ModuleLoader;
 import org.aya.syntax.core.def.TyckDef;
@@ -18,11 +19,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class InMemoryCompilerAdvisor implements CompilerAdvisor {
-  protected final @NotNull MutableMap<Path, FileTime> coreTimestamp = MutableMap.create();
-  protected final @NotNull MutableMap<ModulePath, ResolveInfo> compiledCore = MutableMap.create();
-  
+  // concurrent maps because modules may be saved and loaded by parallel library builds
+  protected final @NotNull MutableMap<Path, FileTime> coreTimestamp = MutableMap.wrapJava(new ConcurrentHashMap<>());
+  protected final @NotNull MutableMap<ModulePath, ResolveInfo> compiledCore = MutableMap.wrapJava(new ConcurrentHashMap<>());
+
   protected @NotNull Path timestampKey(@NotNull LibrarySource source) {
     return source.underlyingFile();
   }
@@ -66,7 +69,8 @@ public class InMemoryCompilerAdvisor implements CompilerAdvisor {
     @NotNull ModulePath mod,
     @Nullable Path sourcePath,
     @Nullable Path corePath,
-    @NotNull ModuleLoader recurseLoader
+    @NotNull ModuleLoader recurseLoader,
+    @NotNull PrimFactory primFactory
   ) {
     // TODO: what if module name clashes?
     return compiledCore.getOrNull(mod);
@@ -7,6 +7,7 @@ import kala.collection.mutable.MutableList;
 import kala.range.primitive.IntRange;
 import kala.value.MutableValue;
 import org.aya.cli.utils.LiterateData;
+import org.aya.generic.Constants;
 import org.aya.literate.Literate;
 import org.aya.pretty.doc.Doc;
 import org.aya.resolve.ResolveInfo;
@@ -113,6 +114,12 @@ public record LibrarySource(
     return AyaFiles.resolveAyaCompiledFile(owner.outDir(), mod);
   }
 
+  /** @see org.aya.cli.library.incremental.DiskCompilerAdvisor */
+  public @NotNull Path compiledHashPath() {
+    var mod = moduleName().module();
+    return FileUtil.resolveFile(owner.outDir(), mod, Constants.AYAH_POSTFIX);
+  }
+
   @Override public String toString() {
     return underlyingFile.toString();
   }
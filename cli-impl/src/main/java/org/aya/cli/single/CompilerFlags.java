@@ -13,14 +13,36 @@ import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
 
+/**
+ * @param nbe         see {@link org.aya.tyck.TyckState#nbe()}
+ * @param reportStats see {@link org.aya.resolve.module.ModuleLoader#reportStats()}
+ */
 public record CompilerFlags(
   @NotNull Message message,
   boolean interruptedTrace,
   boolean remake,
   @Nullable CompilerFlags.PrettyInfo prettyInfo,
   @NotNull SeqLike<Path> modulePaths,
-  @Nullable Path outputFile
+  @Nullable Path outputFile,
+  int parallelism,
+  boolean nbe,
+  boolean reportStats
 ) {
+  /** Compile libraries sequentially. */
+  public CompilerFlags(
+    @NotNull Message message, boolean interruptedTrace, boolean remake,
+    @Nullable PrettyInfo prettyInfo, @NotNull SeqLike<Path> modulePaths, @Nullable Path outputFile
+  ) {
+    this(message, interruptedTrace, remake, prettyInfo, modulePaths, outputFile, 1);
+  }
+  /** Check without normalization by evaluation. */
+  public CompilerFlags(
+    @NotNull Message message, boolean interruptedTrace, boolean remake,
+    @Nullable PrettyInfo prettyInfo, @NotNull SeqLike<Path> modulePaths, @Nullable Path outputFile, int parallelism
+  ) {
+    this(message, interruptedTrace, remake, prettyInfo, modulePaths, outputFile, parallelism, false, false);
+  }
+
   public static @Nullable CompilerFlags.PrettyInfo prettyInfoFromOutput(
     @Nullable Path outputFile, @NotNull RenderOptions renderOptions,
     boolean noCodeStyle, boolean inlineCodeStyle, boolean SSR
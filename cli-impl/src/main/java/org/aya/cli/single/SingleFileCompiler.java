@@ -39,7 +39,8 @@ public final class SingleFileCompiler {
     fileManager = new SingleAyaFile.Factory(reporter);
     loader = new CachedModuleLoader<>(new ModuleListLoader(this.reporter,
       flags.modulePaths().view().map(path ->
-        new FileModuleLoader(locator, path, reporter, ayaParser, fileManager)).toImmutableSeq()));
+        new FileModuleLoader(locator, path, reporter, ayaParser, fileManager, new PrimFactory(), flags.nbe(), flags.reportStats()))
+        .toImmutableSeq()));
   }
 
   public <E extends IOException> int compile(
@@ -2,18 +2,20 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.cli.utils;
 
+import kala.collection.immutable.ImmutableSeq;
 import kala.function.CheckedRunnable;
 import org.aya.cli.single.CompilerFlags;
 import org.aya.compiler.CompiledModule;
+import org.aya.compiler.CompiledModuleFormat;
 import org.aya.generic.InterruptException;
 import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.module.FileModuleLoader;
+import org.aya.syntax.ref.QName;
 import org.aya.util.error.Panic;
 import org.aya.util.reporter.CountingReporter;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -43,15 +45,16 @@ public class CompilerUtil {
     }
   }
 
-  public static void saveCompiledCore(@NotNull Path coreFile, @NotNull ResolveInfo resolveInfo) throws IOException {
-    var compiledAya = CompiledModule.from(resolveInfo);
-    try (var outputStream = coreWriter(coreFile)) {
-      outputStream.writeObject(compiledAya);
-    }
-  }
-
-  private static @NotNull ObjectOutputStream coreWriter(@NotNull Path coreFile) throws IOException {
+  /**
+   * @param defs the definitions compiled to classes
+   * @return the serialized core
+   */
+  public static byte @NotNull [] saveCompiledCore(
+    @NotNull Path coreFile, @NotNull ResolveInfo resolveInfo, @NotNull ImmutableSeq<QName> defs
+  ) throws IOException {
+    var serialized = CompiledModuleFormat.write(CompiledModule.from(resolveInfo, defs));
     Files.createDirectories(coreFile.toAbsolutePath().getParent());
-    return new ObjectOutputStream(Files.newOutputStream(coreFile));
+    Files.write(coreFile, serialized);
+    return serialized;
   }
 }
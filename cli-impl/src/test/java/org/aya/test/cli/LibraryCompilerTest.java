@@ -0,0 +1,265 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.test.cli;
+
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import org.aya.cli.library.LibraryCompiler;
+import org.aya.cli.library.incremental.DiskCompilerAdvisor;
+import org.aya.cli.library.source.LibrarySource;
+import org.aya.cli.single.CompilerFlags;
+import org.aya.compiler.CompiledModuleFormat;
+import org.aya.generic.Constants;
+import org.aya.primitive.PrimFactory;
+import org.aya.resolve.ResolveInfo;
+import org.aya.syntax.core.def.TyckDef;
+import org.aya.test.StreamReporter;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LibraryCompilerTest {
+  /** Records the modules that are checked from source, each build uses a fresh one like a new process */
+  private static final class RecordingAdvisor extends DiskCompilerAdvisor {
+    private final @NotNull MutableList<String> tycked = MutableList.create();
+    @Override public void doSaveCompiledCore(
+      @NotNull LibrarySource file, @NotNull ResolveInfo resolveInfo, @NotNull ImmutableSeq<TyckDef> defs
+    ) throws IOException {
+      synchronized (tycked) {
+        tycked.append(file.moduleName().toString());
+      }
+      super.doSaveCompiledCore(file, resolveInfo, defs);
+    }
+  }
+
+  @TempDir Path libRoot;
+  /** The messages of the last build */
+  private @NotNull String output = "";
+
+  @BeforeEach public void setup() throws IOException {
+    Files.createDirectories(libRoot.resolve("src"));
+    Files.writeString(libRoot.resolve("aya.json"), """
+      {
+        "ayaVersion": "0.31",
+        "name": "test-lib",
+        "group": "org.aya-prover",
+        "version": "0.1.0"
+      }
+      """);
+    write("Base", """
+      open data Nat | zero | suc Nat
+      prim I : ISet
+      prim Path (A : I -> Type) (a : A 0) (b : A 1) : Type
+      def infix = {A : Type} (a b : A) => Path (\\i => A) a b
+      def refl {A : Type} {a : A} : a = a => \\i => a
+      def add (a b : Nat) : Nat elim a
+      | zero => b
+      | suc a => suc (add a b)
+      """);
+  }
+
+  private void write(@NotNull String module, @Language("Aya") @NotNull String code) throws IOException {
+    Files.writeString(libRoot.resolve("src").resolve(STR."\{module}.aya"), code);
+  }
+
+  /** @return the modules checked from source, sorted */
+  private @NotNull ImmutableSeq<String> make(int jobs) throws IOException {
+    return make(jobs, true);
+  }
+
+  /** @return the modules checked from source and saved, sorted */
+  private @NotNull ImmutableSeq<String> make(int jobs, boolean success) throws IOException {
+    var advisor = new RecordingAdvisor();
+    var out = new ByteArrayOutputStream();
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, null, SeqView.empty(), null, jobs);
+    var status = LibraryCompiler.compile(new PrimFactory(), new StreamReporter(new PrintStream(out)), flags, advisor, libRoot);
+    output = out.toString();
+    if (success) assertEquals(0, status, output);
+    else assertNotEquals(0, status, output);
+    return advisor.tycked.toImmutableSeq().sorted();
+  }
+
+  private void diamond() throws IOException {
+    write("Left", """
+      open import Base
+      def two : Nat => suc (suc zero)
+      def twoRefl : two = two => refl
+      """);
+    write("Right", """
+      open import Base
+      def one : Nat => suc zero
+      def oneRefl : one = one => refl
+      """);
+    write("Top", """
+      open import Base
+      open import Left
+      open import Right
+      def three : Nat => suc two
+      def threeRefl : three = suc (suc one) => refl
+      """);
+  }
+
+  @Test public void parallelDiamond() throws IOException {
+    diamond();
+    assertEquals(ImmutableSeq.of("Base", "Left", "Right", "Top"), make(4));
+    // nothing is rebuilt, no matter how many threads
+    assertEquals(ImmutableSeq.empty(), make(4));
+    // a new definition in the bottom rebuilds everything
+    Files.writeString(libRoot.resolve("src/Base.aya"), "def four : Nat => suc (suc (suc (suc zero)))\n",
+      StandardOpenOption.APPEND);
+    assertEquals(ImmutableSeq.of("Base", "Left", "Right", "Top"), make(4));
+  }
+
+  @Test public void parallelFailure() throws IOException {
+    diamond();
+    write("Bad", """
+      open import Base
+      def bad : Nat => Type
+      """);
+    // Bad fails in the same wave as Left and Right, its errors do not stop Top from being saved
+    assertEquals(ImmutableSeq.of("Base", "Left", "Right", "Top"), make(4, false));
+  }
+
+  @Test public void cyclicImport() throws IOException {
+    write("Ping", "open import Pong\n");
+    write("Pong", "open import Ping\n");
+    make(1, false);
+    assertTrue(output.contains("cycle"), output);
+  }
+
+  private void chain(@NotNull String n) throws IOException {
+    write("Base", STR."""
+      open data Nat | zero | suc Nat
+      prim I : ISet
+      prim Path (A : I -> Type) (a : A 0) (b : A 1) : Type
+      def infix = {A : Type} (a b : A) => Path (\\i => A) a b
+      def refl {A : Type} {a : A} : a = a => \\i => a
+      def n : Nat => \{n}
+      """);
+  }
+
+  @Test public void transitiveRebuild() throws IOException {
+    chain("zero");
+    write("Mid", """
+      public open import Base
+      def m : Nat => n
+      """);
+    // Top does not import Base directly, but m unfolds to n
+    write("Top", """
+      open import Mid
+      def t : m = n => refl
+      """);
+    assertEquals(ImmutableSeq.of("Base", "Mid", "Top"), make(1));
+    // the core of Mid is the same, but Mid is rebuilt against a different n
+    chain("suc zero");
+    assertEquals(ImmutableSeq.of("Base", "Mid", "Top"), make(1));
+  }
+
+  @Test public void earlyCutoff() throws IOException {
+    chain("zero");
+    write("Mid", """
+      open import Base
+      def m : Nat => suc n
+      """);
+    assertEquals(ImmutableSeq.of("Base", "Mid"), make(1));
+    // the source changes, but the export does not
+    Files.writeString(libRoot.resolve("src/Base.aya"), "// nothing\n", StandardOpenOption.APPEND);
+    assertEquals(ImmutableSeq.of("Base"), make(1));
+    assertEquals(ImmutableSeq.empty(), make(1));
+    // Mid is cut off again, and Top sees n both from Base and through Mid
+    Files.writeString(libRoot.resolve("src/Base.aya"), "// still nothing\n", StandardOpenOption.APPEND);
+    write("Top", """
+      open import Base
+      open import Mid
+      def t : m = suc n => refl
+      """);
+    assertEquals(ImmutableSeq.of("Base", "Top"), make(1));
+    assertEquals(ImmutableSeq.empty(), make(1));
+  }
+
+  @Test public void staleCore() throws IOException {
+    diamond();
+    assertEquals(ImmutableSeq.of("Base", "Left", "Right", "Top"), make(1));
+    Path core;
+    try (var files = Files.walk(libRoot)) {
+      core = files.filter(p -> p.getFileName().toString().equals(STR."Base\{Constants.AYAC_POSTFIX}"))
+        .findFirst().orElseThrow();
+    }
+    // pretend it is written by an older version
+    var bytes = Files.readAllBytes(core);
+    ByteBuffer.wrap(bytes).putInt(4, CompiledModuleFormat.VERSION - 1);
+    Files.write(core, bytes);
+    // rebuilt like a modified source, and the export is the same
+    assertEquals(ImmutableSeq.of("Base"), make(1));
+    assertEquals(ImmutableSeq.empty(), make(1));
+  }
+
+  @Test public void compiledConPatterns() throws IOException {
+    assertEquals(ImmutableSeq.of("Base"), make(1));
+    // Base is loaded from the compiled classes
+    write("Pred", """
+      open import Base
+      def pred (n : Nat) : Nat
+      | zero => zero
+      | suc (suc n) => suc n
+      | suc zero => zero
+      def two : Nat => pred (add (suc zero) (suc (suc zero)))
+      """);
+    assertEquals(ImmutableSeq.of("Pred"), make(1));
+  }
+
+  @Test public void compiledNestedPatterns() throws IOException {
+    write("Base", """
+      open data Nat | zero | suc Nat
+      open data Unit | unit
+      open data Empty
+      def add (a b : Nat) : Nat elim a
+      | zero => b
+      | suc a => suc (add a b)
+      def Big (n : Nat) : Type
+      | zero => Empty
+      | suc zero => Empty
+      | suc (suc _) => Unit
+      """);
+    assertEquals(ImmutableSeq.of("Base"), make(1));
+    // Big is compiled, the inner argument only becomes a constructor after add is unfolded
+    write("Nested", """
+      open import Base
+      def big : Big (suc (add (suc zero) zero)) => unit
+      """);
+    assertEquals(ImmutableSeq.of("Nested"), make(1));
+  }
+
+  @Test public void primitives() throws IOException {
+    write("Strings", """
+      prim String : Type
+      def greeting : String => "hello"
+      """);
+    assertEquals(ImmutableSeq.of("Base", "Strings"), make(1));
+    // primitives are compiled like the other definitions, so nothing is checked from source again
+    assertEquals(ImmutableSeq.empty(), make(1));
+    // the compiled code refers to the primitives that are bound when their modules are loaded
+    write("Greet", """
+      open import Base
+      open import Strings
+      def hello : String => greeting
+      def zeroRefl : zero = zero => refl
+      """);
+    assertEquals(ImmutableSeq.of("Greet"), make(1));
+  }
+}
@@ -8,6 +8,7 @@ import org.aya.gradle.GenerateVersionTask
 dependencies {
   api(project(":base"))
   implementation(libs.sourcebuddy)
+  implementation(libs.asm)
   testImplementation(libs.junit.jupiter)
   testImplementation(libs.hamcrest)
   testImplementation(project(":producer"))
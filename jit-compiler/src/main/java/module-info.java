@@ -2,6 +2,7 @@ module aya.compiler {
   requires aya.base;
   requires aya.util;
   requires kala.collection.primitive;
+  requires org.objectweb.asm;
 
   requires static org.jetbrains.annotations;
 
@@ -15,9 +15,11 @@ import org.aya.syntax.core.def.TyckAnyDef;
 import org.aya.syntax.core.term.Term;
 import org.aya.syntax.ref.DefVar;
 import org.aya.syntax.ref.ModulePath;
+import org.aya.syntax.ref.QName;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
 import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
@@ -238,6 +240,11 @@ public abstract class AbstractSerializer<T> implements AyaSerializer<T> {
     return STR."\"\{StringUtil.escapeStringCharacters(raw)}\"";
   }
 
+  protected static @NotNull String makeBigInteger(@NotNull BigInteger value) {
+    if (value.bitLength() < Long.SIZE) return STR."\{CLASS_BIGINT}.valueOf(\{value}L)";
+    return STR."new \{CLASS_BIGINT}(\{makeString(value.toString())})";
+  }
+
   protected static @NotNull String isNull(@NotNull String term) {
     return STR."\{term} == null";
   }
@@ -251,6 +258,17 @@ public abstract class AbstractSerializer<T> implements AyaSerializer<T> {
     return STR."\{getModuleReference(Objects.requireNonNull(ref.module).module())}.\{javify(ref)}";
   }
 
+  /** @return the binary name of the class of {@param name}, see {@link #getCoreReference} */
+  public static @NotNull String getBinaryName(@NotNull QName name) {
+    var module = name.module();
+    var moduleClassReference = getModuleReference(module.fileModule());
+    var defClassName = module.module().module().view().drop(module.fileModuleSize())
+      .appended(name.name())
+      .map(AbstractSerializer::javify)
+      .joinToString("$");
+    return STR."\{moduleClassReference}$\{defClassName}";
+  }
+
   // TODO: produce name like "AYA_Data_Vec_Vec" rather than just "Vec", so that they won't conflict with our import
   // then we can make all `CLASS_*` thing become unqualified.
   protected static @NotNull String getJitReference(@NotNull JitTele ref) {
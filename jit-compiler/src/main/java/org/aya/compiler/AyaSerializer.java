@@ -7,6 +7,7 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.collection.mutable.MutableSeq;
 import kala.control.Result;
 import org.aya.compiler.util.SerializeUtils;
+import org.aya.syntax.core.def.ConDefLike;
 import org.aya.syntax.core.term.Term;
 import org.aya.syntax.core.term.TupTerm;
 import org.aya.syntax.core.term.call.ConCall;
@@ -17,6 +18,9 @@ import org.aya.util.error.Panic;
 import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigInteger;
+import java.util.function.UnaryOperator;
+
 import static org.aya.compiler.AbstractSerializer.getJavaReference;
 
 /**
@@ -38,6 +42,7 @@ public interface AyaSerializer<T> {
   String FIELD_INSTANCE = "ref";
   String CLASS_JITCONCALL = getJavaReference(ConCall.class);
   String CLASS_CONCALLLIKE = getJavaReference(ConCallLike.class);
+  String CLASS_CONDEFLIKE = getJavaReference(ConDefLike.class);
   String CLASS_TUPLE = getJavaReference(TupTerm.class);
   String CLASS_JITFNCALL = getJavaReference(FnCall.class);
   String CLASS_JITDATACALL = getJavaReference(DataCall.class);
@@ -50,7 +55,12 @@ public interface AyaSerializer<T> {
   String CLASS_SER_UTILS = getJavaReference(SerializeUtils.class);
   String CLASS_RESULT = getJavaReference(Result.class);
   String CLASS_BOOLEAN = getJavaReference(Boolean.class);
+  String CLASS_BIGINT = getJavaReference(BigInteger.class);
+  String CLASS_UNARYOP = getJavaReference(UnaryOperator.class);
   String TYPE_IMMTERMSEQ = STR."\{CLASS_IMMSEQ}<\{CLASS_TERM}>";
+  String TYPE_NORMALIZER = STR."\{CLASS_UNARYOP}<\{CLASS_TERM}>";
+  /** The normalizer passed to the calls in the terms built by the compiled code, which are normalized later */
+  String NORMALIZER_IDENTITY = STR."\{CLASS_UNARYOP}.identity()";
 
   @Language("Java") String IMPORT_BLOCK = """
     import org.aya.generic.term.SortKind;
@@ -60,6 +70,8 @@ public interface AyaSerializer<T> {
     import org.aya.syntax.ref.LocalVar;
     import org.aya.syntax.core.*;
     import org.aya.syntax.core.Closure.Jit;
+    import org.aya.syntax.core.def.ConDefLike;
+    import org.aya.syntax.core.def.PrimDef;
     import org.aya.syntax.core.pat.Pat;
     import org.aya.syntax.core.repr.*;
     import org.aya.syntax.core.term.*;
@@ -74,6 +86,8 @@ public interface AyaSerializer<T> {
     import kala.collection.mutable.MutableSeq;
     import kala.collection.Seq;
     import kala.control.Result;
+
+    import java.util.function.UnaryOperator;
     """;
 
   /**
@@ -0,0 +1,551 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.compiler;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import org.aya.syntax.core.term.Term;
+import org.aya.util.error.Panic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.UnaryOperator;
+
+import static org.aya.compiler.AyaSerializer.STATIC_FIELD_INSTANCE;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Emits the code of a method, the bytecode counterpart of the {@code build*} methods of {@link AbstractSerializer}.
+ * Frames are computed by ASM, so every local variable gets a fresh slot, and no slot holds two types.
+ * Nothing is emitted where the code cannot be reached, like after a {@code return}.
+ */
+final class BytecodeBuilder {
+  /** The class being emitted, which also holds the synthetic methods of the lambdas in its methods */
+  static final class Owner {
+    final @NotNull ClassVisitor visitor;
+    final @NotNull String name;
+    private int lambdaCount = 0;
+
+    Owner(@NotNull ClassVisitor visitor, @NotNull String name) {
+      this.visitor = visitor;
+      this.name = name;
+    }
+  }
+
+  /** A local variable, its slot is given by the method it is used in, see {@link #lambda} */
+  static final class Var {
+    final @NotNull Class<?> type;
+    Var(@NotNull Class<?> type) { this.type = type; }
+  }
+
+  /** Pushes a value, it is emitted at every use like the java expressions of {@link AbstractSerializer} */
+  @FunctionalInterface
+  interface Expr {
+    void emit(@NotNull BytecodeBuilder builder);
+  }
+
+  /** Jumps to {@code label} if some condition does not hold */
+  @FunctionalInterface
+  interface Cond {
+    void jumpUnless(@NotNull BytecodeBuilder builder, @NotNull Label label);
+  }
+
+  /**
+   * A term that a variable of a telescope is instantiated with.
+   * It refers to only one local variable, which is what a lambda captures, see {@link #lambda}.
+   */
+  sealed interface Access extends Expr {
+    @NotNull Var var();
+  }
+
+  record Local(@NotNull Var var) implements Access {
+    @Override public void emit(@NotNull BytecodeBuilder builder) { builder.load(var); }
+  }
+
+  /** {@code var.get(index)}, where {@code var} is a sequence of terms */
+  record Element(@NotNull Var var, int index) implements Access {
+    @Override public void emit(@NotNull BytecodeBuilder builder) {
+      builder.load(var);
+      builder.push(index);
+      builder.invoke(method(var.type, "get", int.class));
+      builder.checkcast(Term.class);
+    }
+  }
+
+  /** A method as javac calls it, resolved against the classes that the compiler runs with */
+  record JvmMethod(
+    int opcode, @NotNull String owner, @NotNull String name,
+    @NotNull String desc, boolean isInterface, @NotNull Class<?> returnType
+  ) { }
+
+  record JvmCtor(@NotNull String owner, @NotNull String desc) { }
+
+  private static final Handle METAFACTORY = new Handle(H_INVOKESTATIC, Type.getInternalName(LambdaMetafactory.class),
+    "metafactory", MethodType.methodType(CallSite.class, MethodHandles.Lookup.class, String.class,
+    MethodType.class, MethodType.class, MethodHandle.class, MethodType.class).toMethodDescriptorString(), false);
+  private static final Type TYPE_TERM = Type.getType(Term.class);
+  private static final JvmMethod IMMSEQ_EMPTY = method(ImmutableSeq.class, "empty");
+  private static final JvmMethod BIGINT_VALUE_OF = method(BigInteger.class, "valueOf", long.class);
+  private static final JvmCtor BIGINT = constructor(BigInteger.class, String.class);
+  private static final JvmCtor PANIC = constructor(Panic.class);
+  private static final JvmCtor PANIC_MESSAGE = constructor(Panic.class, String.class);
+
+  final @NotNull Owner owner;
+  private final @NotNull MethodVisitor visitor;
+  private final @NotNull MutableMap<Var, Integer> slots = MutableMap.create();
+  private int nextSlot;
+  private boolean reachable = true;
+  /** The label that {@link #breakOut} jumps to, and whether it is jumped to */
+  private @Nullable Label breakLabel = null;
+  private boolean breakUsed = false;
+
+  /** Start a method of {@param owner}, the parameters are bound to {@param params} */
+  BytecodeBuilder(
+    @NotNull Owner owner, int access, @NotNull String name,
+    @NotNull Class<?> returnType, @NotNull ImmutableSeq<Var> params
+  ) {
+    this.owner = owner;
+    this.visitor = owner.visitor.visitMethod(access, name, descriptor(returnType, params), null, null);
+    this.nextSlot = (access & ACC_STATIC) == 0 ? 1 : 0;
+    params.forEach(this::bind);
+    visitor.visitCode();
+  }
+
+  /// region Resolving
+
+  static @NotNull JvmMethod method(@NotNull Class<?> owner, @NotNull String name, @NotNull Class<?>... params) {
+    try {
+      var method = owner.getMethod(name, params);
+      var opcode = Modifier.isStatic(method.getModifiers()) ? INVOKESTATIC
+        : owner.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL;
+      return new JvmMethod(opcode, Type.getInternalName(owner), name,
+        Type.getMethodDescriptor(method), owner.isInterface(), method.getReturnType());
+    } catch (NoSuchMethodException e) {
+      throw new Panic(e);
+    }
+  }
+
+  static @NotNull JvmCtor constructor(@NotNull Class<?> owner, @NotNull Class<?>... params) {
+    try {
+      return new JvmCtor(Type.getInternalName(owner), Type.getConstructorDescriptor(owner.getDeclaredConstructor(params)));
+    } catch (NoSuchMethodException e) {
+      throw new Panic(e);
+    }
+  }
+
+  static @NotNull String descriptor(@NotNull Class<?> returnType, @NotNull ImmutableSeq<Var> params) {
+    return STR."(\{params.joinToString("", p -> Type.getDescriptor(p.type))})\{Type.getDescriptor(returnType)}";
+  }
+
+  /** @return the descriptor of a field holding an instance of the class {@param className} */
+  static @NotNull String descriptor(@NotNull String className) {
+    return Type.getObjectType(className).getDescriptor();
+  }
+
+  /// endregion Resolving
+
+  /// region Expressions
+
+  static @NotNull Expr constant(int value) { return builder -> builder.push(value); }
+  static @NotNull Expr constant(boolean value) { return builder -> builder.push(value); }
+  static @NotNull Expr constant(@NotNull String value) { return builder -> builder.visitor.visitLdcInsn(value); }
+
+  /** @return the {@link AyaSerializer#STATIC_FIELD_INSTANCE} of the class {@param className} */
+  static @NotNull Expr instance(@NotNull String className) {
+    return builder -> builder.getStatic(className, STATIC_FIELD_INSTANCE, descriptor(className));
+  }
+
+  static @NotNull Expr enumConstant(@NotNull Enum<?> value) {
+    var type = value.getDeclaringClass();
+    return builder -> builder.getStatic(Type.getInternalName(type), value.name(), Type.getDescriptor(type));
+  }
+
+  static @NotNull Expr staticField(@NotNull Class<?> owner, @NotNull String name) {
+    try {
+      var type = owner.getField(name).getType();
+      return builder -> builder.getStatic(Type.getInternalName(owner), name, Type.getDescriptor(type));
+    } catch (NoSuchFieldException e) {
+      throw new Panic(e);
+    }
+  }
+
+  /** @return {@code seq.get(0) ..< seq.get(size)}, where {@param seq} is a sequence of terms */
+  static @NotNull ImmutableSeq<Access> fromSeq(@NotNull Var seq, int size) {
+    return ImmutableSeq.fill(size, idx -> new Element(seq, idx));
+  }
+
+  void load(@NotNull Var var) {
+    visitor.visitVarInsn(Type.getType(var.type).getOpcode(ILOAD), slot(var));
+  }
+
+  void loadThis() { visitor.visitVarInsn(ALOAD, 0); }
+
+  void push(int value) {
+    if (-1 <= value && value <= 5) visitor.visitInsn(ICONST_0 + value);
+    else if (Byte.MIN_VALUE <= value && value <= Byte.MAX_VALUE) visitor.visitIntInsn(BIPUSH, value);
+    else if (Short.MIN_VALUE <= value && value <= Short.MAX_VALUE) visitor.visitIntInsn(SIPUSH, value);
+    else visitor.visitLdcInsn(value);
+  }
+
+  void push(boolean value) { push(value ? 1 : 0); }
+
+  void pushNull() { visitor.visitInsn(ACONST_NULL); }
+
+  void checkcast(@NotNull Class<?> type) { visitor.visitTypeInsn(CHECKCAST, Type.getInternalName(type)); }
+
+  void invoke(@NotNull JvmMethod method) {
+    visitor.visitMethodInsn(method.opcode, method.owner, method.name, method.desc, method.isInterface);
+  }
+
+  void getStatic(@NotNull String owner, @NotNull String name, @NotNull String desc) {
+    visitor.visitFieldInsn(GETSTATIC, owner, name, desc);
+  }
+
+  void getField(@NotNull String owner, @NotNull String name, @NotNull Class<?> type) {
+    visitor.visitFieldInsn(GETFIELD, owner, name, Type.getDescriptor(type));
+  }
+
+  void arrayElement(@NotNull Expr array, int index) {
+    array.emit(this);
+    push(index);
+    visitor.visitInsn(AALOAD);
+  }
+
+  /** {@code new owner(args)} */
+  void make(@NotNull JvmCtor ctor, @NotNull Expr... args) {
+    make(ctor, ImmutableSeq.from(args));
+  }
+
+  void make(@NotNull JvmCtor ctor, @NotNull ImmutableSeq<Expr> args) {
+    visitor.visitTypeInsn(NEW, ctor.owner);
+    visitor.visitInsn(DUP);
+    args.forEach(arg -> arg.emit(this));
+    visitor.visitMethodInsn(INVOKESPECIAL, ctor.owner, "<init>", ctor.desc, false);
+  }
+
+  /** @param elementType either a reference type or {@code boolean} */
+  void makeArray(@NotNull Class<?> elementType, @NotNull ImmutableSeq<Expr> elements) {
+    push(elements.size());
+    if (elementType == boolean.class) visitor.visitIntInsn(NEWARRAY, T_BOOLEAN);
+    else visitor.visitTypeInsn(ANEWARRAY, Type.getInternalName(elementType));
+    var store = Type.getType(elementType).getOpcode(IASTORE);
+    elements.forEachIndexed((idx, element) -> {
+      visitor.visitInsn(DUP);
+      push(idx);
+      element.emit(this);
+      visitor.visitInsn(store);
+    });
+  }
+
+  /** Use the factory that javac would choose for {@code ImmutableSeq.<elementType>of(elements)} */
+  void makeImmutableSeq(@NotNull Class<?> elementType, @NotNull ImmutableSeq<Expr> elements) {
+    if (elements.isEmpty()) {
+      invoke(IMMSEQ_EMPTY);
+      return;
+    }
+    var params = new Class<?>[elements.size()];
+    Arrays.fill(params, Object.class);
+    try {
+      ImmutableSeq.class.getMethod("of", params);
+    } catch (NoSuchMethodException ignored) {
+      makeArray(elementType, elements);
+      invoke(method(ImmutableSeq.class, "of", Object[].class));
+      return;
+    }
+    elements.forEach(element -> element.emit(this));
+    invoke(method(ImmutableSeq.class, "of", params));
+  }
+
+  void makeBigInteger(@NotNull BigInteger value) {
+    if (value.bitLength() < Long.SIZE) {
+      visitor.visitLdcInsn(value.longValue());
+      invoke(BIGINT_VALUE_OF);
+    } else make(BIGINT, constant(value.toString()));
+  }
+
+  /**
+   * A {@link UnaryOperator} of terms, whose body is a synthetic method of {@link #owner} as javac does.
+   *
+   * @param captures the local variables that {@param body} may use, they are bound to the parameters of that method
+   * @param body     emits the body with the builder of that method and the parameter of the lambda
+   */
+  void lambda(@NotNull ImmutableSeq<Var> captures, @NotNull BiConsumer<BytecodeBuilder, Var> body) {
+    var param = new Var(Term.class);
+    var params = captures.appended(param);
+    var name = STR."lambda$\{owner.lambdaCount++}";
+    var lambda = new BytecodeBuilder(owner, ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, name, Term.class, params);
+    body.accept(lambda, param);
+    lambda.end();
+
+    captures.forEach(this::load);
+    var factoryType = STR."(\{captures.joinToString("", v -> Type.getDescriptor(v.type))})\{Type.getDescriptor(UnaryOperator.class)}";
+    visitor.visitInvokeDynamicInsn("apply", factoryType, METAFACTORY,
+      Type.getMethodType(Type.getType(Object.class), Type.getType(Object.class)),
+      new Handle(H_INVOKESTATIC, owner.name, name, descriptor(Term.class, params), false),
+      Type.getMethodType(TYPE_TERM, TYPE_TERM));
+  }
+
+  /// endregion Expressions
+
+  /// region Statements
+
+  private void bind(@NotNull Var var) {
+    slots.put(var, nextSlot);
+    nextSlot += Type.getType(var.type).getSize();
+  }
+
+  private int slot(@NotNull Var var) {
+    var slot = slots.getOrNull(var);
+    if (slot == null) throw new Panic("Local variable is not in scope");
+    return slot;
+  }
+
+  /** @return a fresh local variable of {@param type} initialized by {@param initial} */
+  @NotNull Var local(@NotNull Class<?> type, @NotNull Expr initial) {
+    var var = new Var(type);
+    bind(var);
+    update(var, initial);
+    return var;
+  }
+
+  /** @return fresh local variables of {@param type} initialized by {@param initials} in order */
+  @NotNull ImmutableSeq<Var> locals(@NotNull Class<?> type, @NotNull ImmutableSeq<? extends Expr> initials) {
+    var vars = MutableList.<Var>create();
+    for (var initial : initials) vars.append(local(type, initial));
+    return vars.toImmutableSeq();
+  }
+
+  void update(@NotNull Var var, @NotNull Expr value) {
+    if (!reachable) return;
+    value.emit(this);
+    visitor.visitVarInsn(Type.getType(var.type).getOpcode(ISTORE), slot(var));
+  }
+
+  void updateArray(@NotNull Expr array, int index, @NotNull Expr value) {
+    if (!reachable) return;
+    array.emit(this);
+    push(index);
+    value.emit(this);
+    visitor.visitInsn(AASTORE);
+  }
+
+  void putStatic(@NotNull String owner, @NotNull String name, @NotNull String desc, @NotNull Expr value) {
+    if (!reachable) return;
+    value.emit(this);
+    visitor.visitFieldInsn(PUTSTATIC, owner, name, desc);
+  }
+
+  /** Call {@param method} for its effect, with the receiver (if any) and the arguments {@param args} */
+  void exec(@NotNull JvmMethod method, @NotNull Expr... args) {
+    if (!reachable) return;
+    for (var arg : args) arg.emit(this);
+    invoke(method);
+    var size = Type.getType(method.returnType).getSize();
+    if (size == 1) visitor.visitInsn(POP);
+    else if (size == 2) visitor.visitInsn(POP2);
+  }
+
+  /** {@code super(args)} in a constructor */
+  void superCall(@NotNull JvmCtor ctor, @NotNull ImmutableSeq<Expr> args) {
+    if (!reachable) return;
+    loadThis();
+    args.forEach(arg -> arg.emit(this));
+    visitor.visitMethodInsn(INVOKESPECIAL, ctor.owner, "<init>", ctor.desc, false);
+  }
+
+  /** Return a reference */
+  void ret(@NotNull Expr value) {
+    if (!reachable) return;
+    value.emit(this);
+    visitor.visitInsn(ARETURN);
+    reachable = false;
+  }
+
+  void returnVoid() {
+    if (!reachable) return;
+    visitor.visitInsn(RETURN);
+    reachable = false;
+  }
+
+  void panic(@Nullable String message) {
+    if (!reachable) return;
+    if (message == null) make(PANIC);
+    else make(PANIC_MESSAGE, constant(message));
+    visitor.visitInsn(ATHROW);
+    reachable = false;
+  }
+
+  /** Finish the method, the end of which must not be reachable */
+  void end() {
+    if (reachable) throw new Panic("The end of a method is reachable");
+    visitor.visitMaxs(0, 0);
+    visitor.visitEnd();
+  }
+
+  /// endregion Statements
+
+  /// region Control Flow
+
+  static @NotNull Cond isTrue(@NotNull Var var) {
+    return (builder, label) -> {
+      builder.load(var);
+      builder.visitor.visitJumpInsn(IFEQ, label);
+    };
+  }
+
+  static @NotNull Cond isFalse(@NotNull Var var) {
+    return (builder, label) -> {
+      builder.load(var);
+      builder.visitor.visitJumpInsn(IFNE, label);
+    };
+  }
+
+  /** @param condition pushes a {@code boolean} */
+  static @NotNull Cond test(@NotNull Expr condition) {
+    return (builder, label) -> {
+      condition.emit(builder);
+      builder.visitor.visitJumpInsn(IFEQ, label);
+    };
+  }
+
+  static @NotNull Cond isNull(@NotNull Expr term) {
+    return (builder, label) -> {
+      term.emit(builder);
+      builder.visitor.visitJumpInsn(IFNONNULL, label);
+    };
+  }
+
+  /** Compare two references by identity */
+  static @NotNull Cond refEq(@NotNull Expr lhs, @NotNull Expr rhs) {
+    return (builder, label) -> {
+      lhs.emit(builder);
+      rhs.emit(builder);
+      builder.visitor.visitJumpInsn(IF_ACMPNE, label);
+    };
+  }
+
+  /** {@code var >= 0} */
+  static @NotNull Cond isNonNegative(@NotNull Var var) {
+    return (builder, label) -> {
+      builder.load(var);
+      builder.visitor.visitJumpInsn(IFLT, label);
+    };
+  }
+
+  /** {@code var > 0} */
+  static @NotNull Cond isPositive(@NotNull Var var) {
+    return (builder, label) -> {
+      builder.load(var);
+      builder.visitor.visitJumpInsn(IFLE, label);
+    };
+  }
+
+  void ifElse(@NotNull Cond condition, @NotNull Runnable onSucc, @Nullable Runnable onFailed) {
+    if (!reachable) return;
+    var elseLabel = new Label();
+    condition.jumpUnless(this, elseLabel);
+    onSucc.run();
+    var succFalls = reachable;
+    var endLabel = new Label();
+    if (onFailed != null && succFalls) visitor.visitJumpInsn(GOTO, endLabel);
+    visitor.visitLabel(elseLabel);
+    reachable = true;
+    if (onFailed == null) return;
+    onFailed.run();
+    if (succFalls) {
+      visitor.visitLabel(endLabel);
+      reachable = true;
+    }
+  }
+
+  /**
+   * Check whether {@param term} is an instance of {@param type}
+   *
+   * @param onSucc the argument is a local variable of {@param type} that is identical to {@param term}
+   */
+  void ifInstanceElse(
+    @NotNull Var term, @NotNull Class<?> type,
+    @NotNull Consumer<Var> onSucc, @Nullable Runnable onFailed
+  ) {
+    ifElse((builder, label) -> {
+      builder.load(term);
+      builder.visitor.visitTypeInsn(INSTANCEOF, Type.getInternalName(type));
+      builder.visitor.visitJumpInsn(IFEQ, label);
+    }, () -> onSucc.accept(local(type, builder -> {
+      builder.load(term);
+      builder.checkcast(type);
+    })), onFailed);
+  }
+
+  /** The code emitted by {@param continuation} can jump to its end by {@link #breakOut}, like {@code do { } while (false)} */
+  void breakable(@NotNull Runnable continuation) {
+    if (!reachable) return;
+    var outerLabel = breakLabel;
+    var outerUsed = breakUsed;
+    var label = new Label();
+    breakLabel = label;
+    breakUsed = false;
+    continuation.run();
+    if (reachable || breakUsed) {
+      visitor.visitLabel(label);
+      reachable = true;
+    }
+    breakLabel = outerLabel;
+    breakUsed = outerUsed;
+  }
+
+  void breakOut() {
+    if (!reachable) return;
+    if (breakLabel == null) throw new Panic("break outside of breakable code");
+    visitor.visitJumpInsn(GOTO, breakLabel);
+    breakUsed = true;
+    reachable = false;
+  }
+
+  /** Switch over {@code min ..= max}, the cases do not fall through */
+  void tableSwitch(@NotNull Var term, int min, int max, @NotNull IntConsumer continuation, @NotNull Runnable defaultCase) {
+    if (!reachable) return;
+    if (min > max) {
+      defaultCase.run();
+      return;
+    }
+    var labels = new Label[max - min + 1];
+    for (int i = 0; i < labels.length; i++) labels[i] = new Label();
+    var defaultLabel = new Label();
+    var endLabel = new Label();
+    var endUsed = false;
+    load(term);
+    visitor.visitTableSwitchInsn(min, max, defaultLabel, labels);
+    for (int i = 0; i < labels.length; i++) {
+      visitor.visitLabel(labels[i]);
+      reachable = true;
+      continuation.accept(min + i);
+      if (reachable) {
+        visitor.visitJumpInsn(GOTO, endLabel);
+        endUsed = true;
+      }
+    }
+    visitor.visitLabel(defaultLabel);
+    reachable = true;
+    defaultCase.run();
+    if (reachable || endUsed) {
+      visitor.visitLabel(endLabel);
+      reachable = true;
+    }
+  }
+
+  /// endregion Control Flow
+}
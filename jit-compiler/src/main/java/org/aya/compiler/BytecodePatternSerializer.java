@@ -0,0 +1,401 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.compiler;
+
+import kala.collection.SeqView;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.primitive.ImmutableIntSeq;
+import kala.collection.mutable.MutableSeq;
+import kala.value.primitive.MutableIntValue;
+import org.aya.compiler.util.SerializeUtils;
+import org.aya.generic.NameGenerator;
+import org.aya.normalize.PatMatcher;
+import org.aya.normalize.PatMatcher.State;
+import org.aya.syntax.core.def.ConDefLike;
+import org.aya.syntax.core.pat.CaseTree;
+import org.aya.syntax.core.pat.Pat;
+import org.aya.syntax.core.term.*;
+import org.aya.syntax.core.term.call.ConCallLike;
+import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.ref.LocalVar;
+import org.aya.util.error.Panic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import static org.aya.compiler.BytecodeBuilder.*;
+
+/**
+ * Match terms against clauses in bytecode, see {@link PatternSerializer}, which this mirrors step by step.
+ */
+final class BytecodePatternSerializer {
+  @FunctionalInterface
+  interface SuccessContinuation {
+    /**
+     * @param result   the local variable of the bindings
+     * @param bindSize the number of bindings of the matched clause
+     */
+    void accept(@NotNull BytecodeBuilder builder, @NotNull Var result, int bindSize);
+  }
+
+  record Matching(@NotNull ImmutableSeq<Pat> patterns, @NotNull SuccessContinuation onSucc) {
+  }
+
+  private static final JvmMethod MUTSEQ_FILL = method(MutableSeq.class, "fill", int.class, Object.class);
+  private static final JvmMethod MUTSEQ_SET = method(MutableSeq.class, "set", int.class, Object.class);
+  private static final JvmMethod UNARYOP_APPLY = method(UnaryOperator.class, "apply", Object.class);
+  private static final JvmMethod CONCALL_REF = method(ConCallLike.class, "ref");
+  private static final JvmMethod CONCALL_ARGS = method(ConCallLike.class, "conArgs");
+  private static final JvmMethod TUPLE_ITEMS = method(TupTerm.class, "items");
+  private static final JvmMethod INTEGER_REPR = method(IntegerTerm.class, "repr");
+  private static final JvmMethod BIGINT_EQUALS = method(BigInteger.class, "equals", Object.class);
+  private static final JvmMethod REAL_SOLUTION = method(PatMatcher.class, "realSolution", MetaPatTerm.class);
+  private static final JvmMethod DO_SOLVE_META = method(PatMatcher.class, "doSolveMeta", Pat.class, Pat.Meta.class);
+  private static final JvmMethod META_PAT_META = method(MetaPatTerm.class, "meta");
+  private static final JvmMethod COPY_TO = method(SerializeUtils.class, "copyTo", MutableSeq.class, ImmutableSeq.class, int.class);
+  private static final JvmMethod UNREACHABLE = method(Panic.class, "unreachable");
+  private static final JvmMethod BOOLEAN_VALUE = method(Boolean.class, "booleanValue");
+  private static final JvmCtor PAT_BIND = constructor(Pat.Bind.class, LocalVar.class, Term.class);
+  private static final JvmCtor PAT_CON = constructor(Pat.Con.class, ConDefLike.class, ImmutableSeq.class, DataCall.class);
+  private static final JvmCtor PAT_INT = constructor(Pat.ShapedInt.class, BigInteger.class, ConDefLike.class, ConDefLike.class, DataCall.class);
+  private static final JvmCtor PAT_TUPLE = constructor(Pat.Tuple.class, ImmutableSeq.class);
+  private static final JvmCtor LOCAL_VAR = constructor(LocalVar.class, String.class);
+
+  private final @NotNull BytecodeBuilder builder;
+  private final @NotNull NameGenerator nameGen;
+  private final @NotNull ImmutableSeq<Var> args;
+  /** The normalizer applied to a term right before it is looked into, null if the terms are already normalized */
+  private final @Nullable Var normalizer;
+  private final @NotNull Consumer<BytecodeBuilder> onStuck;
+  private final @NotNull Consumer<BytecodeBuilder> onMismatch;
+  private int bindCount = 0;
+  private final boolean inferMeta;
+  /** Whether a stuck clause is skipped, otherwise it stops the matching, see {@link org.aya.generic.Modifier#Overlap} */
+  private final boolean orderIndependent;
+  /** The local variables of {@link PatternSerializer#VARIABLE_RESULT} and so on, bound by {@link #serialize} */
+  private Var result, matchState, subMatchState;
+
+  BytecodePatternSerializer(
+    @NotNull BytecodeBuilder builder,
+    @NotNull NameGenerator nameGen,
+    @NotNull ImmutableSeq<Var> args,
+    @Nullable Var normalizer,
+    boolean inferMeta,
+    boolean orderIndependent,
+    @NotNull Consumer<BytecodeBuilder> onStuck,
+    @NotNull Consumer<BytecodeBuilder> onMismatch
+  ) {
+    this.builder = builder;
+    this.nameGen = nameGen;
+    this.args = args;
+    this.normalizer = normalizer;
+    this.inferMeta = inferMeta;
+    this.orderIndependent = orderIndependent;
+    this.onStuck = onStuck;
+    this.onMismatch = onMismatch;
+  }
+
+  /// region Serializing
+
+  private void doSerialize(@NotNull Pat pat, @NotNull Expr term, @NotNull Runnable continuation) {
+    switch (pat) {
+      case Pat.Absurd _ -> ifElse(test(b -> {
+        b.invoke(UNREACHABLE);
+        b.checkcast(Boolean.class);
+        b.invoke(BOOLEAN_VALUE);
+      }), State.Stuck, continuation);
+      case Pat.Bind _ -> {
+        onMatchBind(term);
+        continuation.run();
+      }
+      case Pat.Con con -> multiStage(con, term, ImmutableSeq.of(
+        mTerm -> solveMeta(con, mTerm),
+        mTerm -> ifInstanceElse(mTerm, ConCallLike.class, State.Stuck, mmTerm ->
+          ifElse(refEq(b -> {
+              b.load(mmTerm);
+              b.invoke(CONCALL_REF);
+            }, instance(BytecodeTermExprializer.getReference(con.ref()))),
+            State.Mismatch, () -> {
+              var conArgsTerm = builder.local(ImmutableSeq.class, b -> {
+                b.load(mmTerm);
+                b.invoke(CONCALL_ARGS);
+              });
+              doSerialize(con.args().view(), fromSeq(conArgsTerm, con.args().size()).view(),
+                () -> builder.update(subMatchState, constant(true)));
+            }))
+      ), continuation);
+      case Pat.Meta _ -> Panic.unreachable();
+      case Pat.ShapedInt shapedInt -> multiStage(pat, term, ImmutableSeq.of(
+        mTerm -> solveMeta(shapedInt, mTerm),
+        mTerm -> matchInt(shapedInt, mTerm),
+        mTerm -> doSerialize(shapedInt.constructorForm(), new Local(mTerm), continuation)
+      ), continuation);
+      case Pat.Tuple tuple -> multiStage(tuple, term, ImmutableSeq.of(
+        mTerm -> solveMeta(tuple, mTerm),
+        mTerm -> ifInstanceElse(mTerm, TupTerm.class, State.Stuck, mmTerm -> {
+          var itemsTerm = builder.local(ImmutableSeq.class, b -> {
+            b.load(mmTerm);
+            b.invoke(TUPLE_ITEMS);
+          });
+          doSerialize(tuple.elements().view(), fromSeq(itemsTerm, tuple.elements().size()).view(), continuation);
+        })
+      ), continuation);
+    }
+  }
+
+  /**
+   * Generate multi case matching, see {@link PatternSerializer}.
+   * The term is normalized to a fresh local variable, which is the argument of each {@param preContinuation}.
+   *
+   * @param term            the expression be matched, not always a variable reference
+   * @param preContinuation fast path case matching
+   * @param continuation    on match success
+   */
+  private void multiStage(
+    @NotNull Pat pat,
+    @NotNull Expr term,
+    @NotNull ImmutableSeq<Consumer<Var>> preContinuation,
+    @NotNull Runnable continuation
+  ) {
+    builder.update(subMatchState, constant(false));
+    var tmp = builder.local(Term.class, normalize(term));
+
+    for (var pre : preContinuation) {
+      builder.ifElse(isFalse(subMatchState), () -> pre.accept(tmp), null);
+    }
+
+    builder.ifElse(isTrue(subMatchState), continuation, null);
+  }
+
+  private void solveMeta(@NotNull Pat pat, @NotNull Var term) {
+    if (inferMeta) {
+      builder.ifInstanceElse(term, MetaPatTerm.class, metaTerm -> {
+        builder.update(term, b -> {
+          b.load(metaTerm);
+          b.invoke(REAL_SOLUTION);
+        });
+        // if the solution is still a meta, we solve it
+        builder.ifInstanceElse(term, MetaPatTerm.class, stillMetaTerm -> {
+          var bindCount = this.bindCount;
+          builder.exec(COPY_TO, new Local(result), b -> {
+            serializePat(pat).emit(b);
+            b.load(stillMetaTerm);
+            b.invoke(META_PAT_META);
+            b.invoke(DO_SOLVE_META);
+          }, constant(bindCount));
+          builder.update(subMatchState, constant(true));
+        }, null);
+      }, null);
+    }
+  }
+
+  private void matchInt(@NotNull Pat.ShapedInt pat, @NotNull Var term) {
+    builder.ifInstanceElse(term, IntegerTerm.class, intTerm ->
+      builder.ifElse(test(b -> {
+        b.makeBigInteger(pat.repr());
+        b.load(intTerm);
+        b.invoke(INTEGER_REPR);
+        b.invoke(BIGINT_EQUALS);
+        // Pat.ShapedInt provides no binds
+      }), () -> builder.update(subMatchState, constant(true)), null), null);
+  }
+
+  /**
+   * @apiNote {@code pats.sizeEquals(terms)}
+   */
+  private void doSerialize(
+    @NotNull SeqView<Pat> pats, @NotNull SeqView<? extends Expr> terms,
+    @NotNull Runnable continuation
+  ) {
+    if (pats.isEmpty()) {
+      continuation.run();
+      return;
+    }
+
+    var pat = pats.getFirst();
+    var term = terms.getFirst();
+    doSerialize(pat, term, () -> doSerialize(pats.drop(1), terms.drop(1), continuation));
+  }
+
+  /**
+   * Generate the decision tree, see {@link PatternSerializer}.
+   *
+   * @param occs the local variables of the occurrences that are in scope
+   */
+  private void doSerialize(@NotNull CaseTree.Node node, @NotNull Var[] occs) {
+    switch (node) {
+      case CaseTree.Fail fail -> updateState(-fail.ordinal());
+      case CaseTree.Leaf(var clause, var binds) -> {
+        for (int i = 0; i < binds.length; i++)
+          builder.exec(MUTSEQ_SET, new Local(result), constant(i), new Local(occs[binds[i]]));
+        updateState(clause + 1);
+      }
+      case CaseTree.Split(var occ, var branches, var otherwise, var stuck) -> {
+        // the normalized occurrence is shared with the leaves
+        if (normalizer != null) builder.update(occs[occ], normalize(new Local(occs[occ])));
+        builder.ifInstanceElse(occs[occ], ConCallLike.class, conTerm -> {
+          var head = builder.local(ConDefLike.class, b -> {
+            b.load(conTerm);
+            b.invoke(CONCALL_REF);
+          });
+          doSerialize(branches.view(), head, conTerm, otherwise, occs);
+        }, () -> doSerialize(stuck, occs));
+      }
+      case CaseTree.Tuple(var occ, var firstOcc, var size, var body, var stuck) -> {
+        if (normalizer != null) builder.update(occs[occ], normalize(new Local(occs[occ])));
+        builder.ifInstanceElse(occs[occ], TupTerm.class, tupTerm -> {
+          var itemsTerm = builder.local(ImmutableSeq.class, b -> {
+            b.load(tupTerm);
+            b.invoke(TUPLE_ITEMS);
+          });
+          var items = builder.locals(Term.class, fromSeq(itemsTerm, size));
+          items.forEachIndexed((i, item) -> occs[firstOcc + i] = item);
+          doSerialize(body, occs);
+        }, () -> doSerialize(stuck, occs));
+      }
+    }
+  }
+
+  private void doSerialize(
+    @NotNull SeqView<CaseTree.Branch> branches, @NotNull Var head, @NotNull Var conTerm,
+    @NotNull CaseTree.Node otherwise, @NotNull Var[] occs
+  ) {
+    if (branches.isEmpty()) {
+      doSerialize(otherwise, occs);
+      return;
+    }
+    var branch = branches.getFirst();
+    builder.ifElse(refEq(new Local(head), instance(BytecodeTermExprializer.getReference(branch.con()))), () -> {
+      if (branch.arity() > 0) {
+        var conArgsTerm = builder.local(ImmutableSeq.class, b -> {
+          b.load(conTerm);
+          b.invoke(CONCALL_ARGS);
+        });
+        var args = builder.locals(Term.class, fromSeq(conArgsTerm, branch.arity()));
+        args.forEachIndexed((i, arg) -> occs[branch.firstOcc() + i] = arg);
+      }
+      doSerialize(branch.body(), occs);
+    }, () -> doSerialize(branches.drop(1), head, conTerm, otherwise, occs));
+  }
+
+  /** The pattern for solving a meta, see {@link PatternExprializer} */
+  private @NotNull Expr serializePat(@NotNull Pat pat) {
+    return switch (pat) {
+      case Pat.Absurd absurd -> enumConstant(absurd);
+      // it is safe to new a LocalVar, this method will be called when meta solving only,
+      // but the meta solver will eat all LocalVar so that it will be happy.
+      case Pat.Bind bind -> b -> b.make(PAT_BIND,
+        b2 -> b2.make(LOCAL_VAR, constant(bind.bind().name())),
+        staticField(ErrorTerm.class, "DUMMY"));
+      case Pat.Con con -> b -> b.make(PAT_CON,
+        instance(BytecodeTermExprializer.getReference(con.ref())),
+        b2 -> b2.makeImmutableSeq(Pat.class, con.args().map(this::serializePat)),
+        serializeTerm(con.data()));
+      case Pat.ShapedInt shapedInt -> b -> b.make(PAT_INT,
+        b2 -> b2.makeBigInteger(shapedInt.repr()),
+        instance(BytecodeTermExprializer.getReference(shapedInt.zero())),
+        instance(BytecodeTermExprializer.getReference(shapedInt.suc())),
+        serializeTerm(shapedInt.type()));
+      case Pat.Meta _ -> Panic.unreachable();
+      case Pat.Tuple tuple -> b -> b.make(PAT_TUPLE,
+        b2 -> b2.makeImmutableSeq(Pat.class, tuple.elements().map(this::serializePat)));
+    };
+  }
+
+  private @NotNull Expr serializeTerm(@NotNull Term term) {
+    return new BytecodeTermExprializer(nameGen, ImmutableSeq.empty()).serialize(term);
+  }
+
+  /// endregion Serializing
+
+  /// region Bytecode Generate API
+
+  private void ifInstanceElse(
+    @NotNull Var term,
+    @NotNull Class<?> type,
+    @NotNull State state,
+    @NotNull Consumer<Var> continuation
+  ) {
+    builder.ifInstanceElse(term, type, continuation, () -> updateState(-state.ordinal()));
+  }
+
+  private void ifElse(@NotNull Cond condition, @NotNull State state, @NotNull Runnable continuation) {
+    builder.ifElse(condition, continuation, () -> updateState(-state.ordinal()));
+  }
+
+  private @NotNull Expr normalize(@NotNull Expr term) {
+    var normalizer = this.normalizer;
+    return normalizer == null ? term : b -> {
+      b.load(normalizer);
+      term.emit(b);
+      b.invoke(UNARYOP_APPLY);
+      b.checkcast(Term.class);
+    };
+  }
+
+  private void updateState(int state) {
+    builder.update(matchState, constant(state));
+  }
+
+  private void onMatchBind(@NotNull Expr term) {
+    builder.exec(MUTSEQ_SET, new Local(result), constant(bindCount++), term);
+  }
+
+  private int bindAmount(@NotNull Pat pat) {
+    var acc = MutableIntValue.create();
+    pat.consumeBindings((_, _) -> acc.increment());
+    return acc.get();
+  }
+
+  /// endregion Bytecode Generate API
+
+  void serialize(@NotNull ImmutableSeq<Matching> unit) {
+    var bindSize = unit.mapToInt(ImmutableIntSeq.factory(),
+      x -> x.patterns.view().foldLeft(0, (acc, p) -> acc + bindAmount(p)));
+    int maxBindSize = bindSize.max();
+
+    result = builder.local(MutableSeq.class, b -> {
+      b.push(maxBindSize);
+      b.pushNull();
+      b.checkcast(Term.class);
+      b.invoke(MUTSEQ_FILL);
+    });
+    matchState = builder.local(int.class, constant(0));
+    subMatchState = builder.local(boolean.class, constant(false));
+
+    // metas are solved by matching the clauses one by one
+    var tree = inferMeta ? null : CaseTree.compile(unit.map(Matching::patterns), orderIndependent);
+    if (tree != null) {
+      var occs = new Var[tree.occurrences()];
+      args.forEachIndexed((i, arg) -> occs[i] = arg);
+      doSerialize(tree.root(), occs);
+    } else builder.breakable(() -> unit.forEachIndexed((idx, clause) -> {
+      var jumpCode = idx + 1;
+      bindCount = 0;
+      doSerialize(
+        clause.patterns().view(),
+        args.view().map(Local::new),
+        () -> updateState(jumpCode));
+
+      // a stuck clause stops ordered matching
+      builder.ifElse(orderIndependent ? isPositive(matchState) : isNonNegative(matchState), builder::breakOut, null);
+    }));
+
+    // -1 ..= unit.size()
+    builder.tableSwitch(matchState, -1, unit.size(), state -> {
+      switch (state) {
+        case -1 -> onMismatch.accept(builder);
+        case 0 -> onStuck.accept(builder);
+        default -> {
+          assert state > 0;
+          var realIdx = state - 1;
+          unit.get(realIdx).onSucc.accept(builder, result, bindSize.get(realIdx));
+        }
+      }
+    }, () -> builder.panic(null));
+  }
+}
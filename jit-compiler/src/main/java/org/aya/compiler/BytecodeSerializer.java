@@ -0,0 +1,372 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.compiler;
+
+import kala.collection.Seq;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableSeq;
+import kala.control.Either;
+import kala.control.Result;
+import org.aya.generic.Modifier;
+import org.aya.generic.NameGenerator;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.compile.*;
+import org.aya.syntax.core.def.*;
+import org.aya.syntax.core.repr.CodeShape;
+import org.aya.syntax.core.term.Param;
+import org.aya.syntax.core.term.Term;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import static org.aya.compiler.AbstractSerializer.getModuleReference;
+import static org.aya.compiler.AbstractSerializer.javify;
+import static org.aya.compiler.AyaSerializer.STATIC_FIELD_INSTANCE;
+import static org.aya.compiler.BytecodeBuilder.*;
+import static org.aya.compiler.JitTeleSerializer.METHOD_RESULT;
+import static org.aya.compiler.JitTeleSerializer.METHOD_TELESCOPE;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Serialize a file module to class files, without going through java source and javac.
+ * The classes are the ones that javac compiles from the output of {@link FileSerializer}:
+ * every definition is a nested class of its module, with the same members and {@link CompiledAya} metadata,
+ * so {@link CompiledModule.DeState} loads them in the same way,
+ * and the java source remains a readable form of them.
+ */
+public final class BytecodeSerializer {
+  /** @param name the internal name of the class, like {@code AYA/Data/Nat$Nat} */
+  public record ClassFile(@NotNull String name, byte @NotNull [] bytes) { }
+
+  private static final String OBJECT = Type.getInternalName(Object.class);
+  private static final JvmCtor JITFN = constructor(JitFn.class, int.class, boolean[].class, String[].class);
+  private static final JvmCtor JITDATA = constructor(JitData.class, int.class, boolean[].class, String[].class, int.class);
+  private static final JvmCtor JITCON = constructor(JitCon.class, int.class, boolean[].class, String[].class, JitData.class, boolean.class);
+  private static final JvmCtor JITPRIM = constructor(JitPrim.class, PrimDef.ID.class);
+  private static final JvmMethod RESULT_OK = method(Result.class, "ok", Object.class);
+  private static final JvmMethod RESULT_ERR = method(Result.class, "err", Object.class);
+  private static final JvmMethod BOOLEAN_VALUE_OF = method(Boolean.class, "valueOf", boolean.class);
+  private static final JvmMethod TO_IMMUTABLE_SEQ = method(MutableSeq.class, "toImmutableSeq");
+
+  /** The frames are computed with the classes of the compiler, a class that is not loaded yet is merged as an object */
+  private static final class Writer extends ClassWriter {
+    Writer() { super(COMPUTE_FRAMES); }
+
+    @Override protected String getCommonSuperClass(String type1, String type2) {
+      try {
+        return super.getCommonSuperClass(type1, type2);
+      } catch (TypeNotPresentException e) {
+        return OBJECT;
+      }
+    }
+  }
+
+  private final @NotNull ShapeFactory shapeFactory;
+  private final @NotNull NameGenerator nameGen = new NameGenerator();
+  private final @NotNull MutableList<ClassFile> classes = MutableList.create();
+
+  public BytecodeSerializer(@NotNull ShapeFactory shapeFactory) { this.shapeFactory = shapeFactory; }
+
+  public @NotNull BytecodeSerializer serialize(@NotNull FileSerializer.FileResult unit) {
+    var packageName = getModuleReference(unit.parentModule()).replace('.', '/');
+    var module = unit.moduleResult();
+    serialize(module, STR."\{packageName}/\{javify(module.name())}", null);
+    return this;
+  }
+
+  public @NotNull ImmutableSeq<ClassFile> result() { return classes.toImmutableSeq(); }
+
+  /// region Classes
+
+  /**
+   * @param outer   the class that {@param className} is nested in, null if it is a top level class
+   * @param members the classes nested in {@param className}, which are emitted separately
+   */
+  private void buildClass(
+    @NotNull String className, @Nullable String outer, @NotNull String superName,
+    @NotNull ImmutableSeq<String> members, @NotNull Consumer<ClassVisitor> metadata,
+    @NotNull Consumer<Owner> continuation
+  ) {
+    var writer = new Writer();
+    writer.visit(V21, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, superName, null);
+    metadata.accept(writer);
+    if (outer != null) buildInnerClass(writer, className, outer);
+    members.forEach(member -> buildInnerClass(writer, member, className));
+    continuation.accept(new Owner(writer, className));
+    writer.visitEnd();
+    classes.append(new ClassFile(className, writer.toByteArray()));
+  }
+
+  private static void buildInnerClass(@NotNull ClassVisitor writer, @NotNull String className, @NotNull String outer) {
+    writer.visitInnerClass(className, outer, className.substring(outer.length() + 1),
+      ACC_PUBLIC | ACC_STATIC | ACC_FINAL);
+  }
+
+  private static @NotNull String nestedName(@NotNull String outer, @NotNull String name) {
+    return STR."\{outer}$\{javify(name)}";
+  }
+
+  private void serialize(@NotNull ModuleSerializer.ModuleResult unit, @NotNull String className, @Nullable String outer) {
+    var defs = unit.defs().map(def -> nestedName(className, def.ref().name()));
+    var submodules = unit.submodules().map(sub -> nestedName(className, sub.name()));
+    buildClass(className, outer, OBJECT, defs.appendedAll(submodules), _ -> { }, _ -> { });
+    unit.defs().forEachWith(defs, (def, defName) -> serialize(def, defName, className));
+    unit.submodules().forEachWith(submodules, (sub, subName) -> serialize(sub, subName, className));
+  }
+
+  private void serialize(@NotNull TyckDef unit, @NotNull String className, @NotNull String outer) {
+    switch (unit) {
+      case FnDef fnDef -> serializeFn(fnDef, className, outer);
+      case DataDef dataDef -> serializeData(dataDef, className, outer);
+      case ConDef conDef -> serializeCon(conDef, className, outer);
+      case PrimDef primDef -> serializePrim(primDef, className, outer);
+    }
+  }
+
+  /** @see ModuleSerializer */
+  private void serializePrim(@NotNull PrimDef unit, @NotNull String className, @NotNull String outer) {
+    buildClass(className, outer, JITPRIM.owner(), ImmutableSeq.empty(), _ -> { }, owner -> {
+      buildInstance(owner);
+      var init = new BytecodeBuilder(owner, ACC_PUBLIC, "<init>", void.class, ImmutableSeq.empty());
+      init.superCall(JITPRIM, ImmutableSeq.of(enumConstant(unit.id)));
+      init.returnVoid();
+      init.end();
+    });
+  }
+
+  /// endregion Classes
+
+  /// region Definitions
+
+  /**
+   * @param ext          the arguments to the constructor of the super class after the telescope
+   * @param continuation build the methods other than the ones of {@link JitTele}
+   * @see JitTeleSerializer#buildFramework
+   */
+  private void buildFramework(
+    @NotNull TyckDef unit, @NotNull String className, @NotNull String outer,
+    @NotNull JvmCtor superCtor, @NotNull ImmutableSeq<Expr> ext,
+    @NotNull ImmutableSeq<String> members, @NotNull Consumer<Owner> continuation
+  ) {
+    buildClass(className, outer, superCtor.owner(), members, writer -> buildMetadata(writer, unit), owner -> {
+      buildInstance(owner);
+      var init = new BytecodeBuilder(owner, ACC_PUBLIC, "<init>", void.class, ImmutableSeq.empty());
+      buildConstructor(init, unit, superCtor, ext);
+      init.end();
+
+      var iTerm = new Var(int.class);
+      var teleArgsTerm = new Var(Seq.class);
+      var telescope = new BytecodeBuilder(owner, ACC_PUBLIC, METHOD_TELESCOPE, Term.class, ImmutableSeq.of(iTerm, teleArgsTerm));
+      buildTelescope(telescope, unit, iTerm, teleArgsTerm);
+      telescope.end();
+
+      var resultArgsTerm = new Var(Seq.class);
+      var result = new BytecodeBuilder(owner, ACC_PUBLIC, METHOD_RESULT, Term.class, ImmutableSeq.of(resultArgsTerm));
+      result.ret(serializeTermUnderTele(unit.result(), resultArgsTerm, unit.telescope().size()));
+      result.end();
+
+      continuation.accept(owner);
+    });
+  }
+
+  /** {@code public static final X INSTANCE = new X();} */
+  private static void buildInstance(@NotNull Owner owner) {
+    var desc = descriptor(owner.name);
+    owner.visitor.visitField(ACC_PUBLIC | ACC_STATIC | ACC_FINAL, STATIC_FIELD_INSTANCE, desc, null, null).visitEnd();
+    var clinit = new BytecodeBuilder(owner, ACC_STATIC, "<clinit>", void.class, ImmutableSeq.empty());
+    clinit.putStatic(owner.name, STATIC_FIELD_INSTANCE, desc, b -> b.make(new JvmCtor(owner.name, "()V")));
+    clinit.returnVoid();
+    clinit.end();
+  }
+
+  /** @see JitTeleSerializer#buildMetadata */
+  private void buildMetadata(@NotNull ClassVisitor writer, @NotNull TyckDef unit) {
+    var ref = unit.ref();
+    var module = ref.module;
+    var assoc = ref.assoc();
+    assert module != null;
+    var annotation = writer.visitAnnotation(Type.getDescriptor(CompiledAya.class), true);
+    var modPath = annotation.visitArray("module");
+    module.module().module().forEach(name -> modPath.visit(null, name));
+    modPath.visitEnd();
+    annotation.visit("fileModuleSize", module.fileModuleSize());
+    annotation.visit("name", ref.name());
+    annotation.visit("assoc", assoc == null ? -1 : assoc.ordinal());
+
+    var recog = unit instanceof DataDef data ? shapeFactory.find(TyckAnyDef.make(data)).getOrNull() : null;
+    annotation.visit("shape", recog == null ? -1 : recog.shape().ordinal());
+    var recognition = annotation.visitArray("recognition");
+    if (recog != null) DataSerializer.recognition((DataDef) unit, recog).forEach(id ->
+      recognition.visitEnum(null, Type.getDescriptor(CodeShape.GlobalId.class), id.name()));
+    recognition.visitEnd();
+    annotation.visitEnd();
+  }
+
+  /** @see JitTeleSerializer#buildConstructor(TyckDef, ImmutableSeq) */
+  private static void buildConstructor(
+    @NotNull BytecodeBuilder builder, @NotNull TyckDef def,
+    @NotNull JvmCtor superCtor, @NotNull ImmutableSeq<Expr> ext
+  ) {
+    var tele = def.telescope();
+    builder.superCall(superCtor, ImmutableSeq.<Expr>of(
+      constant(tele.size()),
+      b -> b.makeArray(boolean.class, tele.map(p -> constant(p.explicit()))),
+      b -> b.makeArray(String.class, tele.map(p -> constant(p.name())))
+    ).appendedAll(ext));
+    builder.returnVoid();
+  }
+
+  /** @see JitTeleSerializer#buildTelescope */
+  private void buildTelescope(@NotNull BytecodeBuilder builder, @NotNull TyckDef unit, @NotNull Var iTerm, @NotNull Var teleArgsTerm) {
+    ImmutableSeq<Param> tele = unit.telescope();
+    builder.tableSwitch(iTerm, 0, tele.size() - 1, kase ->
+      builder.ret(serializeTermUnderTele(tele.get(kase).type(), teleArgsTerm, kase)), () -> builder.panic(null));
+  }
+
+  private @NotNull Expr serializeTermUnderTele(@NotNull Term term, @NotNull Var argsTerm, int size) {
+    return serializeTermUnderTele(term, fromSeq(argsTerm, size));
+  }
+
+  private @NotNull Expr serializeTermUnderTele(@NotNull Term term, @NotNull ImmutableSeq<Access> instantiates) {
+    return new BytecodeTermExprializer(nameGen, instantiates).serialize(term);
+  }
+
+  /** @see FnSerializer */
+  private void serializeFn(@NotNull FnDef unit, @NotNull String className, @NotNull String outer) {
+    buildFramework(unit, className, outer, JITFN, ImmutableSeq.empty(), ImmutableSeq.empty(), owner -> {
+      var normalizerTerm = new Var(UnaryOperator.class);
+      var onStuckTerm = new Var(Term.class);
+      var argTerms = ImmutableSeq.fill(unit.telescope().size(), () -> new Var(Term.class));
+      var fixed = new BytecodeBuilder(owner, ACC_PUBLIC, "invoke", Term.class,
+        ImmutableSeq.of(normalizerTerm, onStuckTerm).appendedAll(argTerms));
+      buildInvoke(fixed, unit, normalizerTerm, onStuckTerm, argTerms);
+      fixed.end();
+
+      var varargNormalizerTerm = new Var(UnaryOperator.class);
+      var varargOnStuckTerm = new Var(Term.class);
+      var argsTerm = new Var(Seq.class);
+      var vararg = new BytecodeBuilder(owner, ACC_PUBLIC, "invoke", Term.class,
+        ImmutableSeq.of(varargNormalizerTerm, varargOnStuckTerm, argsTerm));
+      vararg.ret(b -> {
+        b.loadThis();
+        b.load(varargNormalizerTerm);
+        b.load(varargOnStuckTerm);
+        fromSeq(argsTerm, argTerms.size()).forEach(arg -> arg.emit(b));
+        b.invoke(BytecodeTermExprializer.invokeFixed(owner.name, argTerms.size()));
+      });
+      vararg.end();
+    });
+  }
+
+  /** Build fixed argument `invoke` */
+  private void buildInvoke(
+    @NotNull BytecodeBuilder builder, @NotNull FnDef unit, @NotNull Var normalizerTerm,
+    @NotNull Var onStuckTerm, @NotNull ImmutableSeq<Var> argTerms
+  ) {
+    if (unit.is(Modifier.Opaque)) {
+      builder.ret(new Local(onStuckTerm));
+      return;
+    }
+
+    switch (unit.body()) {
+      case Either.Left(var expr) -> builder.ret(serializeTermUnderTele(expr, argTerms.map(Local::new)));
+      case Either.Right(var clauses) -> {
+        var ser = new BytecodePatternSerializer(builder, nameGen, argTerms, normalizerTerm, false,
+          unit.is(Modifier.Overlap), b -> b.ret(new Local(onStuckTerm)), b -> b.ret(new Local(onStuckTerm)));
+        ser.serialize(clauses.map(matching -> new BytecodePatternSerializer.Matching(
+          matching.patterns(),
+          (b, result, bindSize) -> b.ret(serializeTermUnderTele(matching.body(), result, bindSize))
+        )));
+      }
+    }
+  }
+
+  /** @see ConSerializer */
+  private void serializeCon(@NotNull ConDef unit, @NotNull String className, @NotNull String outer) {
+    var ext = ImmutableSeq.of(
+      BytecodeBuilder.instance(BytecodeTermExprializer.getCoreReference(unit.dataRef)),
+      constant(unit.equality != null));
+    buildFramework(unit, className, outer, JITCON, ext, ImmutableSeq.empty(), owner -> {
+      var argsTerm = new Var(Seq.class);
+      var isAvailable = new BytecodeBuilder(owner, ACC_PUBLIC, "isAvailable", Result.class, ImmutableSeq.of(argsTerm));
+      buildIsAvailable(isAvailable, unit, argsTerm);
+      isAvailable.end();
+
+      var eqArgsTerm = new Var(Seq.class);
+      var is0Term = new Var(boolean.class);
+      var equality = new BytecodeBuilder(owner, ACC_PUBLIC, "equality", Term.class, ImmutableSeq.of(eqArgsTerm, is0Term));
+      buildEquality(equality, unit, eqArgsTerm, is0Term);
+      equality.end();
+    });
+  }
+
+  private static @NotNull Expr makeErr(boolean stuck) {
+    return b -> {
+      b.push(stuck);
+      b.invoke(BOOLEAN_VALUE_OF);
+      b.invoke(RESULT_ERR);
+    };
+  }
+
+  private void buildIsAvailable(@NotNull BytecodeBuilder builder, @NotNull ConDef unit, @NotNull Var argsTerm) {
+    var pats = unit.pats;
+    var names = builder.locals(Term.class, fromSeq(argsTerm, pats.size()));
+    var ser = new BytecodePatternSerializer(builder, nameGen, names, null, true, true,
+      b -> b.ret(makeErr(true)),
+      b -> b.ret(makeErr(false)));
+
+    ser.serialize(ImmutableSeq.of(new BytecodePatternSerializer.Matching(pats,
+      // we have only one clause, so the size is useless
+      (b, result, _) -> b.ret(b2 -> {
+        b2.load(result);
+        b2.invoke(TO_IMMUTABLE_SEQ);
+        b2.invoke(RESULT_OK);
+      }))));
+  }
+
+  /** @see ConDefLike#equality(Seq, boolean) */
+  private void buildEquality(@NotNull BytecodeBuilder builder, @NotNull ConDef unit, @NotNull Var argsTerm, @NotNull Var is0Term) {
+    var eq = unit.equality;
+    if (eq == null) {
+      builder.panic(null);
+      return;
+    }
+    var size = unit.telescope().size();
+    builder.ifElse(isTrue(is0Term),
+      () -> builder.ret(serializeTermUnderTele(eq.a(), argsTerm, size)),
+      () -> builder.ret(serializeTermUnderTele(eq.b(), argsTerm, size)));
+  }
+
+  /** @see DataSerializer */
+  private void serializeData(@NotNull DataDef unit, @NotNull String className, @NotNull String outer) {
+    var cons = unit.body.map(con -> nestedName(className, con.ref.name()));
+    buildFramework(unit, className, outer, JITDATA, ImmutableSeq.of(constant(unit.body.size())), cons, owner -> {
+      var constructors = new BytecodeBuilder(owner, ACC_PUBLIC, "constructors", JitCon[].class, ImmutableSeq.empty());
+      buildConstructors(constructors, unit);
+      constructors.end();
+    });
+    unit.body.forEachWith(cons, (con, conName) -> serializeCon(con, conName, className));
+  }
+
+  /** @see JitData#constructors() */
+  private static void buildConstructors(@NotNull BytecodeBuilder builder, @NotNull DataDef unit) {
+    Expr cRef = b -> {
+      b.loadThis();
+      b.getField(builder.owner.name, "constructors", JitCon[].class);
+    };
+
+    builder.ifElse(isNull(b -> b.arrayElement(cRef, 0)), () ->
+      unit.body.forEachIndexed((idx, con) -> builder.updateArray(cRef, idx,
+        BytecodeBuilder.instance(BytecodeTermExprializer.getCoreReference(con.ref)))), null);
+
+    builder.ret(cRef);
+  }
+
+  /// endregion Definitions
+}
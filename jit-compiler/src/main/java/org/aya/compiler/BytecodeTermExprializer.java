@@ -0,0 +1,244 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.compiler;
+
+import kala.collection.Seq;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableLinkedHashMap;
+import org.aya.generic.NameGenerator;
+import org.aya.generic.stmt.Reducible;
+import org.aya.generic.stmt.Shaped;
+import org.aya.generic.term.SortKind;
+import org.aya.syntax.compile.JitDef;
+import org.aya.syntax.compile.JitFn;
+import org.aya.syntax.compile.JitPrim;
+import org.aya.syntax.core.Closure;
+import org.aya.syntax.core.def.*;
+import org.aya.syntax.core.term.*;
+import org.aya.syntax.core.term.call.*;
+import org.aya.syntax.core.term.marker.TyckInternal;
+import org.aya.syntax.core.term.repr.*;
+import org.aya.syntax.core.term.xtt.*;
+import org.aya.syntax.ref.DefVar;
+import org.aya.syntax.ref.LocalVar;
+import org.aya.syntax.ref.QName;
+import org.aya.util.error.Panic;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.Type;
+
+import java.math.BigInteger;
+import java.util.function.UnaryOperator;
+
+import static org.aya.compiler.BytecodeBuilder.*;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+
+/**
+ * Build the "constructor form" of {@link Term} in bytecode, see {@link TermExprializer}.
+ * Unlike the java source, the arguments of a call are evaluated once,
+ * and shared by the stuck term and the invocation.
+ */
+final class BytecodeTermExprializer {
+  private static final JvmCtor APP = constructor(AppTerm.class, Term.class, Term.class);
+  private static final JvmCtor LAM = constructor(LamTerm.class, Closure.class);
+  private static final JvmCtor JIT_CLOSURE = constructor(Closure.Jit.class, UnaryOperator.class);
+  private static final JvmCtor DATA_CALL = constructor(DataCall.class, DataDefLike.class, int.class, ImmutableSeq.class);
+  private static final JvmCtor CON_CALL = constructor(ConCall.class, ConDefLike.class, ImmutableSeq.class, int.class, ImmutableSeq.class);
+  private static final JvmCtor FN_CALL = constructor(FnCall.class, FnDefLike.class, int.class, ImmutableSeq.class);
+  private static final JvmCtor RULE_CON = constructor(RuleReducer.Con.class, Shaped.Applicable.class, int.class, ImmutableSeq.class, ImmutableSeq.class);
+  private static final JvmCtor RULE_FN = constructor(RuleReducer.Fn.class, Shaped.Applicable.class, int.class, ImmutableSeq.class);
+  private static final JvmCtor INT_CONRULE = constructor(IntegerOps.ConRule.class, ConDefLike.class, IntegerTerm.class);
+  private static final JvmCtor INT_FNRULE = constructor(IntegerOps.FnRule.class, FnDefLike.class, IntegerOps.FnRule.Kind.class);
+  private static final JvmCtor LIST_CONRULE = constructor(ListOps.ConRule.class, ConDefLike.class, ListTerm.class);
+  private static final JvmCtor SORT = constructor(SortTerm.class, SortKind.class, int.class);
+  private static final JvmCtor PI = constructor(PiTerm.class, Term.class, Closure.class);
+  private static final JvmCtor COE = constructor(CoeTerm.class, Closure.class, Term.class, Term.class);
+  private static final JvmCtor PROJ = constructor(ProjTerm.class, Term.class, int.class);
+  private static final JvmCtor PAPP = constructor(PAppTerm.class, Term.class, Term.class, Term.class, Term.class);
+  private static final JvmCtor EQ = constructor(EqTerm.class, Closure.class, Term.class, Term.class);
+  private static final JvmCtor TUP = constructor(TupTerm.class, ImmutableSeq.class);
+  private static final JvmCtor PRIM_CALL = constructor(PrimCall.class, DefVar.class, int.class, ImmutableSeq.class);
+  private static final JvmCtor INTEGER = constructor(IntegerTerm.class, BigInteger.class, ConDefLike.class, ConDefLike.class, DataCall.class);
+  private static final JvmCtor LIST = constructor(ListTerm.class, ImmutableSeq.class, ConDefLike.class, ConDefLike.class, DataCall.class);
+  private static final JvmCtor STRING = constructor(StringTerm.class, String.class);
+  private static final JvmMethod IDENTITY = method(UnaryOperator.class, "identity");
+  private static final JvmMethod REDUCIBLE_INVOKE = method(Reducible.class, "invoke", Term.class, Seq.class);
+  private static final JvmMethod ELEVATE = method(Term.class, "elevate", int.class);
+  private static final JvmMethod PRIM_REF = method(JitPrim.class, "ref");
+
+  private final @NotNull NameGenerator nameGen;
+  private final @NotNull ImmutableSeq<Access> instantiates;
+  /** Ordered, so that the captures of a lambda are the same every time */
+  private final @NotNull MutableLinkedHashMap<LocalVar, Access> binds = MutableLinkedHashMap.of();
+
+  BytecodeTermExprializer(@NotNull NameGenerator nameGen, @NotNull ImmutableSeq<Access> instantiates) {
+    this.nameGen = nameGen;
+    this.instantiates = instantiates;
+  }
+
+  /// region References
+
+  /** @return the internal name of the class of {@param ref} */
+  static @NotNull String getCoreReference(@NotNull DefVar<?, ?> ref) {
+    return AbstractSerializer.getBinaryName(new QName(ref)).replace('.', '/');
+  }
+
+  static @NotNull String getReference(@NotNull AnyDef def) {
+    return switch (def) {
+      case JitDef jitDef -> Type.getInternalName(jitDef.getClass());
+      case TyckAnyDef<?> tyckDef -> getCoreReference(tyckDef.ref);
+    };
+  }
+
+  /** @return the fixed arity {@code invoke} of the class {@param className} of a function */
+  static @NotNull JvmMethod invokeFixed(@NotNull String className, int arity) {
+    var params = ImmutableSeq.<Var>fill(arity, () -> new Var(Term.class))
+      .prepended(new Var(Term.class))
+      .prepended(new Var(UnaryOperator.class));
+    return new JvmMethod(INVOKEVIRTUAL, className, "invoke", descriptor(Term.class, params), false, Term.class);
+  }
+
+  /// endregion References
+
+  private @NotNull Expr term(@NotNull Term term) {
+    return builder -> doSerialize(builder, term);
+  }
+
+  private @NotNull Expr seq(@NotNull ImmutableSeq<Term> terms) {
+    return builder -> builder.makeImmutableSeq(Term.class, terms.map(this::term));
+  }
+
+  private static @NotNull Expr instance(@NotNull AnyDef def) {
+    return BytecodeBuilder.instance(getReference(def));
+  }
+
+  private @NotNull Expr serializeApplicable(@NotNull Shaped.Applicable<?> applicable) {
+    return switch (applicable) {
+      case IntegerOps.ConRule conRule -> builder -> builder.make(INT_CONRULE,
+        instance(conRule.ref()), term(conRule.zero()));
+      case IntegerOps.FnRule fnRule -> builder -> builder.make(INT_FNRULE,
+        instance(fnRule.ref()), enumConstant(fnRule.kind()));
+      case ListOps.ConRule conRule -> builder -> builder.make(LIST_CONRULE,
+        instance(conRule.ref()), term(conRule.empty()));
+      default -> Panic.unreachable();
+    };
+  }
+
+  /**
+   * {@code className.INSTANCE.invoke(identity(), new FnCall(...), args...)},
+   * with the fixed arity {@code invoke} of a function
+   */
+  private void buildFnCall(@NotNull BytecodeBuilder builder, @NotNull String className, int ulift, @NotNull ImmutableSeq<Term> args) {
+    var argVars = builder.locals(Term.class, args.map(this::term));
+    var argExprs = argVars.<Expr>map(Local::new);
+    var instance = BytecodeBuilder.instance(className);
+    instance.emit(builder);
+    builder.invoke(IDENTITY);
+    builder.make(FN_CALL, instance, constant(0),
+      b -> b.makeImmutableSeq(Term.class, argExprs));
+    argExprs.forEach(arg -> arg.emit(builder));
+    builder.invoke(invokeFixed(className, args.size()));
+    elevate(builder, ulift);
+  }
+
+  /**
+   * {@code rule.invoke(new callName(rule, 0, args...), args.flatten())}, see {@link RuleReducer}
+   */
+  private void buildRuleCall(
+    @NotNull BytecodeBuilder builder, @NotNull Shaped.Applicable<?> rule,
+    @NotNull JvmCtor callName, int ulift, @NotNull ImmutableSeq<ImmutableSeq<Term>> args
+  ) {
+    var ruleVar = builder.local(Shaped.Applicable.class, serializeApplicable(rule));
+    var argVars = args.map(x -> builder.locals(Term.class, x.map(this::term)).<Expr>map(Local::new));
+    builder.load(ruleVar);
+    var callArgs = argVars.<Expr>map(x -> b -> b.makeImmutableSeq(Term.class, x))
+      .prepended(constant(0))      // elevate later
+      .prepended(new Local(ruleVar));
+    builder.make(callName, callArgs);
+    builder.makeImmutableSeq(Term.class, argVars.flatMap(x -> x));
+    builder.invoke(REDUCIBLE_INVOKE);
+    elevate(builder, ulift);
+  }
+
+  private static void elevate(@NotNull BytecodeBuilder builder, int ulift) {
+    if (ulift <= 0) return;
+    builder.push(ulift);
+    builder.invoke(ELEVATE);
+  }
+
+  private void doSerialize(@NotNull BytecodeBuilder builder, @NotNull Term term) {
+    switch (term) {
+      case FreeTerm bind -> {
+        // It is possible that we meet bind here,
+        // the serializer will instantiate some variable while serializing LamTerm
+        var subst = binds.getOrNull(bind.name());
+        if (subst == null) {
+          throw new Panic(STR."No substitution for \{bind.name()} during serialization");
+        }
+        subst.emit(builder);
+      }
+      case TyckInternal i -> throw new Panic(i.getClass().toString());
+      case AppTerm(var fun, var arg) -> builder.make(APP, term(fun), term(arg));
+      case LocalTerm _ -> throw new Panic("LocalTerm");
+      case LamTerm lamTerm -> builder.make(LAM, serializeClosure(lamTerm.body()));
+      case DataCall(var ref, var ulift, var args) -> builder.make(DATA_CALL,
+        instance(ref), constant(ulift), seq(args));
+      case ConCall(var head, var args) -> builder.make(CON_CALL,
+        instance(head.ref()), seq(head.ownerArgs()), constant(head.ulift()), seq(args));
+      case FnCall call -> {
+        var ref = switch (call.ref()) {
+          case JitFn jit -> getReference(jit);
+          case FnDef.Delegate def -> getCoreReference(def.ref);
+        };
+        buildFnCall(builder, ref, call.ulift(), call.args());
+      }
+      case RuleReducer.Con conRuler -> buildRuleCall(builder, conRuler.rule(), RULE_CON, conRuler.ulift(),
+        ImmutableSeq.of(conRuler.dataArgs(), conRuler.conArgs()));
+      case RuleReducer.Fn fnRuler -> buildRuleCall(builder, fnRuler.rule(), RULE_FN, fnRuler.ulift(),
+        ImmutableSeq.of(fnRuler.args()));
+      case SortTerm(var kind, var ulift) -> builder.make(SORT, enumConstant(kind), constant(ulift));
+      case PiTerm(var param, var body) -> builder.make(PI, term(param), serializeClosure(body));
+      case CoeTerm(var type, var r, var s) -> builder.make(COE, serializeClosure(type), term(r), term(s));
+      case ProjTerm(var of, var ix) -> builder.make(PROJ, term(of), constant(ix));
+      case PAppTerm(var fun, var arg, var a, var b) -> builder.make(PAPP, term(fun), term(arg), term(a), term(b));
+      case EqTerm(var A, var a, var b) -> builder.make(EQ, serializeClosure(A), term(a), term(b));
+      case DimTyTerm _ -> enumConstant(DimTyTerm.INSTANCE).emit(builder);
+      case DimTerm dim -> enumConstant(dim).emit(builder);
+      case TupTerm(var items) -> builder.make(TUP, seq(items));
+      case SigmaTerm _ -> throw new UnsupportedOperationException("TODO");
+      case PrimCall(var ref, var ulift, var args) -> builder.make(PRIM_CALL, b -> {
+        instance(ref).emit(b);
+        b.invoke(PRIM_REF);
+      }, constant(ulift), seq(args));
+      case IntegerTerm(var repr, var zero, var suc, var type) -> builder.make(INTEGER,
+        b -> b.makeBigInteger(repr), instance(zero), instance(suc), term(type));
+      case ListTerm(var repr, var nil, var cons, var type) -> builder.make(LIST,
+        seq(repr), instance(nil), instance(cons), term(type));
+      // no escaping, the constant pool holds the string itself rather than a java literal
+      case StringTerm stringTerm -> builder.make(STRING, constant(stringTerm.string()));
+    }
+  }
+
+  /** A lambda that captures every variable in scope, see {@link BytecodeBuilder#lambda} */
+  private @NotNull Expr serializeClosure(@NotNull Closure body) {
+    return builder -> builder.make(JIT_CLOSURE, b -> {
+      var captures = binds.valuesView().map(Access::var).distinct().toImmutableSeq();
+      b.lambda(captures, (lambda, param) -> {
+        var bind = new LocalVar(nameGen.nextName(null));
+        binds.put(bind, new Local(param));
+        lambda.ret(term(body.apply(new FreeTerm(bind))));
+        binds.remove(bind);
+      });
+    });
+  }
+
+  /** @return the expression of {@param unit}, where the variables of the telescope are {@link #instantiates} */
+  @NotNull Expr serialize(@NotNull Term unit) {
+    return builder -> {
+      binds.clear();
+      var vars = ImmutableSeq.fill(instantiates.size(), i -> new LocalVar(STR."arg\{i}"));
+      var term = unit.instantiateTeleVar(vars.view());
+      vars.forEachWith(instantiates, binds::put);
+      doSerialize(builder, term);
+    };
+  }
+}
@@ -14,10 +14,20 @@ import org.aya.resolve.ResolveInfo;
 import org.aya.resolve.context.PhysicalModuleContext;
 import org.aya.resolve.error.NameProblem;
 import org.aya.resolve.module.ModuleLoader;
+import org.aya.syntax.compile.JitData;
 import org.aya.syntax.compile.JitDef;
+import org.aya.syntax.compile.JitPrim;
 import org.aya.syntax.concrete.stmt.*;
+import org.aya.syntax.concrete.stmt.decl.PrimDecl;
+import org.aya.syntax.core.def.AnyDef;
+import org.aya.syntax.core.def.PrimDef;
 import org.aya.syntax.core.def.TyckAnyDef;
 import org.aya.syntax.core.def.TyckDef;
+import org.aya.syntax.core.repr.AyaShape;
+import org.aya.syntax.core.repr.CodeShape;
+import org.aya.syntax.core.repr.ShapeRecognition;
+import org.aya.syntax.ref.AnyVar;
+import org.aya.syntax.ref.CompiledVar;
 import org.aya.syntax.ref.DefVar;
 import org.aya.syntax.ref.ModulePath;
 import org.aya.syntax.ref.QName;
@@ -27,14 +37,13 @@ import org.aya.util.error.SourcePos;
 import org.aya.util.error.WithPos;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.Serializable;
-
 /**
- * The .ayac file representation.
+ * The .ayac file representation, see {@link CompiledModuleFormat} for the binary format.
  *
  * @param imports   The modules that this ayac imports. Absolute path.
  * @param exports   Each name consist of {@code This Module Name}, {@code Export Module Name} and {@code Symbol Name}
  * @param reExports key: a imported module that is in {@param imports}
+ * @param defs      the definitions compiled to classes by {@link ModuleCompiler}, primitives included
  * @author kiva
  */
 public record CompiledModule(
@@ -42,48 +51,50 @@ public record CompiledModule(
   @NotNull SerExport exports,
   @NotNull ImmutableMap<ModulePath, SerUseHide> reExports,
   @NotNull ImmutableMap<QName, SerBind> serOps,
-  @NotNull ImmutableMap<QName, SerRenamedOp> opRename
-) implements Serializable {
+  @NotNull ImmutableMap<QName, SerRenamedOp> opRename,
+  @NotNull ImmutableSeq<QName> defs
+) {
   public record DeState(@NotNull ClassLoader loader) {
     public @NotNull String classNameBy(@NotNull QName name) {
-      var module = name.module().module().module();
-      var virtualModulePath = module.drop(name.module().fileModuleSize());
-      var moduleClassReference = module.view().prepended(AyaSerializer.PACKAGE_BASE).joinToString(".");
-      var defClassName = virtualModulePath.view().appended(name.name()).joinToString("$");
-      return STR."\{moduleClassReference}$\{defClassName}";
+      return AbstractSerializer.getBinaryName(name);
     }
 
-    public @NotNull JitDef resolve(@NotNull QName name) {
+    /** @return the instance of the class of {@param name}, either a {@link JitDef} or a {@link JitPrim} */
+    public @NotNull Object instanceOf(@NotNull QName name) {
       try {
         var clazz = loader.loadClass(classNameBy(name));
         var fieldInstance = clazz.getField(AyaSerializer.STATIC_FIELD_INSTANCE);
         fieldInstance.setAccessible(true);
-        return (JitDef) fieldInstance.get(null);
+        return fieldInstance.get(null);
       } catch (ClassNotFoundException | NoSuchFieldException | IllegalAccessException e) {
         throw new Panic(e);
       }
     }
+
+    public @NotNull JitDef resolve(@NotNull QName name) {
+      return (JitDef) instanceOf(name);
+    }
   }
 
-  record SerBind(@NotNull ImmutableSeq<QName> loosers, @NotNull ImmutableSeq<QName> tighters) implements Serializable {
+  record SerBind(@NotNull ImmutableSeq<QName> loosers, @NotNull ImmutableSeq<QName> tighters) {
     public static final SerBind EMPTY = new SerBind(ImmutableSeq.empty(), ImmutableSeq.empty());
   }
 
-  record SerRenamedOp(@NotNull OpDecl.OpInfo info, @NotNull SerBind bind) implements Serializable { }
+  record SerRenamedOp(@NotNull OpDecl.OpInfo info, @NotNull SerBind bind) { }
 
   /**
    * @param rename not empty
    */
   record SerImport(
     @NotNull ModulePath path, @NotNull ImmutableSeq<String> rename,
-    boolean isPublic) implements Serializable { }
+    boolean isPublic) { }
 
   /** @see org.aya.syntax.concrete.stmt.UseHide */
   record SerUseHide(
     boolean isUsing,
     @NotNull ImmutableSeq<ImmutableSeq<String>> names,
     @NotNull ImmutableSeq<UseHide.Rename> renames
-  ) implements Serializable {
+  ) {
     public static @NotNull SerUseHide from(@NotNull UseHide useHide) {
       return new SerUseHide(
         useHide.strategy() == UseHide.Strategy.Using,
@@ -98,9 +109,9 @@ public record CompiledModule(
    */
   record SerExport(
     @NotNull ImmutableMap<String, ImmutableSet<ImmutableSeq<String>>> exports
-  ) implements Serializable {
+  ) {
     public boolean isExported(@NotNull ModulePath module, @NotNull QName qname) {
-      var qmod = qname.asStringSeq();
+      var qmod = qname.module().module().module();
       assert qmod.sizeGreaterThanOrEquals(module.module().size());
       var component = ModuleName.from(qmod.drop(module.module().size()));
 
@@ -114,6 +125,10 @@ public record CompiledModule(
   }
 
   public static @NotNull CompiledModule from(@NotNull ResolveInfo resolveInfo) {
+    return from(resolveInfo, ImmutableSeq.empty());
+  }
+
+  public static @NotNull CompiledModule from(@NotNull ResolveInfo resolveInfo, @NotNull ImmutableSeq<QName> defs) {
     if (!(resolveInfo.thisModule() instanceof PhysicalModuleContext ctx)) {
       // TODO[kiva]: how to reach here?
       throw new UnsupportedOperationException();
@@ -144,7 +159,8 @@ public record CompiledModule(
           return Tuple.of(v.reExport(), name, renamed);
         })
         .filter(Tuple3::head) // should not serialize publicly renamed ops from upstreams
-        .map(Tuple3::tail))
+        .map(Tuple3::tail)),
+      defs
     );
   }
 
@@ -177,6 +193,7 @@ public record CompiledModule(
   ) {
     var resolveInfo = new ResolveInfo(context, primFactory, shapeFactory);
     shallowResolve(loader, resolveInfo);
+    deDefs(state, context, primFactory, shapeFactory);
     deOp(state, resolveInfo);
     return resolveInfo;
   }
@@ -207,6 +224,53 @@ public record CompiledModule(
     }
   }
 
+  /**
+   * Load the compiled definitions and export them, the data types also bring back their shapes.
+   */
+  private void deDefs(
+    @NotNull DeState state, @NotNull PhysicalModuleContext context,
+    @NotNull PrimFactory primFactory, @NotNull ShapeFactory shapeFactory
+  ) {
+    defs.forEach(qname -> {
+      AnyVar ref = switch (state.instanceOf(qname)) {
+        case JitPrim prim -> dePrim(prim, qname, primFactory);
+        case JitDef def -> {
+          if (def instanceof JitData data) deShape(data, shapeFactory);
+          yield new CompiledVar(def);
+        }
+        default -> throw new Panic(STR."Not a compiled definition: \{qname}");
+      };
+      if (isExported(context.modulePath(), qname)) export(context, qname, ref);
+    });
+  }
+
+  /**
+   * The primitives are shared by the modules of a compilation, so a primitive that is already
+   * checked from source or loaded is reused, and a fresh reference is made otherwise.
+   * The compiled code refers to the primitive through {@param prim}, which is bound to it here.
+   */
+  private static @NotNull DefVar<PrimDef, PrimDecl> dePrim(
+    @NotNull JitPrim prim, @NotNull QName qname, @NotNull PrimFactory primFactory
+  ) {
+    var decl = new PrimDecl(SourcePos.SER, SourcePos.SER, qname.name(), ImmutableSeq.empty(), null);
+    decl.ref.module = qname.module();
+    var ref = primFactory.getOrCreate(prim.id, decl.ref).ref;
+    prim.bind(ref);
+    return ref;
+  }
+
+  /** @see DataSerializer#buildShape */
+  private static void deShape(@NotNull JitData data, @NotNull ShapeFactory shapeFactory) {
+    var metadata = data.metadata();
+    if (metadata.shape() == -1) return;
+    // The capture is one-to-one with the constructors
+    var recognition = metadata.recognition();
+    var cons = data.constructors();
+    var captures = MutableMap.<CodeShape.GlobalId, AnyDef>create();
+    for (int i = 0; i < cons.length; i++) captures.put(recognition[i], cons[i]);
+    shapeFactory.discovered.put(data, new ShapeRecognition(AyaShape.values()[metadata.shape()], ImmutableMap.from(captures)));
+  }
+
   /**
    * like {@link org.aya.resolve.visitor.StmtResolver} but only resolve operator
    */
@@ -245,9 +309,9 @@ public record CompiledModule(
     return resolveInfo.resolveOpDecl(state.resolve(name));
   }
 
-  private void export(@NotNull PhysicalModuleContext context, @NotNull QName qname, @NotNull DefVar<?, ?> ref) {
+  private void export(@NotNull PhysicalModuleContext context, @NotNull QName qname, @NotNull AnyVar ref) {
     var modName = context.modulePath();
-    var qmodName = ModuleName.from(qname.asStringSeq().drop(modName.module().size()));
+    var qmodName = ModuleName.from(qname.module().module().module().drop(modName.module().size()));
     export(context, qmodName, qname.name(), ref);
   }
 
@@ -255,7 +319,7 @@ public record CompiledModule(
     @NotNull PhysicalModuleContext context,
     @NotNull ModuleName component,
     @NotNull String name,
-    @NotNull DefVar<?, ?> var
+    @NotNull AnyVar var
   ) {
     var success = context.exportSymbol(component, name, var);
     assert success : "DuplicateExportError should not happen in CompiledModule";
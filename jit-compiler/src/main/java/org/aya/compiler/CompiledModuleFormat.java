@@ -0,0 +1,300 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.compiler;
+
+import kala.collection.immutable.ImmutableMap;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.ImmutableSet;
+import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import org.aya.syntax.concrete.stmt.UseHide;
+import org.aya.syntax.ref.ModulePath;
+import org.aya.syntax.ref.QName;
+import org.aya.syntax.ref.QPath;
+import org.aya.util.binop.Assoc;
+import org.aya.util.binop.OpDecl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The binary format of {@link CompiledModule}:
+ * <pre>
+ * magic: "AYAC", version: int
+ * strings: n, n * (length, utf-8 bytes)
+ * qnames: n, n * (strings, fileModuleSize, string)
+ * imports, exports, reExports, serOps, opRename, defs
+ * </pre>
+ * All numbers except the header are unsigned LEB128 varints, strings and qualified names
+ * are referred by indices into the tables, and sequences are prefixed by their length.
+ */
+public interface CompiledModuleFormat {
+  int MAGIC = 0x41594143;
+  /** Bump this when the layout changes, cores of other versions are considered stale */
+  int VERSION = 2;
+  /** Smaller files are cheaper to read than to map */
+  long MAP_THRESHOLD = 64 * 1024;
+
+  static byte @NotNull [] write(@NotNull CompiledModule module) {
+    var writer = new Writer();
+    writer.module(module);
+    return writer.finish();
+  }
+
+  /**
+   * Only reads the header, so that a core of another {@link #VERSION} is told stale before it is loaded,
+   * and its module is rebuilt like a modified source.
+   */
+  static boolean isCurrent(@NotNull Path corePath) throws IOException {
+    try (var channel = FileChannel.open(corePath, StandardOpenOption.READ)) {
+      var header = ByteBuffer.allocate(8);
+      channel.read(header, 0);
+      return isCurrent(header.flip());
+    }
+  }
+
+  static boolean isCurrent(@NotNull ByteBuffer buffer) {
+    return buffer.remaining() >= 8 && buffer.getInt() == MAGIC && buffer.getInt() == VERSION;
+  }
+
+  /** @return null if the file is not of the current {@link #VERSION} */
+  static @Nullable CompiledModule read(@NotNull Path corePath) throws IOException {
+    try (var channel = FileChannel.open(corePath, StandardOpenOption.READ)) {
+      var size = channel.size();
+      var buffer = size < MAP_THRESHOLD
+        ? ByteBuffer.wrap(Files.readAllBytes(corePath))
+        : channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      return read(buffer);
+    }
+  }
+
+  static @Nullable CompiledModule read(@NotNull ByteBuffer buffer) throws IOException {
+    try {
+      if (!isCurrent(buffer)) return null;
+      return new Reader(buffer).module();
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException |
+             IllegalArgumentException e) {
+      throw new IOException("Malformed compiled aya", e);
+    }
+  }
+
+  final class Writer {
+    private final @NotNull MutableMap<String, Integer> strings = MutableLinkedHashMap.of();
+    private final @NotNull MutableMap<QName, Integer> qnames = MutableLinkedHashMap.of();
+    private final @NotNull ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private static void varint(@NotNull ByteArrayOutputStream out, int value) {
+      while ((value & ~0x7F) != 0) {
+        out.write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      out.write(value);
+    }
+
+    private void varint(int value) { varint(body, value); }
+    private void bool(boolean value) { body.write(value ? 1 : 0); }
+    private void string(@NotNull String s) { varint(strings.getOrPut(s, strings::size)); }
+    private void strings(@NotNull ImmutableSeq<String> seq) {
+      varint(seq.size());
+      seq.forEach(this::string);
+    }
+
+    private void qname(@NotNull QName name) {
+      var index = qnames.getOrNull(name);
+      if (index == null) {
+        // intern the components first so that the string table is complete
+        name.module().module().module().forEach(s -> strings.getOrPut(s, strings::size));
+        strings.getOrPut(name.name(), strings::size);
+        index = qnames.size();
+        qnames.put(name, index);
+      }
+      varint(index);
+    }
+
+    private void bind(@NotNull CompiledModule.SerBind bind) {
+      varint(bind.loosers().size());
+      bind.loosers().forEach(this::qname);
+      varint(bind.tighters().size());
+      bind.tighters().forEach(this::qname);
+    }
+
+    void module(@NotNull CompiledModule module) {
+      varint(module.imports().size());
+      module.imports().forEach(i -> {
+        strings(i.path().module());
+        strings(i.rename());
+        bool(i.isPublic());
+      });
+      var exports = module.exports().exports();
+      varint(exports.size());
+      exports.forEach((name, candidates) -> {
+        string(name);
+        varint(candidates.size());
+        candidates.forEach(this::strings);
+      });
+      varint(module.reExports().size());
+      module.reExports().forEach((path, useHide) -> {
+        strings(path.module());
+        bool(useHide.isUsing());
+        varint(useHide.names().size());
+        useHide.names().forEach(this::strings);
+        varint(useHide.renames().size());
+        useHide.renames().forEach(rename -> {
+          strings(rename.fromModule());
+          string(rename.name());
+          string(rename.to());
+        });
+      });
+      varint(module.serOps().size());
+      module.serOps().forEach((name, bind) -> {
+        qname(name);
+        bind(bind);
+      });
+      varint(module.opRename().size());
+      module.opRename().forEach((name, renamed) -> {
+        qname(name);
+        string(renamed.info().name());
+        varint(renamed.info().assoc().ordinal());
+        bind(renamed.bind());
+      });
+      varint(module.defs().size());
+      module.defs().forEach(this::qname);
+    }
+
+    byte @NotNull [] finish() {
+      var out = new ByteArrayOutputStream(body.size() + 16 * strings.size());
+      var header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+      out.writeBytes(header.array());
+      varint(out, strings.size());
+      strings.forEach((s, _) -> {
+        var bytes = s.getBytes(StandardCharsets.UTF_8);
+        varint(out, bytes.length);
+        out.writeBytes(bytes);
+      });
+      varint(out, qnames.size());
+      qnames.forEach((name, _) -> {
+        var module = name.module();
+        var path = module.module().module();
+        varint(out, path.size());
+        path.forEach(s -> varint(out, strings.get(s)));
+        varint(out, module.fileModuleSize());
+        varint(out, strings.get(name.name()));
+      });
+      body.writeTo(out);
+      return out.toByteArray();
+    }
+  }
+
+  final class Reader {
+    private final @NotNull ByteBuffer buffer;
+    private final @NotNull String @NotNull [] strings;
+    private final @NotNull QName @NotNull [] qnames;
+
+    private Reader(@NotNull ByteBuffer buffer) {
+      this.buffer = buffer;
+      strings = new String[varint()];
+      for (int i = 0; i < strings.length; i++) {
+        var bytes = new byte[varint()];
+        buffer.get(bytes);
+        strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      qnames = new QName[varint()];
+      for (int i = 0; i < qnames.length; i++) {
+        var path = new ModulePath(strings());
+        qnames[i] = new QName(new QPath(path, varint()), string());
+      }
+    }
+
+    private int varint() {
+      int value = 0, shift = 0;
+      byte b;
+      do {
+        if (shift > 28) throw new IllegalArgumentException("varint too long");
+        b = buffer.get();
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    private boolean bool() { return buffer.get() != 0; }
+    private @NotNull String string() { return strings[varint()]; }
+    private @NotNull QName qname() { return qnames[varint()]; }
+
+    private @NotNull ImmutableSeq<String> strings() {
+      var size = varint();
+      var list = MutableList.<String>create();
+      for (int i = 0; i < size; i++) list.append(string());
+      return list.toImmutableSeq();
+    }
+
+    private @NotNull ImmutableSeq<QName> qnameSeq() {
+      var size = varint();
+      var list = MutableList.<QName>create();
+      for (int i = 0; i < size; i++) list.append(qname());
+      return list.toImmutableSeq();
+    }
+
+    private @NotNull CompiledModule.SerBind bind() {
+      var loosers = qnameSeq();
+      var tighters = qnameSeq();
+      if (loosers.isEmpty() && tighters.isEmpty()) return CompiledModule.SerBind.EMPTY;
+      return new CompiledModule.SerBind(loosers, tighters);
+    }
+
+    @NotNull CompiledModule module() {
+      var imports = MutableList.<CompiledModule.SerImport>create();
+      for (int i = varint(); i > 0; i--)
+        imports.append(new CompiledModule.SerImport(new ModulePath(strings()), strings(), bool()));
+
+      var exports = MutableLinkedHashMap.<String, ImmutableSet<ImmutableSeq<String>>>of();
+      for (int i = varint(); i > 0; i--) {
+        var name = string();
+        var candidates = MutableList.<ImmutableSeq<String>>create();
+        for (int j = varint(); j > 0; j--) candidates.append(strings());
+        exports.put(name, ImmutableSet.from(candidates));
+      }
+
+      var reExports = MutableLinkedHashMap.<ModulePath, CompiledModule.SerUseHide>of();
+      for (int i = varint(); i > 0; i--) {
+        var path = new ModulePath(strings());
+        var isUsing = bool();
+        var names = MutableList.<ImmutableSeq<String>>create();
+        for (int j = varint(); j > 0; j--) names.append(strings());
+        var renames = MutableList.<UseHide.Rename>create();
+        for (int j = varint(); j > 0; j--) renames.append(new UseHide.Rename(strings(), string(), string()));
+        reExports.put(path, new CompiledModule.SerUseHide(isUsing, names.toImmutableSeq(), renames.toImmutableSeq()));
+      }
+
+      var serOps = MutableLinkedHashMap.<QName, CompiledModule.SerBind>of();
+      for (int i = varint(); i > 0; i--) serOps.put(qname(), bind());
+
+      var assocs = Assoc.values();
+      var opRename = MutableLinkedHashMap.<QName, CompiledModule.SerRenamedOp>of();
+      for (int i = varint(); i > 0; i--) {
+        var name = qname();
+        var info = new OpDecl.OpInfo(string(), assocs[varint()]);
+        opRename.put(name, new CompiledModule.SerRenamedOp(info, bind()));
+      }
+
+      var defs = qnameSeq();
+
+      return new CompiledModule(imports.toImmutableSeq(),
+        new CompiledModule.SerExport(ImmutableMap.from(exports)),
+        ImmutableMap.from(reExports),
+        ImmutableMap.from(serOps),
+        ImmutableMap.from(opRename),
+        defs);
+    }
+  }
+}
@@ -29,7 +29,7 @@ public final class ConSerializer extends JitTeleSerializer<ConDef> {
     var pats = unit.pats;
     var names = buildGenLocalVarsFromSeq(CLASS_TERM, argsTerm, pats.size());
     appendLine();
-    var ser = new PatternSerializer(this.builder, this.indent, this.nameGen, names, true,
+    var ser = new PatternSerializer(this.builder, this.indent, this.nameGen, names, null, true, true,
       s -> s.buildReturn(STR."\{CLASS_RESULT}.err(true)"),
       s -> s.buildReturn(STR."\{CLASS_RESULT}.err(false)"));
 
@@ -11,6 +11,7 @@ import org.aya.syntax.compile.JitData;
 import org.aya.syntax.core.def.DataDef;
 import org.aya.syntax.core.def.TyckAnyDef;
 import org.aya.syntax.core.repr.CodeShape;
+import org.aya.syntax.core.repr.ShapeRecognition;
 import org.aya.syntax.ref.DefVar;
 import org.jetbrains.annotations.NotNull;
 
@@ -65,15 +66,19 @@ public final class DataSerializer extends JitTeleSerializer<DataDef> {
     } else {
       var recog = maybe.get();
       appendMetadataRecord("shape", Integer.toString(recog.shape().ordinal()), false);
-
-      // The capture is one-to-one
-      var flipped = ImmutableMap.from(recog.captures().view()
-        .map((k, v) -> Tuple.<DefVar<?, ?>, CodeShape.GlobalId>of(((TyckAnyDef<?>) v).ref, k)));
-      var capture = unit.body.map(x -> makeSub(CLASS_GLOBALID, flipped.get(x.ref).toString()));
+      var capture = recognition(unit, recog).map(x -> makeSub(CLASS_GLOBALID, x.toString()));
       appendMetadataRecord("recognition", makeHalfArrayFrom(capture), false);
     }
   }
 
+  /** @return the ids of the constructors of {@param unit} in order */
+  static @NotNull ImmutableSeq<CodeShape.GlobalId> recognition(@NotNull DataDef unit, @NotNull ShapeRecognition recog) {
+    // The capture is one-to-one
+    var flipped = ImmutableMap.from(recog.captures().view()
+      .map((k, v) -> Tuple.<DefVar<?, ?>, CodeShape.GlobalId>of(((TyckAnyDef<?>) v).ref, k)));
+    return unit.body.map(x -> flipped.get(x.ref));
+  }
+
   @Override protected void buildConstructor(DataDef unit) {
     buildConstructor(unit, ImmutableSeq.of(Integer.toString(unit.body.size())));
   }
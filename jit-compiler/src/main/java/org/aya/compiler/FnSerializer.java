@@ -27,7 +27,10 @@ public final class FnSerializer extends JitTeleSerializer<FnDef> {
   /**
    * Build fixed argument `invoke`
    */
-  private void buildInvoke(FnDef unit, @NotNull String onStuckTerm, @NotNull ImmutableSeq<String> argTerms) {
+  private void buildInvoke(
+    FnDef unit, @NotNull String normalizerTerm,
+    @NotNull String onStuckTerm, @NotNull ImmutableSeq<String> argTerms
+  ) {
     if (unit.is(Modifier.Opaque)) {
       buildReturn(onStuckTerm);
       return;
@@ -36,8 +39,8 @@ public final class FnSerializer extends JitTeleSerializer<FnDef> {
     switch (unit.body()) {
       case Either.Left(var expr) -> buildReturn(serializeTermUnderTele(expr, argTerms));
       case Either.Right(var clauses) -> {
-        var ser = new PatternSerializer(this.builder, this.indent, this.nameGen, argTerms, false,
-          s -> s.buildReturn(onStuckTerm), s -> s.buildReturn(onStuckTerm));
+        var ser = new PatternSerializer(this.builder, this.indent, this.nameGen, argTerms, normalizerTerm, false,
+          unit.is(Modifier.Overlap), s -> s.buildReturn(onStuckTerm), s -> s.buildReturn(onStuckTerm));
         ser.serialize(clauses.map(matching -> new PatternSerializer.Matching(
           matching.patterns(),
           (s, bindSize) -> s.buildReturn(serializeTermUnderTele(matching.body(), PatternSerializer.VARIABLE_RESULT, bindSize))
@@ -49,29 +52,36 @@ public final class FnSerializer extends JitTeleSerializer<FnDef> {
   /**
    * Build vararg `invoke`
    */
-  private void buildInvoke(FnDef unit, @NotNull String onStuckTerm, @NotNull String argsTerm) {
+  private void buildInvoke(
+    FnDef unit, @NotNull String normalizerTerm,
+    @NotNull String onStuckTerm, @NotNull String argsTerm
+  ) {
     var teleSize = unit.telescope().size();
 
     buildReturn(STR."this.invoke(\{fromSeq(argsTerm, teleSize).view()
       .prepended(onStuckTerm)
+      .prepended(normalizerTerm)
       .joinToString()})");
   }
 
   @Override public AyaSerializer<FnDef> serialize(FnDef unit) {
     var argsTerm = "args";
+    var normalizerTerm = "normalizer";
     var onStuckTerm = "onStuck";
+    var normalizerParam = new JitParam(normalizerTerm, TYPE_NORMALIZER);
     var onStuckParam = new JitParam(onStuckTerm, CLASS_TERM);
     var names = ImmutableSeq.fill(unit.telescope().size(), () -> nameGen.nextName(null));
     var fixedParams = MutableList.<JitParam>create();
+    fixedParams.append(normalizerParam);
     fixedParams.append(onStuckParam);
     fixedParams.appendAll(names.view().map(x -> new JitParam(x, CLASS_TERM)));
 
     buildFramework(unit, () -> {
       buildMethod("invoke", fixedParams.toImmutableSeq(),
-        CLASS_TERM, false, () -> buildInvoke(unit, onStuckTerm, names));
+        CLASS_TERM, false, () -> buildInvoke(unit, normalizerTerm, onStuckTerm, names));
       appendLine();
-      buildMethod("invoke", ImmutableSeq.of(onStuckParam, new JitParam(argsTerm, TYPE_TERMSEQ)),
-        CLASS_TERM, true, () -> buildInvoke(unit, onStuckTerm, argsTerm));
+      buildMethod("invoke", ImmutableSeq.of(normalizerParam, onStuckParam, new JitParam(argsTerm, TYPE_TERMSEQ)),
+        CLASS_TERM, true, () -> buildInvoke(unit, normalizerTerm, onStuckTerm, argsTerm));
     });
 
     return this;
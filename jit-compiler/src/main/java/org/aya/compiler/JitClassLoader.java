@@ -0,0 +1,41 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.compiler;
+
+import org.aya.util.error.Panic;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads the classes emitted by {@link ModuleCompiler} from the output directories of libraries.
+ * A def must be loaded only once, so one instance should be shared by a whole compilation.
+ */
+public final class JitClassLoader extends URLClassLoader {
+  static { registerAsParallelCapable(); }
+
+  private final @NotNull Set<Path> roots = ConcurrentHashMap.newKeySet();
+
+  public JitClassLoader() {
+    super(new URL[0], JitClassLoader.class.getClassLoader());
+  }
+
+  /** @param root a directory containing the {@link AyaSerializer#PACKAGE_BASE} package */
+  public void addRoot(@NotNull Path root) {
+    root = root.toAbsolutePath().normalize();
+    if (!roots.add(root)) return;
+    // a directory url must end with a slash, otherwise it is treated as a jar
+    var uri = root.toUri().toString();
+    try {
+      addURL(URI.create(uri.endsWith("/") ? uri : uri + "/").toURL());
+    } catch (MalformedURLException e) {
+      throw new Panic(e);
+    }
+  }
+}
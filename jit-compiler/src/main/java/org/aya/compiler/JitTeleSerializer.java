@@ -120,10 +120,11 @@ public abstract class JitTeleSerializer<T extends TyckDef> extends AbstractSeria
     var licit = tele.view().map(Param::explicit).map(Object::toString);
     var names = tele.view().map(Param::name).map(x -> STR."\"\{x}\"");
 
+    // qualified, since the class of `prim String` shadows java.lang.String in its module
     buildSuperCall(ImmutableSeq.of(
       Integer.toString(size),
       makeArrayFrom("boolean", licit.toImmutableSeq()),
-      makeArrayFrom("String", names.toImmutableArray())
+      makeArrayFrom("java.lang.String", names.toImmutableArray())
     ).appendedAll(ext));
   }
 
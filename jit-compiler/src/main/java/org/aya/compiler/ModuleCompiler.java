@@ -0,0 +1,153 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.compiler;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableList;
+import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.core.def.DataDef;
+import org.aya.syntax.core.def.PrimDef;
+import org.aya.syntax.core.def.TopLevelDef;
+import org.aya.syntax.core.def.TyckDef;
+import org.aya.syntax.ref.DefVar;
+import org.aya.syntax.ref.ModulePath;
+import org.aya.syntax.ref.QName;
+import org.aya.util.FileUtil;
+import org.aya.util.error.Panic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * Compiles the tycked definitions of a file module to class files, emitted by {@link BytecodeSerializer},
+ * so that they can be loaded by {@link JitClassLoader} instead of being tycked again.
+ * The classes are the ones that javac compiles from the output of {@link FileSerializer},
+ * but no java source is generated or compiled, so this also works on a jre.
+ * The class files are kept across builds together with their hash,
+ * a module that is tycked again but produces the same classes does not rewrite them.
+ * <p>
+ * A primitive is compiled to a {@link org.aya.syntax.compile.JitPrim}, which refers to the {@link PrimDef}
+ * of the {@link org.aya.primitive.PrimFactory} of the compilation once it is loaded.
+ * Not every module can be compiled, since the serializer does not support some terms yet.
+ * Such a module is reported by returning null, and the caller must not store a compiled module without its definitions.
+ *
+ * @see CompiledModule.DeState
+ */
+public interface ModuleCompiler {
+  /** Stores the hash of the class files, next to the class of the file module */
+  String HASH_POSTFIX = ".jith";
+
+  /**
+   * @param classRoot the directory to write class files to
+   * @return the names of the compiled defs, or null if the module cannot be compiled
+   */
+  static @Nullable ImmutableSeq<QName> compile(
+    @NotNull ModulePath module, @NotNull ImmutableSeq<TyckDef> defs,
+    @NotNull ShapeFactory shapeFactory, @NotNull Path classRoot
+  ) throws IOException {
+    var topLevel = defs.filterIsInstance(TopLevelDef.class);
+    var classes = serialize(module, topLevel, shapeFactory);
+    if (classes == null) {
+      deleteClasses(classRoot, module);
+      return null;
+    }
+
+    var path = module.module();
+    var hash = HexFormat.of().formatHex(sha256(classes));
+    var hashFile = packageDir(classRoot, module).resolve(path.getLast() + HASH_POSTFIX);
+    if (!isUpToDate(hashFile, hash)) {
+      deleteClasses(classRoot, module);
+      for (var clazz : classes) {
+        var file = classRoot.resolve(clazz.name() + ".class");
+        Files.createDirectories(file.getParent());
+        Files.write(file, clazz.bytes());
+      }
+      FileUtil.writeString(hashFile, hash);
+    }
+    return topLevel.flatMap(def -> def instanceof DataDef data
+      ? data.body.map(con -> new QName(con.ref)).prepended(new QName(data.ref))
+      : ImmutableSeq.of(new QName(def.ref())));
+  }
+
+  /** @return the classes of {@param module}, or null if some term is not supported by the serializer */
+  private static @Nullable ImmutableSeq<BytecodeSerializer.ClassFile> serialize(
+    @NotNull ModulePath module, @NotNull ImmutableSeq<TopLevelDef> defs, @NotNull ShapeFactory shapeFactory
+  ) {
+    var path = module.module();
+    var result = new FileSerializer.FileResult(new ModulePath(path.dropLast(1)),
+      moduleResult(path.getLast(), path.size(), defs));
+    try {
+      return new BytecodeSerializer(shapeFactory).serialize(result).result();
+    } catch (UnsupportedOperationException ignore) {
+      return null;
+    }
+  }
+
+  /** Group the defs by the submodule they belong to, preserving the definition order */
+  private static @NotNull ModuleSerializer.ModuleResult
+  moduleResult(@NotNull String name, int depth, @NotNull ImmutableSeq<TopLevelDef> defs) {
+    var here = MutableList.<TopLevelDef>create();
+    var submodules = MutableLinkedHashMap.<String, MutableList<TopLevelDef>>of();
+    defs.forEach(def -> {
+      var path = submodulePath(def.ref());
+      if (path.size() == depth) here.append(def);
+      else submodules.getOrPut(path.get(depth), MutableList::create).append(def);
+    });
+    return new ModuleSerializer.ModuleResult(name, here.toImmutableSeq(), ImmutableSeq.from(submodules.keysView())
+      .map(sub -> moduleResult(sub, depth + 1, submodules.get(sub).toImmutableSeq())));
+  }
+
+  private static @NotNull ImmutableSeq<String> submodulePath(@NotNull DefVar<?, ?> ref) {
+    return Objects.requireNonNull(ref.module).module().module();
+  }
+
+  private static byte @NotNull [] sha256(@NotNull ImmutableSeq<BytecodeSerializer.ClassFile> classes) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      for (var clazz : classes) {
+        digest.update(clazz.name().getBytes(StandardCharsets.UTF_8));
+        digest.update(clazz.bytes());
+      }
+      return digest.digest();
+    } catch (NoSuchAlgorithmException e) {
+      throw new Panic(e);
+    }
+  }
+
+  private static boolean isUpToDate(@NotNull Path hashFile, @NotNull String hash) {
+    try {
+      return Files.exists(hashFile) && Files.readString(hashFile).equals(hash);
+    } catch (IOException ignore) {
+      return false;
+    }
+  }
+
+  private static @NotNull Path packageDir(@NotNull Path classRoot, @NotNull ModulePath module) {
+    var dir = classRoot.resolve(AyaSerializer.PACKAGE_BASE);
+    for (var component : module.module().dropLast(1)) dir = dir.resolve(component);
+    return dir;
+  }
+
+  /** Remove the classes of {@param module} emitted by {@link #compile} */
+  static void deleteClasses(@NotNull Path classRoot, @NotNull ModulePath module) throws IOException {
+    var dir = packageDir(classRoot, module);
+    if (!Files.isDirectory(dir)) return;
+    var name = module.module().getLast();
+    try (var files = Files.list(dir)) {
+      for (var file : files.toList()) {
+        var fileName = file.getFileName().toString();
+        if (fileName.equals(name + ".class") || fileName.equals(name + HASH_POSTFIX) || fileName.startsWith(name + "$"))
+          Files.deleteIfExists(file);
+      }
+    }
+  }
+}
@@ -5,6 +5,7 @@ package org.aya.compiler;
 import kala.collection.immutable.ImmutableSeq;
 import org.aya.generic.NameGenerator;
 import org.aya.primitive.ShapeFactory;
+import org.aya.syntax.compile.JitPrim;
 import org.aya.syntax.core.def.*;
 import org.aya.util.IterableUtil;
 import org.jetbrains.annotations.NotNull;
@@ -19,6 +20,8 @@ public final class ModuleSerializer extends AbstractSerializer<ModuleSerializer.
     @NotNull ImmutableSeq<ModuleResult> submodules
   ) { }
 
+  public static final String CLASS_PRIMID = makeSub(getJavaReference(PrimDef.class), getJavaReference(PrimDef.ID.class));
+
   private final @NotNull ShapeFactory shapeFactory;
 
   public ModuleSerializer(@NotNull StringBuilder builder, int indent, @NotNull NameGenerator nameGen, @NotNull ShapeFactory shapeFactory) {
@@ -44,10 +47,21 @@ public final class ModuleSerializer extends AbstractSerializer<ModuleSerializer.
         .serialize(dataDef);
       case ConDef conDef -> new ConSerializer(builder, indent, nameGen)
         .serialize(conDef);
-      case PrimDef primDef -> throw new UnsupportedOperationException("TODO");
+      case PrimDef primDef -> serializePrim(primDef);
     }
   }
 
+  /** A primitive is bound to the {@link org.aya.primitive.PrimFactory} of the compilation when its module is loaded */
+  private void serializePrim(@NotNull PrimDef primDef) {
+    var className = javify(primDef.ref);
+    buildInnerClass(className, JitPrim.class, () -> {
+      appendLine(STR."public static final \{className} \{STATIC_FIELD_INSTANCE} = new \{className}();");
+      appendLine();
+      buildMethod(className, ImmutableSeq.empty(), "/*constructor*/", false, () ->
+        appendLine(STR."super(\{makeSub(CLASS_PRIMID, primDef.id.name())});"));
+    });
+  }
+
   private void doSerialize(ModuleResult unit, boolean isTopLevel) {
     var moduleName = javify(unit.name);
 
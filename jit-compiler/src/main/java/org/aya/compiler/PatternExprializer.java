@@ -49,7 +49,7 @@ public class PatternExprializer extends AbstractExprializer<Pat> {
         new TermExprializer(this.nameGen, ImmutableSeq.empty())
           .serialize(con.data()).result());
       case Pat.ShapedInt shapedInt -> makeNew(CLASS_PAT_INT,
-        Integer.toString(shapedInt.repr()),
+        makeBigInteger(shapedInt.repr()),
         getInstance(getReference(shapedInt.zero())),
         getInstance(getReference(shapedInt.suc())),
         serializeTerm(shapedInt.type()));
@@ -10,10 +10,12 @@ import kala.value.primitive.MutableIntValue;
 import org.aya.generic.NameGenerator;
 import org.aya.normalize.PatMatcher;
 import org.aya.normalize.PatMatcher.State;
+import org.aya.syntax.core.pat.CaseTree;
 import org.aya.syntax.core.pat.Pat;
 import org.aya.syntax.core.term.MetaPatTerm;
 import org.aya.util.error.Panic;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -34,23 +36,31 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
   static final @NotNull String CLASS_PAT_MATCHER = getJavaReference(PatMatcher.class);
 
   private final @NotNull ImmutableSeq<String> argNames;
+  /** The normalizer applied to a term right before it is looked into, null if the terms are already normalized */
+  private final @Nullable String normalizer;
   private final @NotNull Consumer<PatternSerializer> onStuck;
   private final @NotNull Consumer<PatternSerializer> onMismatch;
   private int bindCount = 0;
   private final boolean inferMeta;
+  /** Whether a stuck clause is skipped, otherwise it stops the matching, see {@link org.aya.generic.Modifier#Overlap} */
+  private final boolean orderIndependent;
 
   public PatternSerializer(
     @NotNull StringBuilder builder,
     int indent,
     @NotNull NameGenerator nameGen,
     @NotNull ImmutableSeq<String> argNames,
+    @Nullable String normalizer,
     boolean inferMeta,
+    boolean orderIndependent,
     @NotNull Consumer<PatternSerializer> onStuck,
     @NotNull Consumer<PatternSerializer> onMismatch
   ) {
     super(builder, indent, nameGen);
     this.argNames = argNames;
+    this.normalizer = normalizer;
     this.inferMeta = inferMeta;
+    this.orderIndependent = orderIndependent;
     this.onStuck = onStuck;
     this.onMismatch = onMismatch;
   }
@@ -112,7 +122,7 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
   ) {
     var tmpName = nameGen.nextName(null);
     buildUpdate(VARIABLE_SUBSTATE, "false");
-    buildLocalVar(CLASS_TERM, tmpName, term);
+    buildLocalVar(CLASS_TERM, tmpName, normalize(term));
 
     for (var pre : preContinuation) {
       buildIf(STR."! \{VARIABLE_SUBSTATE}", () -> {
@@ -146,7 +156,7 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
 
   private void matchInt(@NotNull Pat.ShapedInt pat, @NotNull String term) {
     buildIfInstanceElse(term, TermExprializer.CLASS_INTEGER, intTerm -> {
-      buildIf(STR."\{pat.repr()} == \{intTerm}.repr()", () -> {
+      buildIf(STR."\{makeBigInteger(pat.repr())}.equals(\{intTerm}.repr())", () -> {
         // Pat.ShapedInt provides no binds
         buildUpdate(VARIABLE_SUBSTATE, "true");
       });
@@ -167,6 +177,59 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
     doSerialize(pat, term, () -> doSerialize(pats.drop(1), terms.drop(1), continuation));
   }
 
+  /**
+   * Generate the decision tree, each occurrence is a local variable that is read at most once on every path.
+   * Constructors are compared by identity, which {@code switch} cannot do,
+   * so the head of the scrutinee is read once and tested against each branch in turn.
+   *
+   * @param occs the local variables of the occurrences that are in scope
+   */
+  private void doSerialize(@NotNull CaseTree.Node node, @NotNull String[] occs) {
+    switch (node) {
+      case CaseTree.Fail fail -> updateState(-fail.ordinal());
+      case CaseTree.Leaf(var clause, var binds) -> {
+        for (int i = 0; i < binds.length; i++)
+          appendLine(STR."\{VARIABLE_RESULT}.set(\{i}, \{occs[binds[i]]});");
+        updateState(clause + 1);
+      }
+      case CaseTree.Split(var occ, var branches, var otherwise, var stuck) -> {
+        // the normalized occurrence is shared with the leaves
+        if (normalizer != null) buildUpdate(occs[occ], normalize(occs[occ]));
+        buildIfInstanceElse(occs[occ], CLASS_CONCALLLIKE, conTerm -> {
+          var head = buildLocalVar(CLASS_CONDEFLIKE, nameGen.nextName(null), getCallInstance(conTerm));
+          doSerialize(branches.view(), head, conTerm, otherwise, occs);
+        }, () -> doSerialize(stuck, occs));
+      }
+      case CaseTree.Tuple(var occ, var firstOcc, var size, var body, var stuck) -> {
+        if (normalizer != null) buildUpdate(occs[occ], normalize(occs[occ]));
+        buildIfInstanceElse(occs[occ], CLASS_TUPLE, tupTerm -> {
+          var items = buildGenLocalVarsFromSeq(CLASS_TERM, STR."\{tupTerm}.items()", size);
+          items.forEachIndexed((i, item) -> occs[firstOcc + i] = item);
+          doSerialize(body, occs);
+        }, () -> doSerialize(stuck, occs));
+      }
+    }
+  }
+
+  private void doSerialize(
+    @NotNull SeqView<CaseTree.Branch> branches, @NotNull String head, @NotNull String conTerm,
+    @NotNull CaseTree.Node otherwise, @NotNull String[] occs
+  ) {
+    if (branches.isEmpty()) {
+      doSerialize(otherwise, occs);
+      return;
+    }
+    var branch = branches.getFirst();
+    buildIfElse(STR."\{head} == \{getInstance(getReference(branch.con()))}", () -> {
+      if (branch.arity() > 0) {
+        var conArgsTerm = buildLocalVar(TYPE_IMMTERMSEQ, nameGen.nextName(null), STR."\{conTerm}.conArgs()");
+        var args = buildGenLocalVarsFromSeq(CLASS_TERM, conArgsTerm, branch.arity());
+        args.forEachIndexed((i, arg) -> occs[branch.firstOcc() + i] = arg);
+      }
+      doSerialize(branch.body(), occs);
+    }, () -> doSerialize(branches.drop(1), head, conTerm, otherwise, occs));
+  }
+
   /// endregion Serializing
 
   /// region Java Source Code Generate API
@@ -184,6 +247,10 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
     buildIfElse(condition, continuation, () -> updateState(-state.ordinal()));
   }
 
+  private @NotNull String normalize(@NotNull String term) {
+    return normalizer == null ? term : STR."\{normalizer}.apply(\{term})";
+  }
+
   private void updateState(int state) {
     buildUpdate(VARIABLE_STATE, Integer.toString(state));
   }
@@ -210,7 +277,13 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
     buildLocalVar("int", VARIABLE_STATE, "0");
     buildLocalVar("boolean", VARIABLE_SUBSTATE, "false");
 
-    buildGoto(() -> unit.forEachIndexed((idx, clause) -> {
+    // metas are solved by matching the clauses one by one
+    var tree = inferMeta ? null : CaseTree.compile(unit.map(Matching::patterns), orderIndependent);
+    if (tree != null) {
+      var occs = new String[tree.occurrences()];
+      argNames.forEachIndexed((i, name) -> occs[i] = name);
+      doSerialize(tree.root(), occs);
+    } else buildGoto(() -> unit.forEachIndexed((idx, clause) -> {
       var jumpCode = idx + 1;
       bindCount = 0;
       doSerialize(
@@ -218,7 +291,8 @@ public final class PatternSerializer extends AbstractSerializer<ImmutableSeq<Pat
         argNames.view(),
         () -> updateState(jumpCode));
 
-      buildIf(STR."\{VARIABLE_STATE} > 0", this::buildBreak);
+      // a stuck clause stops ordered matching
+      buildIf(STR."\{VARIABLE_STATE} \{orderIndependent ? ">" : ">="} 0", this::buildBreak);
     }));
 
     // -1 ..= unit.size()
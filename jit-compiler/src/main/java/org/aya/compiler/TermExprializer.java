@@ -76,7 +76,7 @@ public class TermExprializer extends AbstractExprializer<Term> {
    * This code requires that {@link FnCall}, {@link RuleReducer.Fn} and {@link RuleReducer.Con}
    * {@code ulift} is the second parameter, {@code args.get(i)} is the {@code i + 3}th parameter
    *
-   * @param fixed whether {@param reducible} has fixed `invoke`
+   * @param fixed whether {@param reducible} has fixed `invoke`, which also takes a normalizer
    */
   private @NotNull String buildReducibleCall(
     @NotNull String reducible,
@@ -99,7 +99,7 @@ public class TermExprializer extends AbstractExprializer<Term> {
     var elevate = ulift > 0 ? STR.".elevate(\{ulift})" : "";
     var onStuck = makeNew(callName, callArgs);
     var finalArgs = fixed
-      ? flatArgs.view().prepended(onStuck).joinToString()
+      ? flatArgs.view().prepended(onStuck).prepended(NORMALIZER_IDENTITY).joinToString()
       : STR."\{onStuck}, \{makeImmutableSeq(CLASS_TERM, flatArgs)}";
 
     return STR."\{reducible}.invoke(\{finalArgs})\{elevate}";
@@ -184,9 +184,13 @@ public class TermExprializer extends AbstractExprializer<Term> {
         serializeToImmutableSeq(CLASS_TERM, items)
       );
       case SigmaTerm sigmaTerm -> throw new UnsupportedOperationException("TODO");
-      case PrimCall primCall -> throw new UnsupportedOperationException("TODO");
+      case PrimCall(var ref, var ulift, var args) -> makeNew(getJavaReference(PrimCall.class),
+        getCallInstance(getInstance(getReference(ref))),
+        Integer.toString(ulift),
+        serializeToImmutableSeq(CLASS_TERM, args)
+      );
       case IntegerTerm(var repr, var zero, var suc, var type) -> makeNew(CLASS_INTEGER,
-        Integer.toString(repr),
+        makeBigInteger(repr),
         getInstance(getReference(zero)),
         getInstance(getReference(suc)),
         doSerialize(type)
@@ -0,0 +1,153 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.primitive.ImmutableIntSeq;
+import org.aya.compiler.AyaSerializer;
+import org.aya.compiler.JitClassLoader;
+import org.aya.compiler.ModuleCompiler;
+import org.aya.normalize.Normalizer;
+import org.aya.resolve.module.DumbModuleLoader;
+import org.aya.syntax.compile.JitCon;
+import org.aya.syntax.compile.JitData;
+import org.aya.syntax.compile.JitDef;
+import org.aya.syntax.compile.JitFn;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.core.term.call.DataCall;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.core.term.repr.ListTerm;
+import org.aya.syntax.literate.CodeOptions;
+import org.aya.syntax.ref.ModulePath;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.aya.compiler.AbstractSerializer.javify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/** The classes emitted by {@link ModuleCompiler} must behave like the ones javac compiles from the java source */
+public class BytecodeSerializerTest {
+  @TempDir Path classRoot;
+
+  /** Loads the instance of a def, like {@link CompileTester#loadInstance} */
+  private interface Backend {
+    @NotNull JitDef load(@NotNull String... qualified);
+  }
+
+  private record Backends(@NotNull CompileTest.TyckResult result, @NotNull Backend source, @NotNull Backend bytecode) {
+    /** The normal forms of {@param build} must be the same under both backends */
+    void assertSame(@NotNull Function<Backend, Term> build) {
+      var normalizer = new Normalizer(result.info().makeTyckState());
+      var expected = normalizer.normalize(build.apply(source), CodeOptions.NormalizeMode.FULL);
+      var actual = normalizer.normalize(build.apply(bytecode), CodeOptions.NormalizeMode.FULL);
+      assertEquals(expected.debuggerOnlyToString(), actual.debuggerOnlyToString());
+    }
+
+    void assertSameSignature(@NotNull String... qualified) {
+      assertEquals(source.load(qualified).makePi().debuggerOnlyToString(),
+        bytecode.load(qualified).makePi().debuggerOnlyToString());
+    }
+  }
+
+  private @NotNull Backends compile(@Language("Aya") @NotNull String code) throws IOException {
+    var result = CompileTest.tyck(code);
+    var tester = new CompileTester(CompileTest.serializeFrom(result));
+    tester.compile();
+    var names = ModuleCompiler.compile(ModulePath.of(DumbModuleLoader.DUMB_MODULE_NAME),
+      result.defs(), result.info().shapeFactory(), classRoot);
+    assertNotNull(names);
+    var loader = new JitClassLoader();
+    loader.addRoot(classRoot);
+    return new Backends(result, tester::loadInstance, qualified -> {
+      try {
+        var clazz = loader.loadClass(STR."\{AyaSerializer.PACKAGE_BASE}.\{ImmutableSeq.from(qualified).joinToString("$")}");
+        return (JitDef) clazz.getField(AyaSerializer.STATIC_FIELD_INSTANCE).get(null);
+      } catch (ReflectiveOperationException e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
+
+  private static @NotNull Term nat(@NotNull Backend backend, int n) {
+    var O = (JitCon) backend.load("baka", "Nat", "O");
+    var S = (JitCon) backend.load("baka", "Nat", "S");
+    Term term = new ConCall(O, ImmutableSeq.empty(), 0, ImmutableSeq.empty());
+    for (var i = 0; i < n; i++) term = new ConCall(S, ImmutableSeq.empty(), 0, ImmutableSeq.of(term));
+    return term;
+  }
+
+  @Test public void plus() throws IOException {
+    var backends = compile("""
+      open data Nat | O | S Nat
+      open data Vec (n : Nat) Type
+      | O, A   => vnil
+      | S n, A => vcons A (Vec n A)
+
+      def plus (a b : Nat) : Nat elim a
+      | O => b
+      | S n => S (plus n b)
+      """);
+    backends.assertSameSignature("baka", "Nat");
+    backends.assertSameSignature("baka", "Nat", "S");
+    backends.assertSameSignature("baka", "Vec");
+    backends.assertSameSignature("baka", "Vec", "vcons");
+    backends.assertSameSignature("baka", "plus");
+    backends.assertSame(b -> ((JitFn) b.load("baka", "plus"))
+      .invoke(null, ImmutableSeq.of(nat(b, 2), nat(b, 3))));
+    // the index of vcons is matched by the compiled isAvailable
+    backends.assertSame(b -> {
+      var vcons = (JitCon) b.load("baka", "Vec", "vcons");
+      var available = vcons.isAvailable(ImmutableSeq.of(nat(b, 1), nat(b, 0)));
+      return available.isOk() ? available.get().getFirst() : nat(b, 0);
+    });
+  }
+
+  @Test public void patterns() throws IOException {
+    var backends = compile("""
+      open data Nat | O | S Nat
+      def f (a b : Nat) : Nat
+      | O, b => b
+      | S (S a), _ => a
+      | S O, b => S b
+      def g (a : Nat) : Nat
+      | 0 => 1
+      | S a => f a (g a)
+      """);
+    backends.assertSameSignature("baka", "f");
+    for (var i = 0; i < 4; i++) {
+      var n = i;
+      backends.assertSame(b -> ((JitFn) b.load("baka", "f")).invoke(null, ImmutableSeq.of(nat(b, n), nat(b, 2))));
+      backends.assertSame(b -> ((JitFn) b.load("baka", "g")).invoke(null, ImmutableSeq.of(nat(b, n))));
+    }
+  }
+
+  @Test public void treeSort() throws IOException {
+    var stream = BytecodeSerializerTest.class.getResourceAsStream("/TreeSort.aya");
+    assert stream != null;
+    var code = new String(stream.readAllBytes());
+    stream.close();
+    var backends = compile(code);
+    backends.assertSameSignature("baka", "tree_sortNat");
+
+    var random = new Random(114514L);
+    var xs = ImmutableIntSeq.fill(100, () -> random.nextInt(50));
+    backends.assertSame(b -> {
+      var nil = (JitCon) b.load("baka", "List", javify("[]"));
+      var cons = (JitCon) b.load("baka", "List", javify(":>"));
+      var NatCall = new DataCall((JitData) b.load("baka", "Nat"), 0, ImmutableSeq.empty());
+      var ListNatCall = new DataCall((JitData) b.load("baka", "List"), 0, ImmutableSeq.of(NatCall));
+      var O = (JitCon) b.load("baka", "Nat", "O");
+      var S = (JitCon) b.load("baka", "Nat", "S");
+      var list = new ListTerm(xs.mapToObj(i -> new IntegerTerm(i, O, S, NatCall)), nil, cons, ListNatCall);
+      return ((JitFn) b.load("baka", "tree_sortNat")).invoke(null, ImmutableSeq.of(list));
+    });
+  }
+}
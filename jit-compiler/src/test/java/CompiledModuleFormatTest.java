@@ -0,0 +1,53 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+
+import org.aya.compiler.CompiledModule;
+import org.aya.compiler.CompiledModuleFormat;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledModuleFormatTest {
+  @TempDir Path dir;
+
+  private static @NotNull CompiledModule module() {
+    var result = CompileTest.tyck("""
+      open data Nat | O | S Nat
+      def infixl + (a b : Nat) : Nat elim a
+      | O => b
+      | S n => S (n + b)
+      def infixl * (a b : Nat) : Nat elim a
+      | O => O
+      | S n => b + n * b
+      tighter +
+      """);
+    return CompiledModule.from(result.info());
+  }
+
+  @Test public void roundTrip() throws IOException {
+    var module = module();
+    var bytes = CompiledModuleFormat.write(module);
+    assertEquals(module, CompiledModuleFormat.read(ByteBuffer.wrap(bytes)));
+    var corePath = dir.resolve("Nat.ayac");
+    Files.write(corePath, bytes);
+    assertTrue(CompiledModuleFormat.isCurrent(corePath));
+    assertEquals(module, CompiledModuleFormat.read(corePath));
+  }
+
+  @Test public void staleVersion() throws IOException {
+    var bytes = CompiledModuleFormat.write(module());
+    ByteBuffer.wrap(bytes).putInt(4, CompiledModuleFormat.VERSION - 1);
+    assertNull(CompiledModuleFormat.read(ByteBuffer.wrap(bytes)));
+    var corePath = dir.resolve("Nat.ayac");
+    Files.write(corePath, bytes);
+    assertFalse(CompiledModuleFormat.isCurrent(corePath));
+    assertNull(CompiledModuleFormat.read(corePath));
+  }
+}
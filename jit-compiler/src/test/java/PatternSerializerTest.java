@@ -0,0 +1,81 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import org.aya.syntax.compile.JitCon;
+import org.aya.syntax.compile.JitFn;
+import org.aya.syntax.core.pat.CaseTree;
+import org.aya.syntax.core.term.FreeTerm;
+import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.call.ConCall;
+import org.aya.syntax.ref.LocalVar;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PatternSerializerTest {
+  /** Clauses for each pair of constructors but the last one, too many for a {@link CaseTree} */
+  @Test public void largeOrdered() {
+    var size = 24;
+    var cons = ImmutableSeq.fill(size, i -> STR."c\{i}");
+    var clauses = ImmutableSeq.fill(size - 1, i -> i).flatMap(i ->
+      ImmutableSeq.fill(size, j -> STR."| c\{i}, c\{j} => c\{(i + j) % size}"));
+    var result = CompileTest.tyck(STR."""
+      open data D \{cons.map(c -> STR."| \{c}").joinToString(" ")}
+      def f (a b : D) : D
+      \{clauses.joinToString("\n")}
+      | _, b => b
+      """);
+    assertTrue(clauses.size() > CaseTree.MAX_SIZE);
+
+    var tester = new CompileTester(CompileTest.serializeFrom(result));
+    tester.compile();
+    JitFn f = tester.loadInstance("baka", "f");
+    IntFunction<Term> con = i -> {
+      JitCon c = tester.loadInstance("baka", "D", STR."c\{i}");
+      return new ConCall(c, ImmutableSeq.empty(), 0, ImmutableSeq.empty());
+    };
+
+    var stuck = new FreeTerm(new LocalVar("stuck"));
+    assertEquals(con.apply(12), f.invoke(stuck, ImmutableSeq.of(con.apply(5), con.apply(7))));
+    assertEquals(con.apply(7), f.invoke(stuck, ImmutableSeq.of(con.apply(size - 1), con.apply(7))));
+    // the first clause is stuck, the catch-all must not be tried in an ordered function
+    var x = new FreeTerm(new LocalVar("x"));
+    assertSame(stuck, f.invoke(stuck, ImmutableSeq.of(x, con.apply(7))));
+  }
+
+  /** The arguments are normalized by the given normalizer, only where a pattern looks into them */
+  @Test public void normalizeOnDemand() {
+    var result = CompileTest.tyck("""
+      open data Nat | zero | suc Nat
+      def f (a b : Nat) : Nat
+      | zero, b => b
+      | suc (suc a), _ => a
+      | suc zero, b => b
+      """);
+    var tester = new CompileTester(CompileTest.serializeFrom(result));
+    tester.compile();
+    JitFn f = tester.loadInstance("baka", "f");
+    JitCon zero = tester.loadInstance("baka", "Nat", "zero");
+    JitCon suc = tester.loadInstance("baka", "Nat", "suc");
+    var zeroCall = new ConCall(zero, ImmutableSeq.empty(), 0, ImmutableSeq.empty());
+    var x = new FreeTerm(new LocalVar("x"));
+    var y = new FreeTerm(new LocalVar("y"));
+    var inner = new FreeTerm(new LocalVar("inner"));
+    var forced = MutableList.<Term>create();
+    UnaryOperator<Term> normalizer = term -> {
+      forced.append(term);
+      if (term == x) return new ConCall(suc, ImmutableSeq.empty(), 0, ImmutableSeq.of(inner));
+      if (term == inner) return new ConCall(suc, ImmutableSeq.empty(), 0, ImmutableSeq.of(zeroCall));
+      return term;
+    };
+    var stuck = new FreeTerm(new LocalVar("stuck"));
+    assertSame(zeroCall, f.invoke(normalizer, stuck, ImmutableSeq.of(x, y)));
+    // the second argument is never looked into
+    assertEquals(ImmutableSeq.of(x, inner), forced.toImmutableSeq());
+  }
+}
@@ -44,6 +44,7 @@ import org.aya.util.reporter.Reporter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
 import java.util.stream.Collectors;
 
 import static org.aya.parser.AyaPsiElementTypes.*;
@@ -510,7 +511,7 @@ public record AyaProducer(
       return unreachable(node);
     }
     if (node.is(LIT_INT_EXPR)) try {
-      return new WithPos<>(pos, new Expr.LitInt(node.tokenText().toInt()));
+      return new WithPos<>(pos, new Expr.LitInt(new BigInteger(node.tokenText().toString())));
     } catch (NumberFormatException ignored) {
       reporter.report(new ParseError(pos, "Unsupported integer literal `" + node.tokenText() + "`"));
       throw new ParsingInterruptedException();
@@ -767,7 +768,7 @@ public record AyaProducer(
         }).toImmutableSeq());
     }
     if (node.peekChild(NUMBER) != null)
-      return new Pattern.Number(node.tokenText().toInt());
+      return new Pattern.Number(new BigInteger(node.tokenText().toString()));
     if (node.peekChild(LPAREN) != null) return Pattern.Absurd.INSTANCE;
     if (node.peekChild(CALM_FACE) != null) return Pattern.CalmFace.INSTANCE;
     return unreachable(node);
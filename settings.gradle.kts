@@ -23,4 +23,5 @@ include(
   "producer",
   "ide",
   "ide-lsp",
+  "benchmark",
 )
@@ -22,6 +22,7 @@ public interface Constants {
   @NotNull @NonNls String AYA_LITERATE_POSTFIX = ".aya.md";
   @NotNull Pattern AYA_POSTFIX_PATTERN = Pattern.compile("(\\.aya$)|(\\.aya\\.md$)");
   @NotNull @NonNls String AYAC_POSTFIX = ".ayac";
+  @NotNull @NonNls String AYAH_POSTFIX = ".ayah";
   @NotNull @NonNls String AYA_JSON = "aya.json";
 
   @NotNull @NonNls String ALTERNATIVE_EMPTY = "empty";
@@ -13,8 +13,9 @@ import org.aya.syntax.core.term.call.DataCall;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
 import java.util.function.BiPredicate;
-import java.util.function.IntUnaryOperator;
+import java.util.function.UnaryOperator;
 
 /**
  * <h2> What should I do after I creating a new Shape? </h2>
@@ -40,16 +41,16 @@ public interface Shaped<T> {
   non-sealed interface Nat<T extends AyaDocile> extends Inductive<T> {
     @NotNull T makeZero();
     @NotNull T makeSuc(@NotNull T t);
-    @NotNull T destruct(int repr);
-    int repr();
+    @NotNull T destruct(@NotNull BigInteger repr);
+    @NotNull BigInteger repr();
 
     default @Override @NotNull T constructorForm() {
-      int repr = repr();
-      if (repr == 0) return makeZero();
-      return makeSuc(destruct(repr - 1));
+      var repr = repr();
+      if (repr.signum() == 0) return makeZero();
+      return makeSuc(destruct(repr.subtract(BigInteger.ONE)));
     }
 
-    @NotNull Shaped.Nat<T> map(@NotNull IntUnaryOperator f);
+    @NotNull Shaped.Nat<T> map(@NotNull UnaryOperator<BigInteger> f);
   }
 
   non-sealed interface Bool<T extends AyaDocile> extends Inductive<T> {
@@ -332,7 +332,7 @@ public abstract class BasePrettier<Term extends AyaDocile> {
     return Link.cross(ref.fileModule().module(), location);
   }
 
-  public static @NotNull Doc linkLit(int literal, @NotNull AnyDef ref, @NotNull Style color) {
+  public static @NotNull Doc linkLit(@NotNull Object literal, @NotNull AnyDef ref, @NotNull Style color) {
     return Doc.linkRef(Doc.styled(color, Doc.plain(String.valueOf(literal))), linkIdOf(ref));
   }
 
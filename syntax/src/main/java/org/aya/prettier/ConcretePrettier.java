@@ -18,6 +18,7 @@ import org.aya.syntax.concrete.Pattern;
 import org.aya.syntax.concrete.stmt.*;
 import org.aya.syntax.concrete.stmt.Stmt.Accessibility;
 import org.aya.syntax.concrete.stmt.decl.*;
+import org.aya.syntax.core.def.ConDef;
 import org.aya.syntax.ref.DefVar;
 import org.aya.syntax.ref.LocalVar;
 import org.aya.util.Arg;
@@ -252,7 +253,9 @@ public class ConcretePrettier extends BasePrettier<Expr> {
       case Pattern.CalmFace _ -> Doc.bracedUnless(Doc.plain(Constants.ANONYMOUS_PREFIX), licit);
       case Pattern.Number number -> Doc.bracedUnless(Doc.plain(String.valueOf(number.number())), licit);
       case Pattern.Con con -> {
-        var name = refVar(con.resolved().data());
+        var name = con.resolved().data() instanceof ConDef.Delegate delegate
+          ? refVar(delegate.ref)
+          : refVar(con.resolved().data());
         var ctorDoc = con.params().isEmpty()
           ? name
           : Doc.sep(name, visitMaybeConPatterns(con.params(), Outer.AppSpine, Doc.ALT_WS));
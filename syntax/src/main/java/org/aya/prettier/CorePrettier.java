@@ -68,7 +68,7 @@ public class CorePrettier extends BasePrettier<Term> {
         case Object unknown -> Doc.plain(unknown.toString());
       };
       case TupTerm(var items) -> Doc.parened(argsDoc(options, items.view().map(Arg::ofExplicitly)));
-      case IntegerTerm shaped -> shaped.repr() == 0
+      case IntegerTerm shaped -> shaped.repr().signum() == 0
         ? linkLit(0, shaped.zero(), CON)
         : linkLit(shaped.repr(), shaped.suc(), CON);
       case ListTerm shaped -> {
@@ -257,7 +257,7 @@ public class CorePrettier extends BasePrettier<Term> {
       case Pat.Absurd _ -> Doc.bracedUnless(PAT_ABSURD, licit);
       case Pat.Tuple tuple -> Doc.licit(licit,
         Doc.commaList(tuple.elements().view().map(sub -> pat(sub, true, Outer.Free))));
-      case Pat.ShapedInt lit -> Doc.bracedUnless(lit.repr() == 0
+      case Pat.ShapedInt lit -> Doc.bracedUnless(lit.repr().signum() == 0
           ? linkLit(0, lit.zero(), CON)
           : linkLit(lit.repr(), lit.suc(), CON),
         licit);
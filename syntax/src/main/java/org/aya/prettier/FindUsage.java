@@ -5,11 +5,14 @@ package org.aya.prettier;
 import org.aya.prettier.BasePrettier.Usage.Ref;
 import org.aya.syntax.core.term.FreeTerm;
 import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TermInfo;
+import org.aya.syntax.core.term.TermWalker;
 import org.aya.syntax.core.term.call.MetaCall;
 import org.aya.syntax.ref.LocalVar;
 import org.aya.syntax.ref.MetaVar;
 import org.aya.util.Pair;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * It is in this module instead of somewhere in base because it's needed by {@link CorePrettier},
@@ -39,20 +42,42 @@ public record FindUsage(@NotNull Ref ref, @NotNull Accumulator accumulator) {
   }
 
   public void find(int index, @NotNull Term term) {
+    if (skip(term)) return;
+    var before = accumulator.inMeta;
+    if (term instanceof MetaCall) accumulator.inMeta = true;
+    TermWalker.descent(term, new TermWalker.Visitor() {
+      private int metas = 0;
+
+      @Override public @Nullable Term pre(int depth, @NotNull Term t) {
+        if (skip(t)) return t;
+        if (t instanceof MetaCall) {
+          metas++;
+          accumulator.inMeta = true;
+        }
+        return null;
+      }
+
+      @Override public @NotNull Term post(int depth, @NotNull Term t) {
+        if (t instanceof MetaCall) accumulator.inMeta = before || --metas > 0;
+        return t;
+      }
+    });
+    accumulator.inMeta = before;
+  }
+
+  /** @return true if the usages in {@param term} are all counted without looking into its children */
+  private boolean skip(@NotNull Term term) {
     switch (new Pair<>(term, ref)) {
       case Pair(FreeTerm(_), Ref.AnyFree _) -> accumulator.found();
       case Pair(FreeTerm(var var), Ref.Free(var fvar)) when var == fvar -> accumulator.found();
       case Pair(MetaCall meta, Ref.Meta(var fvar)) when meta.ref() == fvar -> accumulator.found();
+      case Pair(_, Ref.Meta _) when !TermInfo.hasMeta(term) -> { }
+      case Pair(_, Ref.Free _), Pair(_, Ref.AnyFree _) when !TermInfo.hasFree(term) -> { }
       default -> {
-        var before = accumulator.inMeta;
-        if (term instanceof MetaCall) accumulator.inMeta = true;
-        term.descent((l, t) -> {
-          find(index + l, t);
-          return t;
-        });
-        accumulator.inMeta = before;
+        return false;
       }
     }
+    return true;
   }
 
   public int apply(int index, @NotNull Term term) {
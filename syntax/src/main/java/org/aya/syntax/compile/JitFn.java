@@ -8,6 +8,8 @@ import org.aya.syntax.core.def.FnDefLike;
 import org.aya.syntax.core.term.Term;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.function.UnaryOperator;
+
 public abstract non-sealed class JitFn extends JitDef implements FnDefLike, Reducible {
   protected JitFn(int telescopeSize, boolean[] telescopeLicit, String[] telescopeName) {
     super(telescopeSize, telescopeLicit, telescopeName);
@@ -15,6 +17,13 @@ public abstract non-sealed class JitFn extends JitDef implements FnDefLike, Redu
 
   /**
    * Unfold this function
+   *
+   * @param normalizer applied to an argument, or a part of it, right before a pattern looks into it
    */
-  @Override public abstract Term invoke(Term stuck, @NotNull Seq<Term> args);
+  public abstract Term invoke(@NotNull UnaryOperator<Term> normalizer, Term stuck, @NotNull Seq<Term> args);
+
+  /** Unfold this function with the arguments as they are */
+  @Override public Term invoke(Term stuck, @NotNull Seq<Term> args) {
+    return invoke(UnaryOperator.identity(), stuck, args);
+  }
 }
@@ -0,0 +1,31 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.compile;
+
+import org.aya.syntax.concrete.stmt.decl.PrimDecl;
+import org.aya.syntax.core.def.PrimDef;
+import org.aya.syntax.ref.DefVar;
+import org.aya.util.error.Panic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A compiled primitive. Unlike {@link JitDef}, it carries no definition:
+ * a primitive is owned by the {@code PrimFactory} of the compilation,
+ * and the compiled code refers to it through {@link #ref()},
+ * which is bound when the module defining the primitive is loaded.
+ */
+public abstract class JitPrim {
+  public final @NotNull PrimDef.ID id;
+  private volatile @Nullable DefVar<PrimDef, PrimDecl> ref;
+
+  protected JitPrim(@NotNull PrimDef.ID id) { this.id = id; }
+
+  public @NotNull DefVar<PrimDef, PrimDecl> ref() {
+    var ref = this.ref;
+    if (ref == null) throw new Panic(STR."Primitive \{id} is used before its module is loaded");
+    return ref;
+  }
+
+  public void bind(@NotNull DefVar<PrimDef, PrimDecl> ref) { this.ref = ref; }
+}
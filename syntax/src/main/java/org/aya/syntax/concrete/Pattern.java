@@ -9,11 +9,13 @@ import org.aya.generic.AyaDocile;
 import org.aya.prettier.BasePrettier;
 import org.aya.prettier.ConcretePrettier;
 import org.aya.pretty.doc.Doc;
+import org.aya.syntax.compile.JitCon;
 import org.aya.syntax.concrete.stmt.QualifiedID;
-import org.aya.syntax.concrete.stmt.decl.DataCon;
 import org.aya.syntax.core.def.ConDef;
+import org.aya.syntax.core.def.ConDefLike;
 import org.aya.syntax.core.term.Term;
-import org.aya.syntax.ref.DefVar;
+import org.aya.syntax.ref.AnyVar;
+import org.aya.syntax.ref.CompiledVar;
 import org.aya.syntax.ref.LocalVar;
 import org.aya.util.Arg;
 import org.aya.util.ForLSP;
@@ -22,6 +24,8 @@ import org.aya.util.prettier.PrettierOptions;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
+
 /**
  * Patterns in the concrete syntax.
  *
@@ -48,7 +52,7 @@ public sealed interface Pattern extends AyaDocile {
     @Override public void forEach(@NotNull PosedConsumer<@NotNull Pattern> f) { patterns.forEach(f::accept); }
   }
 
-  record Number(int number) implements Pattern {
+  record Number(@NotNull BigInteger number) implements Pattern {
     @Override public void forEach(@NotNull PosedConsumer<@NotNull Pattern> f) { }
     @Override public @NotNull Number descent(@NotNull PosedUnaryOperator<@NotNull Pattern> f) { return this; }
   }
@@ -79,14 +83,23 @@ public sealed interface Pattern extends AyaDocile {
     @Override public @NotNull Bind descent(@NotNull PosedUnaryOperator<@NotNull Pattern> f) { return this; }
   }
 
+  /** @param resolved either a constructor in source, or a compiled one */
   record Con(
-    @NotNull WithPos<@NotNull DefVar<ConDef, DataCon>> resolved,
+    @NotNull WithPos<@NotNull ConDefLike> resolved,
     @NotNull ImmutableSeq<Arg<WithPos<Pattern>>> params
   ) implements Pattern {
-    public Con(@NotNull SourcePos pos, @NotNull DefVar<ConDef, DataCon> maybe) {
+    public Con(@NotNull SourcePos pos, @NotNull ConDefLike maybe) {
       this(new WithPos<>(pos, maybe), ImmutableSeq.empty());
     }
 
+    /** @return the constructor as it is referred to in an {@link Expr.Ref} */
+    public @NotNull AnyVar resolvedVar() {
+      return switch (resolved.data()) {
+        case ConDef.Delegate delegate -> delegate.ref;
+        case JitCon jit -> new CompiledVar(jit);
+      };
+    }
+
     public @NotNull Con update(@NotNull ImmutableSeq<Arg<WithPos<Pattern>>> params) {
       return params.sameElements(params(), true) ? this : new Con(resolved, params);
     }
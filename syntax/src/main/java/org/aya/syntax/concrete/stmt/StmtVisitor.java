@@ -117,7 +117,7 @@ public interface StmtVisitor extends Consumer<Stmt> {
   default void visitPattern(@NotNull SourcePos pos, @NotNull Pattern pat) {
     switch (pat) {
       case Pattern.Con con -> {
-        var resolvedVar = con.resolved().data();
+        var resolvedVar = con.resolvedVar();
         visitVarRef(con.resolved().sourcePos(), resolvedVar, lazyType(resolvedVar));
       }
       case Pattern.Bind bind -> visitVarDecl(pos, bind.bind(), LazyValue.of(bind.type()));
@@ -2,10 +2,9 @@
 // Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
 package org.aya.syntax.core;
 
+import kala.collection.immutable.ImmutableSeq;
 import kala.function.IndexedFunction;
-import org.aya.syntax.core.term.FreeTerm;
-import org.aya.syntax.core.term.LocalTerm;
-import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.*;
 import org.aya.syntax.ref.LocalVar;
 import org.jetbrains.annotations.NotNull;
 
@@ -18,6 +17,8 @@ import java.util.function.UnaryOperator;
  * Note that you shouldn't supply a {@link LocalTerm} to "DeBruijn Index"-lize a {@link Closure},
  * since it may contain another {@link Closure}, the safe way is to supply a {@link FreeTerm} then bind it,
  * see {@link Jit#toLam()}
+ *
+ * @see Env
  */
 public sealed interface Closure extends UnaryOperator<Term> {
   static @NotNull Closure mkConst(@NotNull Term term) { return new Jit(_ -> term); }
@@ -31,6 +32,12 @@ public sealed interface Closure extends UnaryOperator<Term> {
   @Override Term apply(Term term);
   default @NotNull Term apply(LocalVar var) { return apply(new FreeTerm(var)); }
 
+  /**
+   * Substitute {@param args} for the loose indices of the body from 1 (index 0 is the bound one),
+   * without traversing the body, see {@link Env}.
+   */
+  @NotNull Closure defer(@NotNull ImmutableSeq<Term> args);
+
   // NbE !!!!!!
   record Jit(@NotNull UnaryOperator<Term> lam) implements Closure {
     public @NotNull Idx toLam() {
@@ -39,6 +46,7 @@ public sealed interface Closure extends UnaryOperator<Term> {
     }
     @Override public Closure descent(IndexedFunction<Term, Term> f) { return toLam().descent(f); }
     @Override public Term apply(Term term) { return lam.apply(term); }
+    @Override public @NotNull Closure defer(@NotNull ImmutableSeq<Term> args) { return toLam().defer(args); }
   }
 
   record Idx(Term body) implements Closure {
@@ -48,6 +56,49 @@ public sealed interface Closure extends UnaryOperator<Term> {
       return new Idx(result);
     }
 
-    @Override public Term apply(Term term) { return body.instantiate(term); }
+    @Override public Term apply(Term term) { return Env.instantiate(body, ImmutableSeq.of(term)); }
+    @Override public @NotNull Closure defer(@NotNull ImmutableSeq<Term> args) {
+      if (args.isEmpty() || TermInfo.looseBound(body) <= 1) return this;
+      return new Env(body, args);
+    }
+  }
+
+  /**
+   * An explicit substitution: the closure {@code Idx(body.replaceAllFrom(1, env))}, but the substitution
+   * is performed only when the body is inspected, that is, in {@link #apply} and {@link #descent}.
+   * Applying a closure whose body is a {@link LamTerm} or a {@link PiTerm} defers the substitution to the inner closure,
+   * so applying a curried function to n arguments, or instantiating a pi telescope, traverses the innermost body once
+   * instead of n times.
+   *
+   * {@link #descent} has to perform the substitution, so the traversals that skip a term by its
+   * {@link TermInfo}, like zonking and {@link org.aya.prettier.FindUsage}, look into an environment closure
+   * only when it has something to change, and {@link TermInfo} computes the information without descending.
+   *
+   * @param env the terms of index 1, 2, ... in {@param body}, they have no loose indices
+   */
+  record Env(@NotNull Term body, @NotNull ImmutableSeq<Term> env) implements Closure {
+    public @NotNull Idx toIdx() { return new Idx(body.replaceAllFrom(1, env)); }
+    @Override public Closure descent(IndexedFunction<Term, Term> f) {
+      var idx = toIdx();
+      var result = idx.descent(f);
+      return result == idx ? this : result;
+    }
+
+    @Override public Term apply(Term term) { return instantiate(body, env.prepended(term)); }
+
+    /** Same as {@code toIdx().defer(args)}, an index of the body is replaced by the first substitution that covers it */
+    @Override public @NotNull Closure defer(@NotNull ImmutableSeq<Term> args) {
+      if (args.sizeLessThanOrEquals(env.size())) return this;
+      return new Env(body, env.appendedAll(args.drop(env.size())));
+    }
+
+    /** {@code body.instantiateAll(args)}, which substitutes the first layer of {@param body} now and defers the rest */
+    private static @NotNull Term instantiate(@NotNull Term body, @NotNull ImmutableSeq<Term> args) {
+      return switch (body) {
+        case LamTerm(var inner) -> new LamTerm(inner.defer(args));
+        case PiTerm(var param, var cod) -> new PiTerm(param.replaceAllFrom(0, args), cod.defer(args));
+        default -> body.replaceAllFrom(0, args);
+      };
+    }
   }
 }
@@ -6,19 +6,61 @@ import kala.collection.immutable.ImmutableSeq;
 import kala.control.Either;
 import org.aya.generic.Modifier;
 import org.aya.syntax.concrete.stmt.decl.FnDecl;
+import org.aya.syntax.core.pat.CaseTree;
 import org.aya.syntax.core.term.Term;
+import org.aya.syntax.core.term.TermWalker;
+import org.aya.syntax.core.term.call.FnCall;
 import org.aya.syntax.ref.DefVar;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.EnumSet;
 import java.util.function.Function;
 
+/**
+ * @param tree   the clauses compiled to a decision tree, null if the body is an expression,
+ *               or the clauses are not worth compiling, see {@link CaseTree#compile}
+ * @param height one more than the largest height of the functions called in the body, see {@link #height(Either)},
+ *               the unifier unfolds the higher one of two different functions first
+ */
 public record FnDef(
   @NotNull DefVar<FnDef, FnDecl> ref,
   @NotNull EnumSet<Modifier> modifiers,
-  @NotNull Either<Term, ImmutableSeq<Term.Matching>> body
+  @NotNull Either<Term, ImmutableSeq<Term.Matching>> body,
+  @Nullable CaseTree tree,
+  int height
 ) implements TopLevelDef {
   public FnDef { ref.core = this; }
+  public FnDef(
+    @NotNull DefVar<FnDef, FnDecl> ref,
+    @NotNull EnumSet<Modifier> modifiers,
+    @NotNull Either<Term, ImmutableSeq<Term.Matching>> body
+  ) {
+    this(ref, modifiers, body, body.isRight()
+      ? CaseTree.compile(body.getRightValue().map(Term.Matching::patterns), modifiers.contains(Modifier.Overlap))
+      : null, height(body));
+  }
+
+  /**
+   * @return one more than the largest height of the checked functions called in {@param body},
+   * compiled functions and the functions being checked together with it count as 0
+   */
+  public static int height(@NotNull Either<Term, ImmutableSeq<Term.Matching>> body) {
+    var height = new int[]{0};
+    var visitor = (TermWalker.Visitor) (_, term) -> {
+      if (term instanceof FnCall(FnDef.Delegate delegate, _, _) && delegate.core() != null)
+        height[0] = Math.max(height[0], delegate.core().height());
+      return null;
+    };
+    var terms = body.isLeft()
+      ? ImmutableSeq.of(body.getLeftValue())
+      : body.getRightValue().map(Term.Matching::body);
+    for (var term : terms) {
+      visitor.pre(0, term);
+      TermWalker.descent(term, visitor);
+    }
+    return height[0] + 1;
+  }
 
   public static <T> Function<Either<Term, ImmutableSeq<Term.Matching>>, T>
   factory(Function<Either<Term, ImmutableSeq<Term.Matching>>, T> function) {
@@ -16,6 +16,8 @@ import org.aya.util.error.WithPos;
 import org.aya.util.prettier.PrettierOptions;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.function.UnaryOperator;
 
 /**
@@ -40,8 +42,18 @@ public record Signature(
    * @see #bindTele(SeqView)
    */
   public @NotNull Signature bindAll(@NotNull SeqView<LocalVar> vars) {
-    // omg, construct [vars.size()] objects!!
-    return vars.foldLeftIndexed(this, (idx, acc, var) -> acc.bindAt(var, idx));
+    var indices = new IdentityHashMap<LocalVar, Integer>();
+    vars.forEachIndexed((idx, var) -> indices.putIfAbsent(var, idx));
+    return bindAllAt(indices);
+  }
+
+  /** @see Term#bindAllAt */
+  private @NotNull Signature bindAllAt(@NotNull Map<LocalVar, Integer> indices) {
+    if (indices.isEmpty()) return this;
+    var boundParam = param.mapIndexed((i, p) ->
+      p.replace(p.data().descent(t -> t.bindAllAt(indices, i))));
+    var boundResult = result.bindAllAt(indices, param.size());
+    return new Signature(boundParam, boundResult);
   }
 
   public @NotNull Signature descent(@NotNull UnaryOperator<org.aya.syntax.core.term.Term> f) {
@@ -57,7 +69,7 @@ public record Signature(
    *
    * @param vars telescope
    */
-  public @NotNull Signature bindTele(@NotNull SeqView<LocalVar> vars) { return bindAll(vars.reversed()); }
+  public @NotNull Signature bindTele(@NotNull SeqView<LocalVar> vars) { return bindAllAt(Term.teleIndices(vars)); }
   @Override public @NotNull Doc toDoc(@NotNull PrettierOptions options) {
     return Doc.sep(Doc.sep(param.view().map(p -> p.data().toDoc(options))), Tokens.ARROW, result.toDoc(options));
   }
@@ -0,0 +1,326 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.pat;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import org.aya.syntax.core.def.ConDefLike;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A decision tree compiled from the patterns of clauses, where each scrutinee is inspected at most once on every path.
+ * It agrees with matching the clauses one by one from left to right:
+ * a clause fails with its leftmost failing pattern, and a stuck clause stops the matching
+ * unless the clauses are order-independent, in which case it is skipped.
+ * <p>
+ * Scrutinees are referred by occurrences, the arguments are {@code 0 ..< argc},
+ * and the arguments of a constructor or the elements of a tuple are given fresh occurrences.
+ *
+ * @param occurrences the number of occurrences used by {@param root}
+ * @see #compile
+ */
+public record CaseTree(@NotNull Node root, int occurrences) {
+  /** Larger trees are not worth it, the clauses are better matched one by one */
+  public static final int MAX_SIZE = 512;
+
+  public sealed interface Node { }
+
+  public enum Fail implements Node {
+    /** Some pattern tries to split a non-constructor */
+    Stuck,
+    /** No clause matches */
+    Mismatch
+  }
+
+  /** @param binds the occurrences of the bindings of the clause, in {@link Pat#consumeBindings} order */
+  public record Leaf(int clause, int @NotNull [] binds) implements Node { }
+
+  /**
+   * Inspect the constructor of {@param occ}
+   *
+   * @param otherwise if the constructor is not any of {@param branches}
+   * @param stuck     if {@param occ} is not a constructor call
+   */
+  public record Split(
+    int occ, @NotNull ImmutableSeq<Branch> branches,
+    @NotNull Node otherwise, @NotNull Node stuck
+  ) implements Node { }
+
+  /** The arguments of {@param con} are occurrences {@code firstOcc ..< firstOcc + arity} */
+  public record Branch(@NotNull ConDefLike con, int firstOcc, int arity, @NotNull Node body) { }
+
+  /** The elements of a tuple {@param occ} are occurrences {@code firstOcc ..< firstOcc + size} */
+  public record Tuple(int occ, int firstOcc, int size, @NotNull Node body, @NotNull Node stuck) implements Node { }
+
+  /**
+   * @param clauses the patterns of each clause, all of size {@code argc}
+   * @return null if some pattern is not supported, or the tree exceeds {@link #MAX_SIZE}
+   */
+  public static @Nullable CaseTree compile(@NotNull ImmutableSeq<ImmutableSeq<Pat>> clauses, boolean orderIndependent) {
+    if (clauses.isEmpty()) return null;
+    var argc = clauses.getFirst().size();
+    var rows = MutableList.<Row>create();
+    for (int i = 0; i < clauses.size(); i++) {
+      var counter = new int[1];
+      var cells = MutableList.<Cell>create();
+      for (var pat : clauses.get(i)) {
+        var cell = Cell.from(pat, counter);
+        if (cell == null) return null;
+        cells.append(cell);
+      }
+      var binds = new int[counter[0]];
+      Arrays.fill(binds, -1);
+      rows.append(new Row(i, cells.toImmutableSeq(), binds));
+    }
+    var builder = new Builder(orderIndependent, argc);
+    try {
+      var root = builder.compile(ImmutableSeq.fill(argc, i -> i), rows.toImmutableSeq());
+      return new CaseTree(root, builder.occurrences);
+    } catch (TooLarge _) {
+      return null;
+    }
+  }
+
+  /// region Compiling
+
+  /** Patterns with their bindings numbered in {@link Pat#consumeBindings} order */
+  private sealed interface Cell {
+    /** @param bind the index of the binding, -1 if nothing is bound */
+    record Wild(int bind) implements Cell { }
+    record Con(@NotNull ConDefLike con, @NotNull ImmutableSeq<Cell> args) implements Cell { }
+    record Tup(@NotNull ImmutableSeq<Cell> elements) implements Cell { }
+    /** Kept as is, so that a large literal unfolds one constructor at a time */
+    record Int(@NotNull Pat.ShapedInt pat) implements Cell { }
+    enum Absurd implements Cell { INSTANCE }
+
+    Wild ANY = new Wild(-1);
+
+    static @Nullable Cell from(@NotNull Pat pat, int @NotNull [] counter) {
+      return switch (pat) {
+        case Pat.Bind _ -> new Wild(counter[0]++);
+        case Pat.Absurd _ -> Absurd.INSTANCE;
+        case Pat.ShapedInt lit -> new Int(lit);
+        case Pat.Con con -> {
+          var args = MutableList.<Cell>create();
+          for (var arg : con.args()) {
+            var cell = from(arg, counter);
+            if (cell == null) yield null;
+            args.append(cell);
+          }
+          yield new Con(con.ref(), args.toImmutableSeq());
+        }
+        case Pat.Tuple tuple -> {
+          var elements = MutableList.<Cell>create();
+          for (var element : tuple.elements()) {
+            var cell = from(element, counter);
+            if (cell == null) yield null;
+            elements.append(cell);
+          }
+          yield new Tup(elements.toImmutableSeq());
+        }
+        case Pat.Meta _ -> null;
+      };
+    }
+
+    /** @return the constructor form of a literal */
+    static @NotNull Con unfold(@NotNull Pat.ShapedInt lit) {
+      return switch (lit.constructorForm()) {
+        case Pat.Con con -> new Con(con.ref(), con.args().<Cell>map(arg -> arg instanceof Pat.ShapedInt inner
+          ? new Int(inner) : Cell.ANY));
+        default -> throw new IllegalStateException("Constructor form of a literal should be a constructor");
+      };
+    }
+  }
+
+  /**
+   * A clause with its remaining patterns, each of them is matched against the occurrence in the same column.
+   * A row with {@code clause == -1} stands for a stuck clause in ordered matching, it ends the matching.
+   *
+   * @param binds the occurrences of the bindings that are already known, -1 if not yet
+   */
+  private record Row(int clause, @NotNull ImmutableSeq<Cell> cells, int @NotNull [] binds) {
+    static final Row STUCK = new Row(-1, ImmutableSeq.empty(), new int[0]);
+
+    /** Replace the cell at {@param col} with {@param expanded}, binding the occurrence if it is a variable */
+    @NotNull Row expand(int col, int occ, @NotNull ImmutableSeq<Cell> expanded) {
+      var newBinds = binds;
+      if (cells.get(col) instanceof Cell.Wild(var bind) && bind != -1) {
+        newBinds = binds.clone();
+        newBinds[bind] = occ;
+      }
+      var newCells = MutableList.<Cell>create();
+      for (int i = 0; i < col; i++) newCells.append(cells.get(i));
+      newCells.appendAll(expanded);
+      for (int i = col + 1; i < cells.size(); i++) newCells.append(cells.get(i));
+      return new Row(clause, newCells.toImmutableSeq(), newBinds);
+    }
+  }
+
+  private static final class TooLarge extends RuntimeException {
+    private TooLarge() { super(null, null, false, false); }
+  }
+
+  private static final class Builder {
+    private final boolean orderIndependent;
+    private int occurrences;
+    private int size = 0;
+
+    private Builder(boolean orderIndependent, int argc) {
+      this.orderIndependent = orderIndependent;
+      this.occurrences = argc;
+    }
+
+    private @NotNull Node count(@NotNull Node node) {
+      if (++size > MAX_SIZE) throw new TooLarge();
+      return node;
+    }
+
+    private static boolean isWild(@NotNull Cell cell) { return cell instanceof Cell.Wild; }
+
+    private static @Nullable Cell.Con asCon(@NotNull Cell cell) {
+      return switch (cell) {
+        case Cell.Con con -> con;
+        case Cell.Int(var lit) -> Cell.unfold(lit);
+        default -> null;
+      };
+    }
+
+    private @NotNull Node compile(@NotNull ImmutableSeq<Integer> occs, @NotNull ImmutableSeq<Row> rows) {
+      if (rows.isEmpty()) return Fail.Mismatch;
+      var first = rows.getFirst();
+      if (first == Row.STUCK) return Fail.Stuck;
+      if (first.cells.allMatch(Builder::isWild)) {
+        var binds = first.binds.clone();
+        for (int i = 0; i < occs.size(); i++) {
+          if (first.cells.get(i) instanceof Cell.Wild(var bind) && bind != -1) binds[bind] = occs.get(i);
+        }
+        return count(new Leaf(first.clause, binds));
+      }
+
+      // The leftmost column where any clause is refutable, so that no clause can fail on its left,
+      // thus the scrutinee of this column decides how a clause fails.
+      var col = 0;
+      while (isIrrefutable(rows, col)) col++;
+      var occ = occs.get(col);
+      Cell kind = null;
+      for (var row : rows) {
+        if (row == Row.STUCK) break;
+        var cell = row.cells.get(col);
+        if (!isWild(cell) && cell != Cell.Absurd.INSTANCE) {
+          kind = cell;
+          break;
+        }
+      }
+
+      var dropped = dropColumn(occs, col);
+      // if the scrutinee is not of the expected form, only the clauses not looking at it go on
+      var stuck = compile(dropped, specialize(rows, col, occ, _ -> false,
+        cell -> isWild(cell) ? ImmutableSeq.empty() : null));
+      return switch (kind) {
+        // only absurd patterns, they are stuck no matter what the scrutinee is
+        case null -> stuck;
+        case Cell.Tup tup -> {
+          var size = tup.elements.size();
+          var firstOcc = occurrences;
+          occurrences += size;
+          var body = compile(expandColumn(occs, col, firstOcc, size), specialize(rows, col, occ, _ -> false,
+            cell -> switch (cell) {
+              case Cell.Tup(var elements) -> elements;
+              case Cell.Wild _ -> ImmutableSeq.<Cell>fill(size, Cell.ANY);
+              default -> null;
+            }));
+          yield count(new Tuple(occ, firstOcc, size, body, stuck));
+        }
+        default -> {
+          var branches = MutableList.<Branch>create();
+          var seen = MutableList.<ConDefLike>create();
+          for (var row : rows) {
+            if (row == Row.STUCK) break;
+            var con = asCon(row.cells.get(col));
+            if (con == null || seen.contains(con.con)) continue;
+            seen.append(con.con);
+            branches.append(branch(occs, rows, col, occ, con.con, con.args.size()));
+          }
+          // the scrutinee is a constructor that no clause mentions
+          var otherwise = compile(dropped, specialize(rows, col, occ, cell -> asCon(cell) != null,
+            cell -> isWild(cell) ? ImmutableSeq.empty() : null));
+          yield count(new Split(occ, branches.toImmutableSeq(), otherwise, stuck));
+        }
+      };
+    }
+
+    private static boolean isIrrefutable(@NotNull ImmutableSeq<Row> rows, int col) {
+      for (var row : rows) {
+        if (row == Row.STUCK) break;
+        if (!isWild(row.cells.get(col))) return false;
+      }
+      return true;
+    }
+
+    private @NotNull Branch branch(
+      @NotNull ImmutableSeq<Integer> occs, @NotNull ImmutableSeq<Row> rows,
+      int col, int occ, @NotNull ConDefLike con, int arity
+    ) {
+      var firstOcc = occurrences;
+      occurrences += arity;
+      var body = compile(expandColumn(occs, col, firstOcc, arity), specialize(rows, col, occ,
+        cell -> asCon(cell) instanceof Cell.Con other && !other.con.equals(con),
+        cell -> {
+          if (isWild(cell)) return ImmutableSeq.fill(arity, Cell.ANY);
+          var other = asCon(cell);
+          return other != null ? other.args : null;
+        }));
+      return new Branch(con, firstOcc, arity, body);
+    }
+
+    /**
+     * Specialize the rows with the knowledge about the scrutinee of {@param col}.
+     * In ordered matching, the first stuck row ends the matching.
+     *
+     * @param mismatch the rows that mismatch, they are dropped
+     * @param expand   the patterns that replace the one at {@param col}, or null if the row is stuck
+     */
+    private @NotNull ImmutableSeq<Row> specialize(
+      @NotNull ImmutableSeq<Row> rows, int col, int occ,
+      @NotNull Predicate<Cell> mismatch,
+      @NotNull Function<Cell, @Nullable ImmutableSeq<Cell>> expand
+    ) {
+      var result = MutableList.<Row>create();
+      for (var row : rows) {
+        if (row == Row.STUCK) {
+          result.append(row);
+          break;
+        }
+        var cell = row.cells.get(col);
+        if (mismatch.test(cell)) continue;
+        var expanded = expand.apply(cell);
+        if (expanded != null) result.append(row.expand(col, occ, expanded));
+        else if (!orderIndependent) {
+          result.append(Row.STUCK);
+          break;
+        }
+      }
+      return result.toImmutableSeq();
+    }
+
+    private static @NotNull ImmutableSeq<Integer> dropColumn(@NotNull ImmutableSeq<Integer> occs, int col) {
+      return expandColumn(occs, col, 0, 0);
+    }
+
+    private static @NotNull ImmutableSeq<Integer>
+    expandColumn(@NotNull ImmutableSeq<Integer> occs, int col, int firstOcc, int size) {
+      var result = MutableList.<Integer>create();
+      for (int i = 0; i < col; i++) result.append(occs.get(i));
+      for (int i = 0; i < size; i++) result.append(firstOcc + i);
+      for (int i = col + 1; i < occs.size(); i++) result.append(occs.get(i));
+      return result.toImmutableSeq();
+    }
+  }
+
+  /// endregion Compiling
+}
@@ -27,8 +27,8 @@ import org.jetbrains.annotations.Debug;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
 import java.util.function.BiConsumer;
-import java.util.function.IntUnaryOperator;
 import java.util.function.UnaryOperator;
 
 /**
@@ -176,11 +176,15 @@ public sealed interface Pat extends AyaDocile {
   }
 
   record ShapedInt(
-    @Override int repr,
+    @Override @NotNull BigInteger repr,
     @NotNull ConDefLike zero,
     @NotNull ConDefLike suc,
     @NotNull DataCall type
   ) implements Pat, Shaped.Nat<Pat> {
+    public ShapedInt(int repr, @NotNull ConDefLike zero, @NotNull ConDefLike suc, @NotNull DataCall type) {
+      this(BigInteger.valueOf(repr), zero, suc, type);
+    }
+
     public ShapedInt update(DataCall type) {
       return type == type() ? this : new ShapedInt(repr, zero, suc, type);
     }
@@ -202,13 +206,13 @@ public sealed interface Pat extends AyaDocile {
       return new Pat.Con(suc, ImmutableSeq.of(pat), type);
     }
 
-    @Override public @NotNull ShapedInt destruct(int repr) {
+    @Override public @NotNull ShapedInt destruct(@NotNull BigInteger repr) {
       return new ShapedInt(repr, zero, suc, type);
     }
 
     public @NotNull Term toTerm() { return new IntegerTerm(repr, zero, suc, type); }
-    @Override public @NotNull ShapedInt map(@NotNull IntUnaryOperator f) {
-      return new ShapedInt(f.applyAsInt(repr), zero, suc, type);
+    @Override public @NotNull ShapedInt map(@NotNull UnaryOperator<BigInteger> f) {
+      return new ShapedInt(f.apply(repr), zero, suc, type);
     }
   }
 
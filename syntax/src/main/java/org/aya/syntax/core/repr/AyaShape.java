@@ -82,6 +82,7 @@ public enum AyaShape {
       ))));
 
     @Override public @NotNull CodeShape codeShape() { return FN_PLUS; }
+    @Override public @NotNull AyaShape operation() { return PLUS_LEFT_SHAPE; }
   },
   MINUS_SHAPE {
     public static final @NotNull CodeShape FN_MINUS = CodeShape.binop(NAT_SHAPE.codeShape(),
@@ -104,9 +105,49 @@ public enum AyaShape {
       )));
 
     @Override public @NotNull CodeShape codeShape() { return FN_MINUS; }
+  },
+  MULT_SHAPE {
+    public static final @NotNull CodeShape FN_MULT = CodeShape.binop(NAT_SHAPE.codeShape(),
+      // | 0, b => 0
+      new ClauseShape(ImmutableSeq.of(
+        PatShape.ShapedCon.of(TYPE, ZERO), PatShape.Basic.Bind
+      ), TermShape.ConCall.of(TYPE, ZERO)),
+      // | suc a, b => b + _ a b
+      new ClauseShape(ImmutableSeq.of(
+        PatShape.ShapedCon.of(TYPE, SUC, PatShape.Basic.Bind),
+        PatShape.Basic.Bind
+      ), TermShape.ShapeCall.of(CALLEE, PLUS_LEFT_SHAPE.codeShape(),
+        new TermShape.DeBruijn(0),
+        TermShape.NameCall.of(FUNC,
+          new TermShape.DeBruijn(1),
+          new TermShape.DeBruijn(0)
+        ))));
+
+    @Override public @NotNull CodeShape codeShape() { return FN_MULT; }
+  },
+  POW_SHAPE {
+    public static final @NotNull CodeShape FN_POW = CodeShape.binop(NAT_SHAPE.codeShape(),
+      // | a, 0 => 1
+      new ClauseShape(ImmutableSeq.of(
+        PatShape.Basic.Bind, PatShape.ShapedCon.of(TYPE, ZERO)
+      ), TermShape.ConCall.of(TYPE, SUC, TermShape.ConCall.of(TYPE, ZERO))),
+      // | a, suc b => a * _ a b
+      new ClauseShape(ImmutableSeq.of(
+        PatShape.Basic.Bind,
+        PatShape.ShapedCon.of(TYPE, SUC, PatShape.Basic.Bind)
+      ), TermShape.ShapeCall.of(CALLEE, MULT_SHAPE.codeShape(),
+        new TermShape.DeBruijn(1),
+        TermShape.NameCall.of(FUNC,
+          new TermShape.DeBruijn(1),
+          new TermShape.DeBruijn(0)
+        ))));
+
+    @Override public @NotNull CodeShape codeShape() { return FN_POW; }
   };
 
   public @NotNull abstract CodeShape codeShape();
+  /** The shape that a {@link TermShape.ShapeCall} refers to, shapes of the same operation are interchangeable */
+  public @NotNull AyaShape operation() { return this; }
 
   public static Shaped.Applicable<ConDefLike> ofCon(
     @NotNull ConDefLike ref,
@@ -126,6 +167,8 @@ public enum AyaShape {
     return switch (shape) {
       case PLUS_LEFT_SHAPE, PLUS_RIGHT_SHAPE -> new IntegerOps.FnRule(ref, IntegerOps.FnRule.Kind.Add);
       case MINUS_SHAPE -> new IntegerOps.FnRule(ref, IntegerOps.FnRule.Kind.SubTrunc);
+      case MULT_SHAPE -> new IntegerOps.FnRule(ref, IntegerOps.FnRule.Kind.Mul);
+      case POW_SHAPE -> new IntegerOps.FnRule(ref, IntegerOps.FnRule.Kind.Pow);
       default -> null;
     };
   }
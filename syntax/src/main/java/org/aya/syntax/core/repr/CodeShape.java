@@ -31,6 +31,8 @@ public sealed interface CodeShape {
     public static final @NotNull LocalId DATA = new LocalId("Data");
     public static final @NotNull LocalId FUNC = new LocalId("Func");
     public static final @NotNull LocalId TYPE = new LocalId("Type0");
+    /** The function called by a {@link TermShape.ShapeCall} in a function body */
+    public static final @NotNull LocalId CALLEE = new LocalId("Callee");
   }
 
   record FnShape(
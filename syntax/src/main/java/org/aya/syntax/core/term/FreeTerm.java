@@ -7,6 +7,8 @@ import org.aya.syntax.core.term.marker.TyckInternal;
 import org.aya.syntax.ref.LocalVar;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Map;
+
 public record FreeTerm(@NotNull LocalVar name) implements TyckInternal {
   public FreeTerm(@NotNull String name) { this(LocalVar.generate(name)); }
   @Override public @NotNull Term descent(@NotNull IndexedFunction<Term, Term> f) { return this; }
@@ -14,4 +16,8 @@ public record FreeTerm(@NotNull LocalVar name) implements TyckInternal {
     if (name == var) return new LocalTerm(depth);
     return this;
   }
+  @Override public @NotNull Term bindAllAt(@NotNull Map<LocalVar, Integer> indices, int depth) {
+    var index = indices.get(name);
+    return index == null ? this : new LocalTerm(depth + index);
+  }
 }
@@ -0,0 +1,137 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.term;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.aya.syntax.core.term.marker.TyckInternal;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.core.term.repr.StringTerm;
+import org.aya.util.WeakInterner;
+import org.aya.util.error.Panic;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Objects;
+
+/**
+ * Hash-consing of core terms: {@link #intern} makes equal terms without free variables and metas
+ * the same object, which saves memory and lets {@link Object#equals} succeed on identity.
+ * It is opt-in, see {@link #enabled()}, because interning costs a traversal of the term.
+ * <p>
+ * Terms are interned bottom-up, so the canonical instances are compared shallowly:
+ * the same record class, subterms of {@link Term#descent} by identity, and other components by {@link Object#equals}.
+ * Leaves are compared by {@link Object#equals} since their components are not visited by {@link Term#descent}.
+ * The canonical instances are held weakly, so the table does not keep unused definitions alive.
+ */
+public final class HashCons {
+  private static volatile boolean enabled = false;
+  private static final @NotNull WeakInterner<Term> TABLE = new WeakInterner<>(HashCons::hash, HashCons::equal);
+  static final @NotNull ClassValue<MethodHandle[]> COMPONENTS = new ClassValue<>() {
+    @Override protected MethodHandle[] computeValue(@NotNull Class<?> type) {
+      var components = type.getRecordComponents();
+      var handles = new MethodHandle[components.length];
+      try {
+        var lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        for (int i = 0; i < components.length; i++)
+          handles[i] = lookup.unreflect(components[i].getAccessor())
+            .asType(MethodType.methodType(Object.class, Object.class));
+      } catch (IllegalAccessException e) {
+        throw new Panic(e);
+      }
+      return handles;
+    }
+  };
+
+  /** Interns the children before their parents, with an explicit stack, so that deep terms do not overflow */
+  private static final @NotNull TermWalker.Visitor INTERN = new TermWalker.Visitor() {
+    @Override public @Nullable Term pre(int depth, @NotNull Term term) {
+      return isLeaf(term) ? canonical(term) : null;
+    }
+    @Override public @NotNull Term post(int depth, @NotNull Term term) { return canonical(term); }
+  };
+
+  private HashCons() { }
+
+  /** Whether the type checker interns the definitions it produces */
+  public static boolean enabled() { return enabled; }
+  public static void setEnabled(boolean enabled) { HashCons.enabled = enabled; }
+
+  /** @return a term equal to {@param term}, whose subterms without free variables and metas are canonical */
+  public static @NotNull Term intern(@NotNull Term term) {
+    return canonical(TermWalker.descent(term, INTERN));
+  }
+
+  /** @return the canonical instance of {@param term}, whose children are already canonical */
+  private static @NotNull Term canonical(@NotNull Term term) {
+    return switch (term) {
+      case TyckInternal _ -> term;
+      case Record _ when !TermInfo.hasFree(term) && !TermInfo.hasMeta(term) -> TABLE.intern(term);
+      default -> term;
+    };
+  }
+
+  private static boolean isLeaf(@NotNull Term term) {
+    return term instanceof LocalTerm || term instanceof SortTerm
+      || term instanceof IntegerTerm || term instanceof StringTerm;
+  }
+
+  private static int hash(@NotNull Term term) {
+    return isLeaf(term) ? term.hashCode() : shallowHash((Record) term);
+  }
+
+  private static boolean equal(@NotNull Term canonical, @NotNull Term term) {
+    if (canonical == term) return true;
+    if (canonical.getClass() != term.getClass()) return false;
+    return isLeaf(term) ? canonical.equals(term) : shallowEqual((Record) canonical, (Record) term);
+  }
+
+  static boolean isOwnRecord(@NotNull Object value) {
+    return value instanceof Record && value.getClass().getModule() == HashCons.class.getModule();
+  }
+
+  static Object component(@NotNull MethodHandle handle, @NotNull Record record) {
+    try {
+      return (Object) handle.invokeExact((Object) record);
+    } catch (Throwable e) {
+      throw new Panic(e);
+    }
+  }
+
+  private static int shallowHash(@NotNull Record record) {
+    var h = record.getClass().hashCode();
+    for (var handle : COMPONENTS.get(record.getClass()))
+      h = 31 * h + valueHash(component(handle, record));
+    return h;
+  }
+
+  private static int valueHash(Object value) {
+    return switch (value) {
+      case null -> 0;
+      case Term term -> System.identityHashCode(term);
+      case ImmutableSeq<?> seq -> seq.foldLeft(1, (h, x) -> 31 * h + valueHash(x));
+      case Record record when isOwnRecord(record) -> shallowHash(record);
+      default -> value.hashCode();
+    };
+  }
+
+  private static boolean shallowEqual(@NotNull Record lhs, @NotNull Record rhs) {
+    for (var handle : COMPONENTS.get(lhs.getClass()))
+      if (!valueEqual(component(handle, lhs), component(handle, rhs))) return false;
+    return true;
+  }
+
+  private static boolean valueEqual(Object lhs, Object rhs) {
+    return switch (lhs) {
+      case null -> rhs == null;
+      case Term _ -> lhs == rhs;
+      case ImmutableSeq<?> seq -> rhs instanceof ImmutableSeq<?> rseq && seq.size() == rseq.size()
+        && seq.allMatchWith(rseq, HashCons::valueEqual);
+      case Record record when isOwnRecord(record) ->
+        record.getClass() == rhs.getClass() && shallowEqual(record, (Record) rhs);
+      default -> Objects.equals(lhs, rhs);
+    };
+  }
+}
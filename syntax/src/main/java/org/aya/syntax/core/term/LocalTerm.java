@@ -7,6 +7,8 @@ import kala.function.IndexedFunction;
 import org.aya.syntax.ref.LocalVar;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Map;
+
 public record LocalTerm(int index) implements Term {
   public LocalTerm {
     assert index >= 0 : "Sanity check";
@@ -21,6 +23,10 @@ public record LocalTerm(int index) implements Term {
     return this;
   }
 
+  @Override public @NotNull Term bindAllAt(@NotNull Map<LocalVar, Integer> indices, int depth) {
+    return this;
+  }
+
   @Override public @NotNull Term replaceAllFrom(int from, @NotNull ImmutableSeq<Term> list) {
     var i = index - from;
     // * i < 0: this LocalTerm is free
@@ -0,0 +1,50 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.term;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+/**
+ * Syntactic equality of core terms with a bound on the number of subterm pairs visited,
+ * so that it is cheap enough to try before a conversion check.
+ * It compares the components of the records like {@link HashCons}, except that subterms are compared
+ * by this equality instead of by identity, and gives up (returns false) when the budget runs out.
+ * Identical subterms are not visited, so terms sharing most of their structure are compared quickly.
+ */
+public final class SyntacticEq {
+  private int budget;
+
+  private SyntacticEq(int budget) { this.budget = budget; }
+
+  /** @return true if {@param lhs} and {@param rhs} are found equal within {@param budget} pairs of subterms */
+  public static boolean equal(@NotNull Term lhs, @NotNull Term rhs, int budget) {
+    return new SyntacticEq(budget).term(lhs, rhs);
+  }
+
+  private boolean term(@NotNull Term lhs, @NotNull Term rhs) {
+    if (lhs == rhs) return true;
+    if (--budget < 0 || lhs.getClass() != rhs.getClass()) return false;
+    return lhs instanceof Record record && record(record, (Record) rhs);
+  }
+
+  private boolean record(@NotNull Record lhs, @NotNull Record rhs) {
+    for (var handle : HashCons.COMPONENTS.get(lhs.getClass()))
+      if (!value(HashCons.component(handle, lhs), HashCons.component(handle, rhs))) return false;
+    return true;
+  }
+
+  private boolean value(Object lhs, Object rhs) {
+    return switch (lhs) {
+      case null -> rhs == null;
+      case Term term -> rhs instanceof Term rterm && term(term, rterm);
+      case ImmutableSeq<?> seq -> rhs instanceof ImmutableSeq<?> rseq && seq.size() == rseq.size()
+        && seq.allMatchWith(rseq, this::value);
+      case Record record when HashCons.isOwnRecord(record) ->
+        record.getClass() == rhs.getClass() && record(record, (Record) rhs);
+      default -> Objects.equals(lhs, rhs);
+    };
+  }
+}
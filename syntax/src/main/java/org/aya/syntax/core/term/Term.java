@@ -24,6 +24,8 @@ import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serializable;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 
@@ -35,6 +37,7 @@ public sealed interface Term extends Serializable, AyaDocile
   }
 
   default @NotNull Term bindAt(@NotNull LocalVar var, int depth) {
+    if (!TermInfo.hasFree(this)) return this;
     return descent((i, t) -> t.bindAt(var, depth + i));
   }
 
@@ -55,18 +58,36 @@ public sealed interface Term extends Serializable, AyaDocile
   }
 
   /**
-   * You might not want to call this method! Use {@link #bindTele} instead.
+   * Bind all {@param teleVars} in one traversal, the last one is bound to index 0.
    *
-   * @see #instantiateAll(SeqView)
    * @see #instantiateTele(SeqView)
    */
-  private @NotNull Term bindAll(@NotNull SeqView<LocalVar> vars) {
-    if (vars.isEmpty()) return this;
-    return vars.foldLeftIndexed(this, (idx, acc, var) -> acc.bindAt(var, idx));
+  default @NotNull Term bindTele(@NotNull SeqView<LocalVar> teleVars) {
+    if (teleVars.isEmpty()) return this;
+    if (teleVars.sizeEquals(1)) return bindAt(teleVars.getFirst(), 0);
+    return bindAllAt(teleIndices(teleVars), 0);
   }
 
-  default @NotNull Term bindTele(@NotNull SeqView<LocalVar> teleVars) {
-    return bindAll(teleVars.reversed());
+  /**
+   * @param indices the index of each variable relative to {@param depth}
+   * @see #teleIndices(SeqView)
+   */
+  @ApiStatus.Internal
+  default @NotNull Term bindAllAt(@NotNull Map<LocalVar, Integer> indices, int depth) {
+    if (!TermInfo.hasFree(this)) return this;
+    return descent((i, t) -> t.bindAllAt(indices, depth + i));
+  }
+
+  /**
+   * @return the index of each variable of {@param teleVars} after binding, variables are compared by identity
+   * like {@link FreeTerm#bindAt}, and a repeated variable takes the innermost index
+   */
+  @ApiStatus.Internal
+  static @NotNull Map<LocalVar, Integer> teleIndices(@NotNull SeqView<LocalVar> teleVars) {
+    var indices = new IdentityHashMap<LocalVar, Integer>();
+    var size = teleVars.size();
+    teleVars.forEachIndexed((i, var) -> indices.put(var, size - 1 - i));
+    return indices;
   }
 
   /**
@@ -74,7 +95,7 @@ public sealed interface Term extends Serializable, AyaDocile
    */
   @ApiStatus.Internal
   default @NotNull Term replaceAllFrom(int from, @NotNull ImmutableSeq<Term> list) {
-    if (list.isEmpty()) return this;
+    if (list.isEmpty() || TermInfo.looseBound(this) <= from) return this;
     return descent((i, t) -> t.replaceAllFrom(from + i, list));
   }
 
@@ -0,0 +1,123 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.term;
+
+import org.aya.syntax.core.Closure;
+import org.aya.syntax.core.term.call.MetaCall;
+import org.aya.syntax.core.term.repr.IntegerTerm;
+import org.aya.syntax.core.term.repr.StringTerm;
+import org.aya.syntax.core.term.xtt.CoeTerm;
+import org.aya.syntax.core.term.xtt.DimTerm;
+import org.aya.syntax.core.term.xtt.DimTyTerm;
+import org.aya.util.WeakIdentityIntMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * What {@link Term#descent}-based traversals can see in a term, so that they skip subterms they would not change:
+ * the loose bound (one more than the largest loose de Bruijn index), whether there is a {@link FreeTerm},
+ * and whether there is a {@link MetaCall} or a {@link MetaPatTerm}.
+ * <p>
+ * Terms are records and cannot carry extra fields, so the information of a node is computed on first request,
+ * from that of its children, and cached in a weak identity table. Leaves are never cached,
+ * they are cheaper to compute than to look up.
+ * <p>
+ * The table is shared by all threads and all type checking states: the information is a function of the term alone,
+ * so it is never invalidated, and it is consulted by syntax-level operations that know of no state.
+ * Racing computations of the same node agree, and the table is safe for concurrent use, see {@link WeakIdentityIntMap}.
+ */
+public final class TermInfo {
+  private static final int FREE = 1;
+  private static final int META = 2;
+  private static final int PAT_META = 4;
+  private static final int FLAGS = FREE | META | PAT_META;
+  private static final int SHIFT = 3;
+  private static final int ABSENT = -1;
+  private static final @NotNull WeakIdentityIntMap CACHE = new WeakIdentityIntMap();
+  private static final @NotNull TermWalker.Visitor FILL = new TermWalker.Visitor() {
+    @Override public @Nullable Term pre(int depth, @NotNull Term term) {
+      if (leaf(term) != ABSENT || CACHE.get(term, ABSENT) != ABSENT) return term;
+      var info = deferred(term);
+      if (info == ABSENT) return null;
+      CACHE.put(term, info);
+      return term;
+    }
+    @Override public @NotNull Term post(int depth, @NotNull Term term) {
+      CACHE.put(term, compute(term));
+      return term;
+    }
+  };
+
+  private TermInfo() { }
+
+  /** @return one more than the largest loose index in {@param term}, or 0 if {@param term} is closed */
+  public static int looseBound(@NotNull Term term) { return of(term) >>> SHIFT; }
+  public static boolean hasFree(@NotNull Term term) { return (of(term) & FREE) != 0; }
+  public static boolean hasMeta(@NotNull Term term) { return (of(term) & META) != 0; }
+  /** @return whether there is a {@link MetaPatTerm} in {@param term}, which {@link #hasMeta} counts as well */
+  public static boolean hasPatMeta(@NotNull Term term) { return (of(term) & PAT_META) != 0; }
+
+  private static int of(@NotNull Term term) {
+    var info = leaf(term);
+    if (info != ABSENT) return info;
+    info = CACHE.get(term, ABSENT);
+    if (info == ABSENT) {
+      info = deferred(term);
+      if (info == ABSENT) {
+        // fill in the subterms bottom-up first, so that a deep term is not computed recursively
+        TermWalker.descent(term, FILL);
+        info = compute(term);
+      }
+      CACHE.put(term, info);
+    }
+    return info;
+  }
+
+  private static int leaf(@NotNull Term term) {
+    return switch (term) {
+      case LocalTerm(var index) -> (index + 1) << SHIFT;
+      case FreeTerm _ -> FREE;
+      // the solution of a pattern meta is mutable, so it is considered a meta
+      case MetaPatTerm _ -> META | PAT_META;
+      case SortTerm _, StringTerm _, IntegerTerm _, ErrorTerm _, DimTerm _, DimTyTerm _ -> 0;
+      default -> ABSENT;
+    };
+  }
+
+  /**
+   * The information of a term with a {@link Closure.Env}, computed from the body and the environment,
+   * since {@link Closure.Env#descent} would perform the substitution that the closure defers.
+   */
+  private static int deferred(@NotNull Term term) {
+    return switch (term) {
+      case LamTerm(Closure.Env body) -> closure(body);
+      case PiTerm(var param, Closure.Env body) -> merge(of(param), closure(body));
+      case CoeTerm(Closure.Env type, var r, var s) -> merge(closure(type), merge(of(r), of(s)));
+      default -> ABSENT;
+    };
+  }
+
+  /** @see Closure.Env#toIdx() */
+  private static int closure(@NotNull Closure.Env closure) {
+    var body = of(closure.body());
+    var flags = closure.env().foldLeft(body & FLAGS, (f, t) -> f | (of(t) & FLAGS));
+    // the indices of the environment are replaced by terms without loose indices, the others stay
+    var bound = body >>> SHIFT;
+    return (bound > closure.env().size() + 1 ? bound - 1 : 0) << SHIFT | flags;
+  }
+
+  private static int merge(int lhs, int rhs) {
+    return Math.max(lhs >>> SHIFT, rhs >>> SHIFT) << SHIFT | ((lhs | rhs) & FLAGS);
+  }
+
+  private static int compute(@NotNull Term term) {
+    var info = new int[]{term instanceof MetaCall ? META : 0};
+    term.descent((i, t) -> {
+      var child = of(t);
+      var bound = Math.max(info[0] >>> SHIFT, (child >>> SHIFT) - i);
+      info[0] = bound << SHIFT | ((info[0] | child) & FLAGS);
+      return t;
+    });
+    return info[0];
+  }
+}
@@ -0,0 +1,95 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.syntax.core.term;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A {@link Term#descent}-based traversal with an explicit stack, so that the depth of a term
+ * is limited by the heap instead of the stack of the thread.
+ * {@link #descent} is what {@code term.descent(f)} is for a recursive {@code f}, written as {@link Visitor}.
+ */
+public final class TermWalker {
+  /**
+   * The {@code depth} of a subterm is the number of binders between it and the root,
+   * counted like the index given by {@link Term#descent}.
+   */
+  @FunctionalInterface
+  public interface Visitor {
+    /** @return the result of {@param term} if it is known without visiting its children, otherwise null */
+    @Nullable Term pre(int depth, @NotNull Term term);
+    /** @return the term whose children are visited in place of {@param term}, called when {@link #pre} returns null */
+    default @NotNull Term head(int depth, @NotNull Term term) { return term; }
+    /** @return the result of {@param term}, whose children are already replaced by their results */
+    default @NotNull Term post(int depth, @NotNull Term term) { return term; }
+  }
+
+  private static final Term[] NO_TERMS = new Term[0];
+  private static final int[] NO_INTS = new int[0];
+
+  private static final class Frame {
+    private final @NotNull Term term;
+    private final int depth;
+    private Term[] children = NO_TERMS;
+    private int[] binders = NO_INTS;
+    private int size = 0;
+    private int cursor = 0;
+    private boolean changed = false;
+
+    private Frame(@NotNull Term term, int depth) {
+      this.term = term;
+      this.depth = depth;
+      term.descent((i, t) -> {
+        if (size == children.length) {
+          children = Arrays.copyOf(children, Math.max(4, size * 2));
+          binders = Arrays.copyOf(binders, children.length);
+        }
+        children[size] = t;
+        binders[size++] = i;
+        return t;
+      });
+    }
+
+    private void done(@NotNull Term result) {
+      if (result != children[cursor]) changed = true;
+      children[cursor++] = result;
+    }
+
+    private @NotNull Term rebuild() {
+      if (!changed) return term;
+      cursor = 0;
+      // descent calls the function on the children in the same order every time
+      return term.descent((_, _) -> children[cursor++]);
+    }
+  }
+
+  private TermWalker() { }
+
+  /** @return {@param root} with its children replaced by their results under {@param visitor} */
+  public static @NotNull Term descent(@NotNull Term root, @NotNull Visitor visitor) {
+    var stack = new ArrayDeque<Frame>();
+    var top = new Frame(root, 0);
+    while (true) {
+      if (top.cursor < top.size) {
+        var child = top.children[top.cursor];
+        var depth = top.depth + top.binders[top.cursor];
+        var result = visitor.pre(depth, child);
+        if (result != null) top.done(result);
+        else {
+          stack.push(top);
+          top = new Frame(visitor.head(depth, child), depth);
+        }
+        continue;
+      }
+      var rebuilt = top.rebuild();
+      if (stack.isEmpty()) return rebuilt;
+      var result = visitor.post(top.depth, rebuilt);
+      top = stack.pop();
+      top.done(result);
+    }
+  }
+}
@@ -12,6 +12,8 @@ import org.aya.syntax.core.term.Term;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigInteger;
+
 /**
  * IntegerOps acts like a DefVar with special reduce rule. So it is not a {@link Term}.
  *
@@ -29,7 +31,7 @@ public sealed interface IntegerOps<Def extends AnyDef> extends Shaped.Applicable
       // suc
       assert args.sizeEquals(1);
       var arg = args.get(0);
-      if (arg instanceof IntegerTerm intTerm) return intTerm.map(x -> x + 1);
+      if (arg instanceof IntegerTerm intTerm) return intTerm.map(x -> x.add(BigInteger.ONE));
       return null;
     }
     @Override public @NotNull ConRule descent(@NotNull IndexedFunction<Term, Term> f) {
@@ -42,28 +44,20 @@ public sealed interface IntegerOps<Def extends AnyDef> extends Shaped.Applicable
     @NotNull Kind kind
   ) implements IntegerOps<FnDefLike> {
     public enum Kind {
-      Add, SubTrunc
+      Add, SubTrunc, Mul, Pow
     }
 
     @Override
     public @Nullable Term apply(@NotNull ImmutableSeq<Term> args) {
+      assert args.sizeEquals(2);
+      if (!(args.get(0) instanceof IntegerTerm ita && args.get(1) instanceof IntegerTerm itb)) return null;
+      var b = itb.repr();
       return switch (kind) {
-        case Add -> {
-          assert args.sizeEquals(2);
-          if (args.get(0) instanceof IntegerTerm ita && args.get(1) instanceof IntegerTerm itb) {
-            yield ita.map(x -> x + itb.repr());
-          }
-
-          yield null;
-        }
-        case SubTrunc -> {
-          assert args.sizeEquals(2);
-          if (args.get(0) instanceof IntegerTerm ita && args.get(1) instanceof IntegerTerm itb) {
-            yield ita.map(x -> Math.max(x - itb.repr(), 0));
-          }
-
-          yield null;
-        }
+        case Add -> ita.map(a -> a.add(b));
+        case SubTrunc -> ita.map(a -> a.subtract(b).max(BigInteger.ZERO));
+        case Mul -> ita.map(a -> a.multiply(b));
+        // leave the exponents BigInteger can't take to the clauses, they would not finish anyway
+        case Pow -> b.bitLength() < Integer.SIZE ? ita.map(a -> a.pow(b.intValue())) : null;
       };
     }
     @Override public @NotNull FnRule descent(@NotNull IndexedFunction<Term, Term> f) {
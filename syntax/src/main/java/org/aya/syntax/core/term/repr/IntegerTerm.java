@@ -15,19 +15,24 @@ import org.aya.syntax.core.term.call.RuleReducer;
 import org.aya.syntax.core.term.marker.StableWHNF;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.function.IntUnaryOperator;
+import java.math.BigInteger;
+import java.util.function.UnaryOperator;
 
 /**
- * An efficient represent for Nat
+ * An efficient represent for Nat, of arbitrary precision
  */
 public record IntegerTerm(
-  @Override int repr,
+  @Override @NotNull BigInteger repr,
   @NotNull ConDefLike zero,
   @NotNull ConDefLike suc,
   @Override @NotNull DataCall type
 ) implements StableWHNF, Shaped.Nat<Term>, ConCallLike {
   public IntegerTerm {
-    assert repr >= 0;
+    assert repr.signum() >= 0;
+  }
+
+  public IntegerTerm(int repr, @NotNull ConDefLike zero, @NotNull ConDefLike suc, @NotNull DataCall type) {
+    this(BigInteger.valueOf(repr), zero, suc, type);
   }
 
   public IntegerTerm(int repr, @NotNull ShapeRecognition recog, @NotNull DataCall type) {
@@ -36,12 +41,12 @@ public record IntegerTerm(
 
   @Override
   public @NotNull ConCallLike.Head head() {
-    return new ConCallLike.Head(repr == 0 ? zero : suc, 0, ImmutableSeq.empty());
+    return new ConCallLike.Head(repr.signum() == 0 ? zero : suc, 0, ImmutableSeq.empty());
   }
 
   @Override public @NotNull ImmutableSeq<Term> conArgs() {
-    if (repr == 0) return ImmutableSeq.empty();
-    return ImmutableSeq.of(new IntegerTerm(repr - 1, zero, suc, type));
+    if (repr.signum() == 0) return ImmutableSeq.empty();
+    return ImmutableSeq.of(new IntegerTerm(repr.subtract(BigInteger.ONE), zero, suc, type));
   }
 
   @Override public @NotNull Term descent(@NotNull IndexedFunction<Term, Term> f) { return this; }
@@ -50,18 +55,18 @@ public record IntegerTerm(
     return this;
   }
 
-  @Override public @NotNull IntegerTerm makeZero() { return map(_ -> 0); }
+  @Override public @NotNull IntegerTerm makeZero() { return map(_ -> BigInteger.ZERO); }
   @Override public @NotNull Term makeSuc(@NotNull Term term) {
     return new RuleReducer.Con(new IntegerOps.ConRule(suc, makeZero()),
       0, type.args(), ImmutableSeq.of(term));
   }
 
-  @Override public @NotNull Term destruct(int repr) {
+  @Override public @NotNull Term destruct(@NotNull BigInteger repr) {
     return new IntegerTerm(repr, zero, suc, type);
   }
 
-  @Override public @NotNull IntegerTerm map(@NotNull IntUnaryOperator f) {
-    return new IntegerTerm(f.applyAsInt(repr), zero, suc, type);
+  @Override public @NotNull IntegerTerm map(@NotNull UnaryOperator<BigInteger> f) {
+    return new IntegerTerm(f.apply(repr), zero, suc, type);
   }
   @Override public int ulift() { return type.ulift(); }
 }
@@ -3,6 +3,7 @@
 package org.aya.syntax.core.term.repr;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.immutable.ImmutableVector;
 import kala.function.IndexedFunction;
 import org.aya.generic.stmt.Shaped;
 import org.aya.syntax.core.def.ConDefLike;
@@ -17,12 +18,20 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.function.UnaryOperator;
 
+/**
+ * @param repr a persistent vector, so that {@link #conArgs()} and {@link ListOps.ConRule}
+ *             share the elements with this list instead of copying them
+ */
 public record ListTerm(
   @Override @NotNull ImmutableSeq<Term> repr,
   @NotNull ConDefLike nil,
   @NotNull ConDefLike cons,
   @Override @NotNull DataCall type
 ) implements StableWHNF, Shaped.List<Term>, ConCallLike {
+  public ListTerm {
+    if (!(repr instanceof ImmutableVector<Term>)) repr = ImmutableVector.from(repr);
+  }
+
   public ListTerm(
     @NotNull ImmutableSeq<Term> repr,
     @NotNull ShapeRecognition recog,
@@ -32,7 +41,7 @@ public record ListTerm(
   }
 
   @Override public @NotNull ListTerm makeNil() {
-    return new ListTerm(ImmutableSeq.empty(), nil, cons, type);
+    return new ListTerm(ImmutableVector.empty(), nil, cons, type);
   }
 
   @Override public @NotNull Term
@@ -13,6 +13,7 @@ import org.aya.syntax.core.term.marker.TyckInternal;
 import org.aya.util.error.SourcePos;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigInteger;
 import java.util.function.UnaryOperator;
 
 public record MetaLitTerm(
@@ -34,7 +35,7 @@ public record MetaLitTerm(
       var recog = t.recog();
       var shape = recog.shape();
       if (shape == AyaShape.NAT_SHAPE)
-        return Option.some(new IntegerTerm((int) repr,
+        return Option.some(new IntegerTerm((BigInteger) repr,
           recog.getCon(CodeShape.GlobalId.ZERO),
           recog.getCon(CodeShape.GlobalId.SUC),
           dataCall));
@@ -0,0 +1,129 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * A concurrent map from keys compared by identity to ints, which does not keep the keys alive.
+ * It is meant for caching facts about immutable objects that cannot store them in a field,
+ * so {@link #put} keeps the first value of a key: all values of a key are assumed to be the same.
+ * <p>
+ * The keys are spread over a fixed number of segments. Reads take no lock, writes lock one segment
+ * and also purge the entries of collected keys of that segment.
+ */
+public final class WeakIdentityIntMap {
+  private static final int SEGMENT_SHIFT = 4;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final @NotNull Segment @NotNull [] segments = new Segment[1 << SEGMENT_SHIFT];
+
+  public WeakIdentityIntMap() {
+    for (int i = 0; i < segments.length; i++) segments[i] = new Segment();
+  }
+
+  private static int hash(@NotNull Object key) {
+    var h = System.identityHashCode(key);
+    return h ^ (h >>> 16);
+  }
+
+  private @NotNull Segment segment(int hash) {
+    return segments[hash >>> (Integer.SIZE - SEGMENT_SHIFT)];
+  }
+
+  /** @return the value of {@param key}, or {@param absent} if there is none */
+  public int get(@NotNull Object key, int absent) {
+    var hash = hash(key);
+    return segment(hash).get(key, hash, absent);
+  }
+
+  /** Associate {@param key} with {@param value}, unless it already has a value */
+  public void put(@NotNull Object key, int value) {
+    var hash = hash(key);
+    segment(hash).put(key, hash, value);
+  }
+
+  private static final class Entry extends WeakReference<Object> {
+    final int hash;
+    final int value;
+    final Entry next;
+
+    Entry(@NotNull Object key, int hash, int value, Entry next, @NotNull ReferenceQueue<Object> queue) {
+      super(key, queue);
+      this.hash = hash;
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  /**
+   * Entries are immutable, a write builds a new chain and publishes it by writing {@link #table},
+   * so a read sees either the old chain or the new one.
+   */
+  private static final class Segment {
+    private final @NotNull ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private volatile Entry @NotNull [] table = new Entry[INITIAL_CAPACITY];
+    private int size;
+
+    int get(@NotNull Object key, int hash, int absent) {
+      var tab = table;
+      for (var e = tab[hash & (tab.length - 1)]; e != null; e = e.next)
+        if (e.hash == hash && e.get() == key) return e.value;
+      return absent;
+    }
+
+    synchronized void put(@NotNull Object key, int hash, int value) {
+      var tab = purge(table);
+      var i = hash & (tab.length - 1);
+      for (var e = tab[i]; e != null; e = e.next)
+        if (e.hash == hash && e.get() == key) {
+          table = tab;
+          return;
+        }
+      if (size >= tab.length - (tab.length >>> 2)) {
+        tab = resize(tab);
+        i = hash & (tab.length - 1);
+      }
+      tab[i] = new Entry(key, hash, value, tab[i], queue);
+      size++;
+      table = tab;
+    }
+
+    private Entry @NotNull [] purge(Entry @NotNull [] tab) {
+      while (queue.poll() instanceof Entry stale) {
+        var i = stale.hash & (tab.length - 1);
+        tab[i] = removeCleared(tab[i]);
+      }
+      return tab;
+    }
+
+    /** @return the chain without entries of collected keys, sharing the longest live suffix */
+    private Entry removeCleared(Entry head) {
+      if (head == null) return null;
+      var rest = removeCleared(head.next);
+      var key = head.get();
+      if (key == null) {
+        size--;
+        return rest;
+      }
+      return rest == head.next ? head : new Entry(key, head.hash, head.value, rest, queue);
+    }
+
+    private Entry @NotNull [] resize(Entry @NotNull [] tab) {
+      var newTab = new Entry[tab.length << 1];
+      size = 0;
+      for (var head : tab)
+        for (var e = head; e != null; e = e.next) {
+          var key = e.get();
+          if (key == null) continue;
+          var i = e.hash & (newTab.length - 1);
+          newTab[i] = new Entry(key, e.hash, e.value, newTab[i], queue);
+          size++;
+        }
+      return newTab;
+    }
+  }
+}
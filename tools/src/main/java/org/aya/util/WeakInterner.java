@@ -0,0 +1,122 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * A concurrent table of canonical instances under a custom equivalence, which does not keep them alive.
+ * It is laid out like {@link WeakIdentityIntMap}: lock-free reads, and writes locking one of the segments,
+ * except that a miss is retried under the lock so that two equal values never both become canonical.
+ */
+public final class WeakInterner<T> {
+  private static final int SEGMENT_SHIFT = 4;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final @NotNull ToIntFunction<T> hasher;
+  private final @NotNull BiPredicate<T, T> equivalence;
+  private final @NotNull Segment<T> @NotNull [] segments;
+
+  /**
+   * @param hasher      the hash of a value, it is computed once per {@link #intern} call
+   * @param equivalence should agree with {@param hasher}
+   */
+  @SuppressWarnings("unchecked")
+  public WeakInterner(@NotNull ToIntFunction<T> hasher, @NotNull BiPredicate<T, T> equivalence) {
+    this.hasher = hasher;
+    this.equivalence = equivalence;
+    segments = new Segment[1 << SEGMENT_SHIFT];
+    for (int i = 0; i < segments.length; i++) segments[i] = new Segment<>();
+  }
+
+  /** @return the canonical instance equivalent to {@param value}, which is {@param value} if there was none */
+  public @NotNull T intern(@NotNull T value) {
+    var h = hasher.applyAsInt(value);
+    h ^= h >>> 16;
+    var segment = segments[h >>> (Integer.SIZE - SEGMENT_SHIFT)];
+    var found = segment.find(segment.table, value, h, equivalence);
+    return found != null ? found : segment.put(value, h, equivalence);
+  }
+
+  private static final class Entry<T> extends WeakReference<T> {
+    final int hash;
+    final Entry<T> next;
+
+    Entry(@NotNull T value, int hash, Entry<T> next, @NotNull ReferenceQueue<T> queue) {
+      super(value, queue);
+      this.hash = hash;
+      this.next = next;
+    }
+  }
+
+  private static final class Segment<T> {
+    private final @NotNull ReferenceQueue<T> queue = new ReferenceQueue<>();
+    private volatile Entry<T> @NotNull [] table = newTable(INITIAL_CAPACITY);
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T> @NotNull [] newTable(int capacity) { return new Entry[capacity]; }
+
+    T find(Entry<T> @NotNull [] tab, @NotNull T value, int hash, @NotNull BiPredicate<T, T> equivalence) {
+      for (var e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+        if (e.hash != hash) continue;
+        var canonical = e.get();
+        if (canonical != null && equivalence.test(canonical, value)) return canonical;
+      }
+      return null;
+    }
+
+    synchronized @NotNull T put(@NotNull T value, int hash, @NotNull BiPredicate<T, T> equivalence) {
+      var tab = purge(table);
+      var found = find(tab, value, hash, equivalence);
+      if (found != null) {
+        table = tab;
+        return found;
+      }
+      if (size >= tab.length - (tab.length >>> 2)) tab = resize(tab);
+      var i = hash & (tab.length - 1);
+      tab[i] = new Entry<>(value, hash, tab[i], queue);
+      size++;
+      table = tab;
+      return value;
+    }
+
+    private Entry<T> @NotNull [] purge(Entry<T> @NotNull [] tab) {
+      while (queue.poll() instanceof Entry<?> stale) {
+        var i = stale.hash & (tab.length - 1);
+        tab[i] = removeCleared(tab[i]);
+      }
+      return tab;
+    }
+
+    private Entry<T> removeCleared(Entry<T> head) {
+      if (head == null) return null;
+      var rest = removeCleared(head.next);
+      var value = head.get();
+      if (value == null) {
+        size--;
+        return rest;
+      }
+      return rest == head.next ? head : new Entry<>(value, head.hash, rest, queue);
+    }
+
+    private Entry<T> @NotNull [] resize(Entry<T> @NotNull [] tab) {
+      var newTab = Segment.<T>newTable(tab.length << 1);
+      size = 0;
+      for (var head : tab)
+        for (var e = head; e != null; e = e.next) {
+          var value = e.get();
+          if (value == null) continue;
+          var i = e.hash & (newTab.length - 1);
+          newTab[i] = new Entry<>(value, e.hash, newTab[i], queue);
+          size++;
+        }
+      return newTab;
+    }
+  }
+}
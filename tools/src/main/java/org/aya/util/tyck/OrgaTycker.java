@@ -25,7 +25,8 @@ public interface OrgaTycker<T, E extends Exception> {
     skip(sccTycker.tyckSCC(skipped.isEmpty() ? scc : scc.filterNot(skipped::contains)));
   }
 
-  private void skip(@NotNull ImmutableSeq<T> failed) {
+  /** Skip the failed items and all their (transitive) usages. */
+  default void skip(@NotNull ImmutableSeq<T> failed) {
     var skipped = skippedSet();
     failed.forEach(f -> skip(skipped, f));
   }
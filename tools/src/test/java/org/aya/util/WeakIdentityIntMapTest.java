@@ -0,0 +1,66 @@
+// Copyright (c) 2020-2024 Tesla (Yinsen) Zhang.
+// Use of this source code is governed by the MIT license that can be found in the LICENSE.md file.
+package org.aya.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeakIdentityIntMapTest {
+  @Test public void identity() {
+    var map = new WeakIdentityIntMap();
+    var a = new String("a");
+    var b = new String("a");
+    map.put(a, 1);
+    assertEquals(1, map.get(a, -1));
+    assertEquals(-1, map.get(b, -1));
+    // the first value is kept
+    map.put(a, 2);
+    assertEquals(1, map.get(a, -1));
+  }
+
+  @Test public void resize() {
+    var map = new WeakIdentityIntMap();
+    var keys = IntStream.range(0, 10000).mapToObj(_ -> new Object()).toArray();
+    for (int i = 0; i < keys.length; i++) map.put(keys[i], i);
+    for (int i = 0; i < keys.length; i++) assertEquals(i, map.get(keys[i], -1));
+  }
+
+  /** Threads racing on the same keys see either nothing or the only value of a key */
+  @Test public void concurrent() throws InterruptedException {
+    var map = new WeakIdentityIntMap();
+    var keys = IntStream.range(0, 4096).mapToObj(_ -> new Object()).toArray();
+    var threads = 8;
+    var pool = Executors.newFixedThreadPool(threads);
+    var start = new CountDownLatch(1);
+    var wrong = new AtomicInteger();
+    for (int t = 0; t < threads; t++) {
+      var offset = t * 512;
+      pool.execute(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int round = 0; round < 16; round++)
+          for (int i = 0; i < keys.length; i++) {
+            var k = (i + offset) % keys.length;
+            var seen = map.get(keys[k], -1);
+            if (seen != -1 && seen != k) wrong.incrementAndGet();
+            map.put(keys[k], k);
+          }
+      });
+    }
+    start.countDown();
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+    assertEquals(0, wrong.get());
+    for (int i = 0; i < keys.length; i++) assertEquals(i, map.get(keys[i], -1));
+  }
+}